@@ -0,0 +1,131 @@
+package com.example.loyaltyprogram.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AdaptiveConcurrencyLimiter
+ * 応答時間に応じて同時実行数の上限を調整する負荷制限（AIMD方式）。
+ * 応答時間が目標以内であれば上限を少しずつ引き上げ（加算的増加）、目標を超えたら一定の割合で引き下げます（乗算的減少）。
+ * 上限を超えるリクエストは待たせずに拒否し、DBのコネクションプールが枯渇する前に負荷を落とします。
+ * 引き下げは前回の引き下げ以降に開始したリクエストが遅延した場合のみ行い（応答時間1回分につき最大1回）、
+ * 同時に遅延した多数のリクエストによって上限が一度に最小値まで下がらないようにします。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 現在の上限（doubleのビット表現）
+     */
+    private final AtomicLong limitBits;
+
+    private final double minLimit;
+
+    private final double maxLimit;
+
+    private final long targetLatencyNanos;
+
+    private final double backoffRatio;
+
+    /**
+     * 前回上限を引き下げた時刻（System.nanoTime）
+     */
+    private final AtomicLong lastBackoffNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param initialLimit        初期の上限
+     * @param minLimit            上限の最小値
+     * @param maxLimit            上限の最大値
+     * @param targetLatencyMillis 目標とする応答時間（ミリ秒）
+     * @param backoffRatio        目標を超えた場合に上限に掛ける割合（0〜1）
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyMillis, double backoffRatio) {
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyMillis * 1_000_000;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * 実行枠を取得します（上限に達している場合は待たずに失敗します）。
+     *
+     * @return 取得できた場合はtrue
+     */
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > (int) getLimit()) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 実行枠を返却し、応答時間に応じて上限を調整します。
+     *
+     * @param latencyNanos 応答時間（ナノ秒）
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        boolean overloaded = latencyNanos > targetLatencyNanos;
+        if (overloaded && !claimBackoff(System.nanoTime() - latencyNanos)) {
+            return; // 前回の引き下げより前に開始したリクエストの遅延は、引き下げ済みとみなす
+        }
+        while (true) {
+            long bits = limitBits.get();
+            double limit = Double.longBitsToDouble(bits);
+            double updated = overloaded
+                    ? Math.max(minLimit, limit * backoffRatio)
+                    : Math.min(maxLimit, limit + 1.0 / limit); // 上限分のリクエストが完了するごとに1増える
+            if (updated == limit || limitBits.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 実行枠を返却します（応答時間を上限の調整に使わない。ストリーミングなど処理時間が応答の大きさで決まる場合）。
+     */
+    public void releaseWithoutSample() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 前回の引き下げ以降に開始したリクエストであれば、引き下げる権利を取得します。
+     *
+     * @param startedAtNanos リクエストの開始時刻（System.nanoTime）
+     * @return 引き下げる場合はtrue
+     */
+    private boolean claimBackoff(long startedAtNanos) {
+        long now = System.nanoTime();
+        while (true) {
+            long last = lastBackoffNanos.get();
+            if (startedAtNanos - last < 0) {
+                return false;
+            }
+            if (lastBackoffNanos.compareAndSet(last, now)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 現在の上限を取得。
+     *
+     * @return 同時実行数の上限
+     */
+    public double getLimit() {
+        return Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * 実行中のリクエスト数を取得。
+     *
+     * @return 実行中のリクエスト数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.loyaltyprogram.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BenefitApplicationBatchWriter
+ * 特典の適用記録（benefit_applicationsテーブル）をJDBCバッチでまとめて登録するリポジトリ。
+ * (benefit_id, user_id) の一意インデックスと ON CONFLICT DO NOTHING により、
+ * 一括適用ジョブ・個別の適用が同時に実行されても同じユーザーへの適用記録は1件だけ登録されます。
+ */
+@Repository
+public class BenefitApplicationBatchWriter {
+
+    private static final String INSERT_APPLICATION_SQL =
+            "INSERT INTO benefit_applications (benefit_id, user_id, applied_at) VALUES (?, ?, ?) " +
+            "ON CONFLICT (benefit_id, user_id) DO NOTHING";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${loyalty.benefit.bulk-apply.jdbc-batch-size:500}")
+    private int jdbcBatchSize;
+
+    /**
+     * 特典の適用記録をJDBCバッチで一括登録（適用済みのユーザーは登録しない）。
+     *
+     * @param benefitId 特典ID
+     * @param userIds   適用するユーザーIDのリスト
+     * @param appliedAt 適用日時
+     * @return 新たに適用記録を登録したユーザーIDのリスト
+     */
+    public List<String> insertApplications(Long benefitId, List<String> userIds, LocalDateTime appliedAt) {
+        Timestamp timestamp = Timestamp.valueOf(appliedAt);
+        int[][] results = jdbcTemplate.batchUpdate(INSERT_APPLICATION_SQL, userIds, jdbcBatchSize, (ps, userId) -> {
+            ps.setLong(1, benefitId);
+            ps.setString(2, userId);
+            ps.setTimestamp(3, timestamp);
+        });
+        List<String> inserted = new ArrayList<>();
+        int i = 0;
+        for (int[] batch : results) {
+            for (int count : batch) {
+                if (count > 0) {
+                    inserted.add(userIds.get(i));
+                }
+                i++;
+            }
+        }
+        return inserted;
+    }
+}
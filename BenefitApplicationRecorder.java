@@ -0,0 +1,62 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.repository.BenefitApplicationBatchWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * BenefitApplicationRecorder
+ * 特典の適用記録の登録と、それに伴う処理（BenefitAppliedイベントの発行・メトリクスの記録）をまとめて行うコンポーネント。
+ * 個別の適用（LoyaltyService.applyBenefit）と一括適用ジョブの両方から呼び出し、適用の記録方法と副作用を揃えます。
+ * 呼び出し元のトランザクション内で実行してください。
+ */
+@Component
+public class BenefitApplicationRecorder {
+
+    @Autowired
+    private BenefitApplicationBatchWriter benefitApplicationBatchWriter;
+
+    @Autowired
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Autowired
+    private LoyaltyMetrics loyaltyMetrics;
+
+    /**
+     * 1ユーザーへの特典の適用を記録（適用済みの場合はイベントを発行しない）。
+     *
+     * @param benefitId 特典ID
+     * @param userId    ユーザーID
+     * @param stageName 適用時のステージ名
+     */
+    public void recordApplication(Long benefitId, String userId, String stageName) {
+        List<String> inserted = benefitApplicationBatchWriter.insertApplications(benefitId, List.of(userId), LocalDateTime.now());
+        if (!inserted.isEmpty()) {
+            loyaltyEventPublisher.publish(LoyaltyEvent.BENEFIT_APPLIED, userId,
+                    LoyaltyEventPublisher.payload("benefitId", benefitId, "stage", stageName));
+        }
+        loyaltyMetrics.recordBenefitApplied(true);
+    }
+
+    /**
+     * 複数ユーザーへの特典の適用をまとめて記録（新たに適用したユーザーのみイベントを発行する）。
+     *
+     * @param benefitId 特典ID
+     * @param userIds   適用するユーザーIDのリスト
+     * @param jobId     一括適用ジョブID
+     * @return 新たに適用したユーザー数
+     */
+    public int recordApplications(Long benefitId, List<String> userIds, Long jobId) {
+        List<String> inserted = benefitApplicationBatchWriter.insertApplications(benefitId, userIds, LocalDateTime.now());
+        for (String userId : inserted) {
+            loyaltyEventPublisher.publish(LoyaltyEvent.BENEFIT_APPLIED, userId,
+                    LoyaltyEventPublisher.payload("benefitId", benefitId, "jobId", jobId));
+            loyaltyMetrics.recordBenefitApplied(true);
+        }
+        return inserted.size();
+    }
+}
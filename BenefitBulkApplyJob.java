@@ -0,0 +1,345 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.Benefit;
+import com.example.loyaltyprogram.model.BenefitBulkApplyJobEntity;
+import com.example.loyaltyprogram.repository.BenefitBulkApplyJobRepository;
+import com.example.loyaltyprogram.repository.StageEntityRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BenefitBulkApplyJob
+ * 特典を対象ステージまたは指定ユーザーへ一括で適用する非同期ジョブ。
+ * 対象ユーザーをユーザーIDの昇順にチャンク単位で処理し、ステージによる対象判定は1チャンクにつき1回の集合クエリで行います。
+ * 適用記録は個別の適用と同じく BenefitApplicationRecorder で登録し（イベント・メトリクスも同様）、
+ * 処理済みの最後のユーザーIDを同一トランザクションで記録するため、失敗したジョブは再開時に続きから処理します。
+ *
+ * 実行中のジョブはノードごとのリースを持ち、チャンクごとに延長します。
+ * リースが切れた実行中のジョブ（実行ノードが停止したもの）だけを、起動時と定期的な確認で引き継ぎます。
+ *
+ * 対象ユーザーの検索と適用記録の登録は既定のシャードに対して行うため、シャード分割時はジョブを受け付けません。
+ */
+@Service
+public class BenefitBulkApplyJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenefitBulkApplyJob.class);
+
+    @Autowired
+    private BenefitBulkApplyJobRepository benefitBulkApplyJobRepository;
+
+    @Autowired
+    private BenefitApplicationRecorder benefitApplicationRecorder;
+
+    @Autowired
+    private StageEntityRepository stageEntityRepository;
+
+    @Autowired
+    private StageBenefitCache stageBenefitCache;
+
+    @Autowired
+    private BenefitEligibilityIndex benefitEligibilityIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    @Value("${loyalty.benefit.bulk-apply.workers:2}")
+    private int workerCount;
+
+    @Value("${loyalty.benefit.bulk-apply.chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * ジョブのリースの有効期間（1チャンクの処理時間より十分長くする）
+     */
+    @Value("${loyalty.benefit.bulk-apply.lease-seconds:300}")
+    private long leaseSeconds;
+
+    /**
+     * このノードの識別子（リースの保持者）
+     */
+    private final String ownerId = UUID.randomUUID().toString();
+
+    private ExecutorService executor;
+
+    /**
+     * 実行中のジョブID（同じジョブの二重実行を防ぐ）
+     */
+    private final Set<Long> runningJobIds = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newFixedThreadPool(workerCount);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow(); // 処理中のチャンクはロールバックされ、次回起動時に続きから再開される
+    }
+
+    /**
+     * 実行ノードの停止によりリースが切れた実行中のジョブを引き継いで再開します。
+     * 他のノードがリースを保持している（実行中の）ジョブは再開しません。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${loyalty.benefit.bulk-apply.resume-interval-ms:60000}")
+    public void resumeInterruptedJobs() {
+        if (shardingEnabled) {
+            return;
+        }
+        for (BenefitBulkApplyJobEntity job : benefitBulkApplyJobRepository.findByStatus(BenefitBulkApplyJobEntity.STATUS_RUNNING)) {
+            LocalDateTime now = LocalDateTime.now();
+            Integer claimed = transactionTemplate.execute(status ->
+                    benefitBulkApplyJobRepository.claimExpiredLease(job.getId(), ownerId, now, now.plusSeconds(leaseSeconds)));
+            if (claimed != null && claimed == 1) {
+                logger.info("リースが切れた特典の一括適用ジョブを引き継ぎます: ジョブID={}", job.getId());
+                submit(job.getId());
+            }
+        }
+    }
+
+    /**
+     * ステージを対象とする一括適用ジョブを登録して開始します。
+     *
+     * @param benefitId 特典ID
+     * @param stageName 対象ステージ名（nullの場合は特典の対象ステージ全て）
+     * @return 登録したジョブ
+     * @throws IllegalStateException シャード分割が有効な場合
+     */
+    public BenefitBulkApplyJobEntity startForStage(Long benefitId, String stageName) {
+        return startJob(new BenefitBulkApplyJobEntity(benefitId, BenefitBulkApplyJobEntity.SELECTOR_STAGE, stageName,
+                ownerId, LocalDateTime.now().plusSeconds(leaseSeconds)));
+    }
+
+    /**
+     * 指定したユーザーを対象とする一括適用ジョブを登録して開始します（特典の対象ステージのユーザーのみに適用）。
+     *
+     * @param benefitId 特典ID
+     * @param userIds   対象ユーザーIDのリスト
+     * @return 登録したジョブ
+     * @throws IllegalStateException シャード分割が有効な場合
+     */
+    public BenefitBulkApplyJobEntity startForUsers(Long benefitId, List<String> userIds) {
+        String selector = String.join(",", new TreeSet<>(userIds)); // 昇順に処理するため並べ替えて保存する
+        return startJob(new BenefitBulkApplyJobEntity(benefitId, BenefitBulkApplyJobEntity.SELECTOR_USERS, selector,
+                ownerId, LocalDateTime.now().plusSeconds(leaseSeconds)));
+    }
+
+    /**
+     * 失敗したジョブを、処理済みの最後のユーザーIDの次から再開します。
+     *
+     * @param jobId ジョブID
+     * @return 再開したジョブ（存在しない場合は空）
+     * @throws IllegalStateException シャード分割が有効な場合
+     */
+    public Optional<BenefitBulkApplyJobEntity> resume(Long jobId) {
+        requireSingleShard();
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status ->
+                benefitBulkApplyJobRepository.restartFailed(jobId, ownerId, now.plusSeconds(leaseSeconds), now));
+        Optional<BenefitBulkApplyJobEntity> resumed = benefitBulkApplyJobRepository.findById(jobId);
+        resumed.filter(job -> BenefitBulkApplyJobEntity.STATUS_RUNNING.equals(job.getStatus()) && job.isLeasedBy(ownerId))
+                .ifPresent(job -> submit(job.getId()));
+        return resumed;
+    }
+
+    /**
+     * ジョブの進捗を取得。
+     *
+     * @param jobId ジョブID
+     * @return ジョブ（存在しない場合は空）
+     */
+    public Optional<BenefitBulkApplyJobEntity> findJob(Long jobId) {
+        return benefitBulkApplyJobRepository.findById(jobId);
+    }
+
+    /**
+     * ジョブを保存して実行を開始します。
+     *
+     * @throws IllegalStateException シャード分割が有効な場合
+     */
+    private BenefitBulkApplyJobEntity startJob(BenefitBulkApplyJobEntity job) {
+        requireSingleShard();
+        BenefitBulkApplyJobEntity saved = benefitBulkApplyJobRepository.save(job);
+        submit(saved.getId());
+        return saved;
+    }
+
+    /**
+     * シャード分割が有効な場合はジョブを受け付けません（適用記録が既定のシャードにしか登録されないため）。
+     */
+    private void requireSingleShard() {
+        if (shardingEnabled) {
+            throw new IllegalStateException("シャード分割が有効な場合、特典の一括適用ジョブは実行できません");
+        }
+    }
+
+    /**
+     * ジョブをワーカースレッドで実行します（実行中のジョブは登録しない）。
+     */
+    private void submit(Long jobId) {
+        if (runningJobIds.add(jobId)) {
+            executor.execute(() -> {
+                try {
+                    run(jobId);
+                } finally {
+                    runningJobIds.remove(jobId);
+                }
+            });
+        }
+    }
+
+    /**
+     * ジョブを処理済みの位置から最後まで実行します。
+     *
+     * @param jobId ジョブID
+     */
+    private void run(Long jobId) {
+        BenefitBulkApplyJobEntity job = benefitBulkApplyJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        try {
+            Set<String> stageNames = resolveStageNames(job);
+            List<String> selectedUserIds = BenefitBulkApplyJobEntity.SELECTOR_USERS.equals(job.getSelectorType())
+                    ? parseUserIds(job.getSelector())
+                    : null;
+            String lastUserId = (job.getLastUserId() != null) ? job.getLastUserId() : "";
+            while (!stageNames.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                List<String> candidates = (selectedUserIds == null)
+                        ? stageEntityRepository.findUserIdsByStageNamesAfter(stageNames, lastUserId, PageRequest.of(0, chunkSize))
+                        : nextUserIds(selectedUserIds, lastUserId);
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                String chunkLastUserId = candidates.get(candidates.size() - 1);
+                Integer applied = applyChunk(jobId, job.getBenefitId(), stageNames, candidates, selectedUserIds != null, chunkLastUserId);
+                if (applied == null) {
+                    logger.warn("特典の一括適用ジョブのリースを失ったため中断します: ジョブID={}", jobId);
+                    return; // 他のノードが引き継いだ
+                }
+                lastUserId = chunkLastUserId;
+                logger.info("特典の一括適用を処理中: ジョブID={} 処理済みユーザーID={} 今回の適用件数={}", jobId, lastUserId, applied);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return; // 停止時は実行中のまま残し、次回起動時に再開する
+            }
+            if (finishJob(jobId, BenefitBulkApplyJobEntity.STATUS_COMPLETED, null)) {
+                logger.info("特典の一括適用が完了しました: ジョブID={}", jobId);
+            }
+        } catch (RuntimeException e) {
+            logger.error("特典の一括適用に失敗しました: ジョブID={}", jobId, e);
+            finishJob(jobId, BenefitBulkApplyJobEntity.STATUS_FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * 1チャンク分の適用記録を登録し、同一トランザクションで進捗の記録とリースの延長を行います。
+     * 先にリースを保持している場合のみ成功する条件付き更新でリースを延長し、ジョブの行をロックしてから登録するため、
+     * リースを他のノードに引き継がれた後に適用記録や進捗を書き込むことはありません。
+     *
+     * @return 適用件数（リースを他のノードに引き継がれていた場合はnull）
+     */
+    private Integer applyChunk(Long jobId, Long benefitId, Set<String> stageNames, List<String> candidates,
+                               boolean checkStage, String chunkLastUserId) {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (benefitBulkApplyJobRepository.renewLeaseIfLeased(jobId, ownerId, now.plusSeconds(leaseSeconds), now) == 0) {
+                return null;
+            }
+            List<String> eligibleUserIds = checkStage
+                    ? stageEntityRepository.findUserIdsInStages(stageNames, candidates)
+                    : candidates;
+            int inserted = eligibleUserIds.isEmpty()
+                    ? 0
+                    : benefitApplicationRecorder.recordApplications(benefitId, eligibleUserIds, jobId);
+            benefitBulkApplyJobRepository.advanceIfLeased(jobId, ownerId, chunkLastUserId, inserted,
+                    LocalDateTime.now().plusSeconds(leaseSeconds), LocalDateTime.now());
+            return inserted;
+        });
+    }
+
+    /**
+     * ジョブの対象ステージ名を取得（特典が現在有効で、その対象であるステージのみ）。
+     *
+     * @param job ジョブ
+     * @return 対象ステージ名
+     * @throws IllegalStateException 特典が存在しない場合
+     */
+    private Set<String> resolveStageNames(BenefitBulkApplyJobEntity job) {
+        Benefit benefit = stageBenefitCache.findBenefitById(job.getBenefitId());
+        if (benefit == null) {
+            throw new IllegalStateException("特典が存在しません: 特典ID=" + job.getBenefitId());
+        }
+        Set<String> stageNames = new LinkedHashSet<>();
+        for (String stageName : benefit.getEligibleStages()) {
+            if (benefitEligibilityIndex.isEligible(benefit.getId(), stageName)) {
+                stageNames.add(stageName);
+            }
+        }
+        if (BenefitBulkApplyJobEntity.SELECTOR_STAGE.equals(job.getSelectorType()) && job.getSelector() != null) {
+            stageNames.retainAll(Collections.singleton(job.getSelector()));
+        }
+        return stageNames;
+    }
+
+    /**
+     * 指定ユーザーのうち、指定したユーザーIDより後の1チャンク分を取得（昇順に並べ替え済み）。
+     */
+    private List<String> nextUserIds(List<String> sortedUserIds, String afterUserId) {
+        int from = Collections.binarySearch(sortedUserIds, afterUserId);
+        from = (from >= 0) ? from + 1 : -from - 1;
+        return sortedUserIds.subList(from, Math.min(from + chunkSize, sortedUserIds.size()));
+    }
+
+    /**
+     * 保存した対象指定からユーザーIDのリストを復元します。
+     */
+    private List<String> parseUserIds(String selector) {
+        if (selector == null || selector.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(Arrays.asList(selector.split(",")));
+    }
+
+    /**
+     * リースを保持している場合のみ、ジョブを完了または失敗にします。
+     *
+     * @return 更新できた場合はtrue（リースを他のノードに引き継がれていた場合はfalse）
+     */
+    private boolean finishJob(Long jobId, String status, String errorMessage) {
+        Integer updated = transactionTemplate.execute(tx ->
+                benefitBulkApplyJobRepository.finishIfLeased(jobId, ownerId, status, errorMessage, LocalDateTime.now()));
+        if (updated == null || updated == 0) {
+            logger.warn("特典の一括適用ジョブのリースを失ったため状態を更新しません: ジョブID={}", jobId);
+            return false;
+        }
+        return true;
+    }
+}
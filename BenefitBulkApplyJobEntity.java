@@ -0,0 +1,196 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * BenefitBulkApplyJobEntity
+ * 特典の一括適用ジョブの対象と進捗を管理するデータモデル。
+ * 対象ユーザーをユーザーIDの昇順に処理し、処理済みの最後のユーザーIDを記録するため、
+ * 失敗したジョブは再開時に続きから処理します。
+ * 実行中のジョブは実行ノードと有効期限付きのリースを持ち、リースが切れたジョブのみ他のノードが引き継ぎます。
+ */
+@Entity
+@Table(name = "benefit_bulk_apply_jobs")
+public class BenefitBulkApplyJobEntity {
+
+    /**
+     * 対象指定: ステージ名（未指定の場合は特典の対象ステージ全て）
+     */
+    public static final String SELECTOR_STAGE = "STAGE";
+
+    /**
+     * 対象指定: ユーザーIDの一覧
+     */
+    public static final String SELECTOR_USERS = "USERS";
+
+    /**
+     * 状態: 実行中
+     */
+    public static final String STATUS_RUNNING = "RUNNING";
+
+    /**
+     * 状態: 完了
+     */
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    /**
+     * 状態: 失敗（再開可能）
+     */
+    public static final String STATUS_FAILED = "FAILED";
+
+    // --- フィールド定義 ---
+
+    /**
+     * ジョブ識別子（主キー）
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 適用する特典ID
+     */
+    @Column(name = "benefit_id", nullable = false)
+    private Long benefitId;
+
+    /**
+     * 対象指定の種別（STAGE / USERS）
+     */
+    @Column(name = "selector_type", nullable = false)
+    private String selectorType;
+
+    /**
+     * 対象指定（ステージ名、またはユーザーIDのカンマ区切り）
+     */
+    @Lob
+    @Column(name = "selector")
+    private String selector;
+
+    /**
+     * 処理済みの最後のユーザーID（未処理の場合はnull）
+     */
+    @Column(name = "last_user_id")
+    private String lastUserId;
+
+    /**
+     * 適用件数（適用済みだったユーザーを除く）
+     */
+    @Column(name = "applied_count", nullable = false)
+    private long appliedCount;
+
+    /**
+     * 状態（RUNNING / COMPLETED / FAILED）
+     */
+    @Column(name = "status", nullable = false)
+    private String status;
+
+    /**
+     * 失敗時のエラーメッセージ
+     */
+    @Column(name = "error_message")
+    private String errorMessage;
+
+    /**
+     * 実行中のノードの識別子（リースの保持者）
+     */
+    @Column(name = "owner_id")
+    private String ownerId;
+
+    /**
+     * リースの有効期限（チャンクごとに延長）
+     */
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    /**
+     * ジョブ登録日時
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * 最終更新日時
+     */
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // --- コンストラクタ ---
+
+    public BenefitBulkApplyJobEntity() {
+    }
+
+    public BenefitBulkApplyJobEntity(Long benefitId, String selectorType, String selector,
+                                     String ownerId, LocalDateTime leaseExpiresAt) {
+        this.benefitId = benefitId;
+        this.selectorType = selectorType;
+        this.selector = selector;
+        this.status = STATUS_RUNNING;
+        this.ownerId = ownerId;
+        this.leaseExpiresAt = leaseExpiresAt;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    // --- Getter & Setter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getBenefitId() {
+        return benefitId;
+    }
+
+    public String getSelectorType() {
+        return selectorType;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public String getLastUserId() {
+        return lastUserId;
+    }
+
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // --- ヘルパーメソッド ---
+
+    /**
+     * 指定したノードがリースを保持しているかを判定。
+     *
+     * @param ownerId ノードの識別子
+     * @return リースを保持している場合はtrue
+     */
+    public boolean isLeasedBy(String ownerId) {
+        return ownerId.equals(this.ownerId);
+    }
+}
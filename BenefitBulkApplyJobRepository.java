@@ -0,0 +1,112 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.BenefitBulkApplyJobEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * BenefitBulkApplyJobRepository
+ * 特典の一括適用ジョブ（benefit_bulk_apply_jobsテーブル）を管理するリポジトリ。
+ * ジョブの状態・進捗・リースは、読み込んだエンティティの変更（ダーティチェック）ではなく
+ * 条件付きの更新で変更し、他のノードが取得したリースを上書きしないようにします。
+ */
+@Repository
+public interface BenefitBulkApplyJobRepository extends JpaRepository<BenefitBulkApplyJobEntity, Long> {
+
+    /**
+     * 状態でジョブを取得。
+     *
+     * @param status 状態
+     * @return ジョブのリスト
+     */
+    List<BenefitBulkApplyJobEntity> findByStatus(String status);
+
+    /**
+     * 実行中でリースが切れたジョブのリースを取得（他のノードが実行中のジョブは取得しない）。
+     *
+     * @param jobId          ジョブID
+     * @param ownerId        取得するノードの識別子
+     * @param now            現在日時
+     * @param leaseExpiresAt 取得後のリースの有効期限
+     * @return 更新件数（取得できた場合は1）
+     */
+    @Modifying
+    @Query("UPDATE BenefitBulkApplyJobEntity j SET j.ownerId = :ownerId, j.leaseExpiresAt = :leaseExpiresAt, j.updatedAt = :now " +
+            "WHERE j.id = :jobId AND j.status = 'RUNNING' AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < :now)")
+    int claimExpiredLease(@Param("jobId") Long jobId, @Param("ownerId") String ownerId,
+                          @Param("now") LocalDateTime now, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * リースを保持している場合のみ、リースを延長。
+     * 更新した行はトランザクションの終了までロックされるため、その間に他のノードがリースを取得することはありません。
+     *
+     * @param jobId          ジョブID
+     * @param ownerId        リースを保持しているノードの識別子
+     * @param leaseExpiresAt 延長後のリースの有効期限
+     * @param now            現在日時
+     * @return 更新件数（リースを失っていた場合は0）
+     */
+    @Modifying
+    @Query("UPDATE BenefitBulkApplyJobEntity j SET j.leaseExpiresAt = :leaseExpiresAt, j.updatedAt = :now " +
+            "WHERE j.id = :jobId AND j.ownerId = :ownerId AND j.status = 'RUNNING'")
+    int renewLeaseIfLeased(@Param("jobId") Long jobId, @Param("ownerId") String ownerId,
+                           @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+
+    /**
+     * リースを保持している場合のみ、1チャンク分の進捗を記録してリースを延長。
+     *
+     * @param jobId          ジョブID
+     * @param ownerId        リースを保持しているノードの識別子
+     * @param lastUserId     チャンク内の最後のユーザーID
+     * @param appliedCount   チャンク内の適用件数
+     * @param leaseExpiresAt 延長後のリースの有効期限
+     * @param now            現在日時
+     * @return 更新件数（リースを失っていた場合は0）
+     */
+    @Modifying
+    @Query("UPDATE BenefitBulkApplyJobEntity j SET j.lastUserId = :lastUserId, j.appliedCount = j.appliedCount + :appliedCount, " +
+            "j.leaseExpiresAt = :leaseExpiresAt, j.updatedAt = :now " +
+            "WHERE j.id = :jobId AND j.ownerId = :ownerId AND j.status = 'RUNNING'")
+    int advanceIfLeased(@Param("jobId") Long jobId, @Param("ownerId") String ownerId,
+                        @Param("lastUserId") String lastUserId, @Param("appliedCount") long appliedCount,
+                        @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+
+    /**
+     * リースを保持している場合のみ、ジョブを完了または失敗にします。
+     *
+     * @param jobId        ジョブID
+     * @param ownerId      リースを保持しているノードの識別子
+     * @param status       変更後の状態
+     * @param errorMessage エラーメッセージ（完了の場合はnull）
+     * @param now          現在日時
+     * @return 更新件数（リースを失っていた場合は0）
+     */
+    @Modifying
+    @Query("UPDATE BenefitBulkApplyJobEntity j SET j.status = :status, j.errorMessage = :errorMessage, " +
+            "j.leaseExpiresAt = NULL, j.updatedAt = :now " +
+            "WHERE j.id = :jobId AND j.ownerId = :ownerId AND j.status = 'RUNNING'")
+    int finishIfLeased(@Param("jobId") Long jobId, @Param("ownerId") String ownerId, @Param("status") String status,
+                       @Param("errorMessage") String errorMessage, @Param("now") LocalDateTime now);
+
+    /**
+     * 失敗したジョブを実行中に戻し、リースを取得（失敗状態のジョブのみ）。
+     *
+     * @param jobId          ジョブID
+     * @param ownerId        取得するノードの識別子
+     * @param leaseExpiresAt リースの有効期限
+     * @param now            現在日時
+     * @return 更新件数（失敗状態でない場合は0）
+     */
+    @Modifying
+    @Query("UPDATE BenefitBulkApplyJobEntity j SET j.status = 'RUNNING', j.errorMessage = NULL, j.ownerId = :ownerId, " +
+            "j.leaseExpiresAt = :leaseExpiresAt, j.updatedAt = :now " +
+            "WHERE j.id = :jobId AND j.status = 'FAILED'")
+    int restartFailed(@Param("jobId") Long jobId, @Param("ownerId") String ownerId,
+                      @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+}
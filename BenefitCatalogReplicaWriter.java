@@ -0,0 +1,46 @@
+package com.example.loyaltyprogram.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BenefitCatalogReplicaWriter
+ * 既定のシャードで採番した特典（benefitsテーブルの行）を、同じIDのまま他のシャードへ複製するリポジトリ。
+ * 複製先でIDENTITY採番させると、同じ特典IDがシャードごとに別の特典を指すため、IDを指定して登録します。
+ */
+@Repository
+public class BenefitCatalogReplicaWriter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 特典の行を列名と値の組で取得（現在のシャードから）。
+     *
+     * @param benefitId 特典ID
+     * @return 列名ごとの値（存在しない場合はnull）
+     */
+    public Map<String, Object> findRow(Long benefitId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT * FROM benefits WHERE id = ?", benefitId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * 特典の行を同じIDで登録（現在のシャードに既にある場合は何もしない）。
+     * 列の値の更新は、登録後にエンティティとして保存して反映してください。
+     *
+     * @param row {@link #findRow(Long)} で取得した列名ごとの値
+     * @return 登録した場合はtrue
+     */
+    public boolean insertIfAbsent(Map<String, Object> row) {
+        String columns = String.join(", ", row.keySet());
+        String placeholders = String.join(", ", Collections.nCopies(row.size(), "?"));
+        return jdbcTemplate.update("INSERT INTO benefits (" + columns + ") VALUES (" + placeholders + ") " +
+                "ON CONFLICT (id) DO NOTHING", row.values().toArray()) > 0;
+    }
+}
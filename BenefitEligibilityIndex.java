@@ -0,0 +1,218 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.Benefit;
+import com.example.loyaltyprogram.repository.BenefitRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BenefitEligibilityIndex
+ * ステージ名ごとの有効な特典を、有効期限（validUntil）の早い順に保持するインデックス。
+ * 特典の更新時は該当するステージの一覧のみを作り直し、期限切れの特典は定期的に取り除きます。
+ * 参照はステージ名による1回のマップ参照で行い、参照時にロックを取得しません。
+ */
+@Component
+public class BenefitEligibilityIndex {
+
+    private static final Comparator<Benefit> BY_VALID_UNTIL = Comparator
+            .comparing(Benefit::getValidUntil, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Benefit::getId);
+
+    @Autowired
+    private BenefitRepository benefitRepository;
+
+    /**
+     * 特典IDごとの特典と対象ステージ名（開始前の特典を含む）
+     */
+    private final ConcurrentHashMap<Long, IndexedBenefit> benefitsById = new ConcurrentHashMap<>();
+
+    /**
+     * ステージ名ごとの特典ID（開始前の特典を含む、更新時のみ参照）
+     */
+    private final Map<String, Set<Long>> benefitIdsByStage = new HashMap<>();
+
+    /**
+     * ステージ名ごとの有効な特典（有効期限順の変更不可リスト、更新時に差し替える）
+     */
+    private final ConcurrentHashMap<String, List<Benefit>> activeByStage = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        rebuild();
+    }
+
+    /**
+     * 特典カタログ全件からインデックスを作り直します（他ノードでの変更の取り込み用）。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.benefit.index.rebuild-interval:300000}")
+    public synchronized void rebuild() {
+        List<Benefit> benefits = benefitRepository.findAll();
+        Set<Long> registeredIds = new HashSet<>();
+        benefitIdsByStage.clear();
+        for (Benefit benefit : benefits) {
+            if (register(benefit)) {
+                registeredIds.add(benefit.getId());
+            }
+        }
+        benefitsById.keySet().retainAll(registeredIds); // 参照中の特典を消さないよう、上書き後に不要な特典のみ削除する
+        Set<String> stageNames = new HashSet<>(benefitIdsByStage.keySet());
+        stageNames.addAll(activeByStage.keySet());
+        publish(stageNames, LocalDateTime.now());
+    }
+
+    /**
+     * 期限切れの特典を取り除き、開始日時を迎えた特典を有効な特典に加えます。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.benefit.index.eviction-interval:60000}")
+    public synchronized void evictExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> affectedStages = new HashSet<>();
+        benefitsById.values().removeIf(indexed -> {
+            LocalDateTime validUntil = indexed.benefit.getValidUntil();
+            if (validUntil == null || validUntil.isAfter(now)) {
+                return false;
+            }
+            for (String stageName : indexed.stageNames) {
+                affectedStages.add(stageName);
+                benefitIdsByStage.get(stageName).remove(indexed.benefit.getId());
+            }
+            return true;
+        });
+        affectedStages.addAll(benefitIdsByStage.keySet()); // 開始日時を迎えた特典を反映する
+        publish(affectedStages, now);
+    }
+
+    /**
+     * 更新された特典をインデックスに反映します（変更前後の対象ステージの一覧のみを作り直す）。
+     *
+     * @param benefit 更新後の特典
+     */
+    public synchronized void upsert(Benefit benefit) {
+        Set<String> affectedStages = new HashSet<>();
+        IndexedBenefit previous = benefitsById.remove(benefit.getId());
+        if (previous != null) {
+            for (String stageName : previous.stageNames) {
+                affectedStages.add(stageName);
+                benefitIdsByStage.get(stageName).remove(benefit.getId());
+            }
+        }
+        register(benefit);
+        affectedStages.addAll(benefit.getEligibleStages());
+        publish(affectedStages, LocalDateTime.now());
+    }
+
+    /**
+     * ステージの有効な特典を有効期限の早い順に取得。
+     * 前回の期限切れ除去以降に期限を迎えた特典は、先頭から読み飛ばします。
+     *
+     * @param stageName ステージ名
+     * @return 有効な特典のリスト（変更不可）
+     */
+    public List<Benefit> getActiveBenefits(String stageName) {
+        List<Benefit> benefits = activeByStage.getOrDefault(stageName, Collections.emptyList());
+        LocalDateTime now = LocalDateTime.now();
+        int first = 0;
+        while (first < benefits.size() && !isActive(benefits.get(first), now)) {
+            first++; // 有効期限順のため、期限切れは先頭に並ぶ
+        }
+        return (first == 0) ? benefits : benefits.subList(first, benefits.size());
+    }
+
+    /**
+     * 特典がステージの対象で、現在有効かを判定。
+     *
+     * @param benefitId 特典ID
+     * @param stageName ステージ名
+     * @return 適用可能な場合はtrue
+     */
+    public boolean isEligible(Long benefitId, String stageName) {
+        IndexedBenefit indexed = benefitsById.get(benefitId);
+        return indexed != null && indexed.stageNames.contains(stageName) && isActive(indexed.benefit, LocalDateTime.now());
+    }
+
+    /**
+     * DBから読み込んだ特典について、ステージの対象で現在有効かを判定（インデックスを介さない確認用）。
+     *
+     * @param benefit   特典
+     * @param stageName ステージ名
+     * @return 適用可能な場合はtrue
+     */
+    public static boolean isEligible(Benefit benefit, String stageName) {
+        return benefit.getEligibleStages().contains(stageName) && isActive(benefit, LocalDateTime.now());
+    }
+
+    /**
+     * 特典をインデックスに登録（期限切れの特典は登録しない）。
+     *
+     * @return 登録した場合はtrue
+     */
+    private boolean register(Benefit benefit) {
+        LocalDateTime now = LocalDateTime.now();
+        if (benefit.getValidUntil() != null && !benefit.getValidUntil().isAfter(now)) {
+            return false;
+        }
+        IndexedBenefit indexed = new IndexedBenefit(benefit);
+        benefitsById.put(benefit.getId(), indexed);
+        for (String stageName : indexed.stageNames) {
+            benefitIdsByStage.computeIfAbsent(stageName, name -> new HashSet<>()).add(benefit.getId());
+        }
+        return true;
+    }
+
+    /**
+     * 指定したステージの有効な特典の一覧を作り直して差し替えます。
+     */
+    private void publish(Set<String> stageNames, LocalDateTime now) {
+        for (String stageName : stageNames) {
+            List<Benefit> active = new ArrayList<>();
+            for (Long benefitId : benefitIdsByStage.getOrDefault(stageName, Collections.emptySet())) {
+                Benefit benefit = benefitsById.get(benefitId).benefit;
+                if (isActive(benefit, now)) {
+                    active.add(benefit);
+                }
+            }
+            if (active.isEmpty()) {
+                activeByStage.remove(stageName);
+                continue;
+            }
+            active.sort(BY_VALID_UNTIL);
+            activeByStage.put(stageName, Collections.unmodifiableList(active));
+        }
+    }
+
+    /**
+     * 特典が指定日時に有効かを判定（開始・終了日時が未設定の場合は無期限）。
+     */
+    private static boolean isActive(Benefit benefit, LocalDateTime now) {
+        return (benefit.getValidFrom() == null || !now.isBefore(benefit.getValidFrom()))
+                && (benefit.getValidUntil() == null || now.isBefore(benefit.getValidUntil()));
+    }
+
+    /**
+     * インデックスに登録した特典と、その対象ステージ名（判定用の集合）。
+     */
+    private static class IndexedBenefit {
+
+        private final Benefit benefit;
+
+        private final Set<String> stageNames;
+
+        private IndexedBenefit(Benefit benefit) {
+            this.benefit = benefit;
+            this.stageNames = Set.copyOf(benefit.getEligibleStages());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.loyaltyprogram.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * BenefitRecord
+ * 特典（benefitsテーブル）の1行を表すR2DBC用のデータモデル（reactiveプロファイル用）。
+ *
+ * @param id          特典ID
+ * @param stageId     特典が紐づくステージ情報ID
+ * @param description 特典の説明
+ * @param validFrom   有効期間の開始日時
+ * @param validUntil  有効期間の終了日時
+ */
+@Table("benefits")
+public record BenefitRecord(
+        @Id Long id,
+        @Column("stage_id") Long stageId,
+        @Column("description") String description,
+        @Column("valid_from") LocalDateTime validFrom,
+        @Column("valid_until") LocalDateTime validUntil) {
+}
@@ -0,0 +1,43 @@
+package com.example.loyaltyprogram.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * ConnectionPoolSizes
+ * データソースのコネクションプールのサイズを取得するユーティリティ。
+ * シャード・レプリカの振り分け用データソースや遅延取得のプロキシで包まれている場合は、
+ * 既定の振り分け先（既定のシャード・プライマリ）のプールまで辿ってサイズを取得します。
+ */
+public final class ConnectionPoolSizes {
+
+    private ConnectionPoolSizes() {
+    }
+
+    /**
+     * データソースのコネクションプールの最大サイズを取得。
+     *
+     * @param dataSource データソース
+     * @param fallback   プールサイズが取得できない場合の値
+     * @return コネクションプールの最大サイズ
+     */
+    public static int resolveMaximumPoolSize(DataSource dataSource, int fallback) {
+        DataSource current = dataSource;
+        for (int depth = 0; depth < 8 && current != null; depth++) {
+            if (current instanceof HikariDataSource hikariDataSource) {
+                return hikariDataSource.getMaximumPoolSize();
+            }
+            if (current instanceof DelegatingDataSource delegatingDataSource) {
+                current = delegatingDataSource.getTargetDataSource(); // LazyConnectionDataSourceProxy など
+            } else if (current instanceof AbstractRoutingDataSource routingDataSource) {
+                current = routingDataSource.getResolvedDefaultDataSource(); // 既定のシャード・プライマリ
+            } else {
+                break;
+            }
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.loyaltyprogram.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ConsistentHashRing
+ * ユーザーIDをシャードへ割り当てるコンシステントハッシュのリング（不変）。
+ * 各シャードをリング上の複数の仮想ノードとして配置するため、シャードを追加・削除しても
+ * 移動するユーザーは新旧のシャードに関係する範囲のみに限られます。
+ * ハッシュはJVMやノードによらず同じ値になるよう、UTF-8のバイト列から算出します。
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> shardNames;
+
+    /**
+     * 仮想ノードの位置（昇順）
+     */
+    private final long[] points;
+
+    /**
+     * 仮想ノードごとのシャード番号（points と同じ並び）
+     */
+    private final int[] owners;
+
+    public ConsistentHashRing(List<String> shardNames, int virtualNodes) {
+        if (shardNames.isEmpty()) {
+            throw new IllegalArgumentException("シャードが1つも指定されていません");
+        }
+        this.shardNames = Collections.unmodifiableList(new ArrayList<>(shardNames));
+        int size = shardNames.size() * virtualNodes;
+        long[] unsortedPoints = new long[size];
+        int[] unsortedOwners = new int[size];
+        int n = 0;
+        for (int shard = 0; shard < shardNames.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                unsortedPoints[n] = hash(shardNames.get(shard) + "#" + node);
+                unsortedOwners[n] = shard;
+                n++;
+            }
+        }
+        // 位置の昇順に並べ替える（位置と所有シャードを同じ順で並べるため添字で並べ替え）
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.points[i] = unsortedPoints[order[i]];
+            this.owners[i] = unsortedOwners[order[i]];
+        }
+    }
+
+    /**
+     * ユーザーIDが割り当てられたシャード名を取得。
+     *
+     * @param userId ユーザーID
+     * @return シャード名
+     */
+    public String shardFor(String userId) {
+        long h = hash(userId);
+        int index = Arrays.binarySearch(points, h);
+        if (index < 0) {
+            index = -index - 1; // 時計回りで最初の仮想ノード
+        }
+        if (index == points.length) {
+            index = 0; // リングの末尾を越えた場合は先頭に戻る
+        }
+        return shardNames.get(owners[index]);
+    }
+
+    /**
+     * リングに含まれるシャード名を取得。
+     *
+     * @return シャード名のリスト（設定順）
+     */
+    public List<String> getShardNames() {
+        return shardNames;
+    }
+
+    /**
+     * 文字列の64ビットハッシュ（FNV-1a に MurmurHash3 の最終ミックスを適用）。
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
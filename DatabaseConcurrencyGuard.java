@@ -0,0 +1,87 @@
+package com.example.loyaltyprogram.config;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DatabaseConcurrencyGuard
+ * DBを使用するリクエストの同時実行数を、コネクションプールのサイズに合わせて制限するインターセプター。
+ * 仮想スレッドではリクエストごとにスレッドが生成され同時実行数に上限がなくなるため、
+ * プールの空きを待つスレッドが際限なく増えないよう、プールサイズと同数の許可証で入口を絞ります。
+ * 一定時間内に許可証を取得できない場合は 503 を返します。
+ * 非同期処理（ストリーム返却など）のリクエストは、最初のディスパッチで取得した許可証を非同期処理の完了まで保持し、
+ * 非同期の再ディスパッチでは取得し直しません。
+ */
+public class DatabaseConcurrencyGuard implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = DatabaseConcurrencyGuard.class.getName() + ".PERMIT";
+
+    private final Semaphore permits;
+
+    private final long acquireTimeoutMillis;
+
+    public DatabaseConcurrencyGuard(int maxConcurrency, long acquireTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * データソースのコネクションプールサイズに合わせたガードを作成します。
+     * シャード・レプリカの振り分け用データソースの場合は、既定の振り分け先のプールサイズを使用します。
+     *
+     * @param dataSource           データソース
+     * @param defaultConcurrency   プールサイズが取得できない場合の同時実行数
+     * @param acquireTimeoutMillis 許可証の取得待ち時間（ミリ秒）
+     * @return ガード
+     */
+    public static DatabaseConcurrencyGuard matchingPoolSize(DataSource dataSource, int defaultConcurrency, long acquireTimeoutMillis) {
+        int poolSize = ConnectionPoolSizes.resolveMaximumPoolSize(dataSource, defaultConcurrency);
+        return new DatabaseConcurrencyGuard(poolSize, acquireTimeoutMillis);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // 最初のディスパッチで取得した許可証を引き続き使用する
+        }
+        if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "混雑しているため処理できません。時間をおいて再試行してください。");
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * 非同期処理の開始時は許可証を返却せず、非同期の再ディスパッチ完了時（afterCompletion）に返却します。
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // 許可証は保持したままにする
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permits.release();
+        }
+    }
+
+    /**
+     * 現在利用可能な許可証の数を取得。
+     *
+     * @return 利用可能な許可証の数
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+}
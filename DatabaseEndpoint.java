@@ -0,0 +1,94 @@
+package com.example.loyaltyprogram.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+
+/**
+ * DatabaseEndpoint
+ * シャードやリードレプリカなど、個別に接続するDB1つ分の接続情報。
+ */
+public class DatabaseEndpoint {
+
+    // --- フィールド定義 ---
+
+    /**
+     * 接続先の名前（シャード名・レプリカ名）
+     */
+    private String name;
+
+    /**
+     * JDBC URL
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * コネクションプールの最大サイズ
+     */
+    private int maximumPoolSize = 10;
+
+    // --- Getter / Setter ---
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    // --- ヘルパーメソッド ---
+
+    /**
+     * 接続情報からコネクションプールを作成します。
+     *
+     * @param poolName コネクションプール名（メトリクス・ログの識別用）
+     * @return コネクションプール
+     */
+    public HikariDataSource createDataSource(String poolName) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName(poolName);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        return dataSource;
+    }
+}
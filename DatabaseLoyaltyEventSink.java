@@ -0,0 +1,110 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DatabaseLoyaltyEventSink
+ * イベントを既定のシャードのイベントログ（loyalty_event_logテーブル）に追記する配信先の実装。
+ * 全ノードが同じテーブルに追記・読み出しを行うため、複数ノード構成でもオフセットはノードによらず一意です。
+ * 追記はアドバイザリロックで直列化し、オフセットを欠番なく採番します（PostgreSQL前提）。
+ */
+@Component
+@ConditionalOnProperty(name = "loyalty.events.sink", havingValue = "database")
+public class DatabaseLoyaltyEventSink implements LoyaltyEventSink {
+
+    /**
+     * 追記を直列化するアドバイザリロックのキー
+     */
+    private static final long APPEND_LOCK_KEY = 0x4C45_5654_4C4F_4701L;
+
+    private static final String INSERT_EVENT_SQL =
+            "INSERT INTO loyalty_event_log (event_offset, event_type, user_id, event_json, appended_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_EVENTS_SQL =
+            "SELECT event_json FROM loyalty_event_log WHERE event_offset >= ? ORDER BY event_offset LIMIT ?";
+
+    private static final String END_OFFSET_SQL =
+            "SELECT COALESCE(MAX(event_offset) + 1, 0) FROM loyalty_event_log";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public void append(List<LoyaltyEvent> events) {
+        // 呼び出し元（アウトボックスの取り出し）とは別のトランザクションで、既定のシャードに追記する
+        shardRouter.callOnShard(shardRouter.getDefaultShard(), () -> newTransaction().execute(status -> {
+            jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?)", APPEND_LOCK_KEY);
+            long offset = jdbcTemplate.queryForObject(END_OFFSET_SQL, Long.class);
+            Timestamp appendedAt = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(events.size());
+            for (LoyaltyEvent event : events) {
+                rows.add(new Object[]{offset, event.getEventType(), event.getUserId(),
+                        writeEvent(event.withOffset(offset)), appendedAt});
+                offset++;
+            }
+            jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, rows);
+            return null;
+        }));
+    }
+
+    @Override
+    public List<LoyaltyEvent> readFrom(long offset, int maxEvents) {
+        return shardRouter.callOnShard(shardRouter.getDefaultShard(), () ->
+                jdbcTemplate.query(SELECT_EVENTS_SQL, (rs, rowNum) -> readEvent(rs.getString(1)),
+                        Math.max(offset, 0), maxEvents));
+    }
+
+    @Override
+    public long getEndOffset() {
+        return shardRouter.callOnShard(shardRouter.getDefaultShard(), () ->
+                jdbcTemplate.queryForObject(END_OFFSET_SQL, Long.class));
+    }
+
+    private String writeEvent(LoyaltyEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("イベントをJSONに変換できません: ID=" + event.getEventId(), e);
+        }
+    }
+
+    private LoyaltyEvent readEvent(String json) {
+        try {
+            return objectMapper.readValue(json, LoyaltyEvent.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("イベントログを読み込めません", e);
+        }
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+}
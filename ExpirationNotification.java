@@ -0,0 +1,49 @@
+package com.example.loyaltyprogram.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * ExpirationNotification
+ * ポイント有効期限通知の送信キューに積まれる通知内容。
+ */
+public class ExpirationNotification {
+
+    // --- フィールド定義 ---
+
+    /**
+     * 通知先のユーザーID
+     */
+    private final String userId;
+
+    /**
+     * 通知内容
+     */
+    private final String message;
+
+    /**
+     * 通知の受付日時
+     */
+    private final LocalDateTime requestedAt;
+
+    // --- コンストラクタ ---
+
+    public ExpirationNotification(String userId, String message) {
+        this.userId = userId;
+        this.message = message;
+        this.requestedAt = LocalDateTime.now();
+    }
+
+    // --- Getter ---
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public LocalDateTime getRequestedAt() {
+        return requestedAt;
+    }
+}
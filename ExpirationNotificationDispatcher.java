@@ -0,0 +1,183 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.ExpirationNotification;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExpirationNotificationDispatcher
+ * ポイント有効期限通知を非同期で送信するディスパッチャー。
+ * 通知は上限付きキューに積まれ、送信スレッドが一定件数ずつまとめて送信します。
+ * 同一ユーザーへの通知は前回の受付から重複排除期間が経過するまで抑止し、送信失敗時は指数バックオフで再送します。
+ * キューが満杯の場合は一定時間だけ待機し、それでも空かなければ受付を拒否します（バックプレッシャー）。
+ * 重複排除期間を過ぎた受付記録は、送信の負荷によらず一定間隔で削除します。
+ */
+@Component
+public class ExpirationNotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpirationNotificationDispatcher.class);
+
+    @Autowired
+    private NotificationSender notificationSender;
+
+    @Value("${loyalty.notification.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${loyalty.notification.batch-size:100}")
+    private int batchSize;
+
+    @Value("${loyalty.notification.enqueue-timeout-ms:50}")
+    private long enqueueTimeoutMillis;
+
+    @Value("${loyalty.notification.dedup-window-ms:86400000}")
+    private long dedupWindowMillis;
+
+    @Value("${loyalty.notification.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${loyalty.notification.initial-backoff-ms:200}")
+    private long initialBackoffMillis;
+
+    @Value("${loyalty.notification.max-backoff-ms:10000}")
+    private long maxBackoffMillis;
+
+    private BlockingQueue<ExpirationNotification> queue;
+
+    /**
+     * ユーザーIDごとの最終受付日時（エポックミリ秒、重複排除用）
+     */
+    private final ConcurrentHashMap<String, Long> lastAcceptedAtByUser = new ConcurrentHashMap<>();
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        worker = new Thread(this::runWorker, "expiration-notification-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(30)); // 残っている通知を送信しきるまで待機
+    }
+
+    /**
+     * 通知を送信キューに登録します（送信完了は待ちません）。
+     * 前回の受付から重複排除期間が経過していないユーザーへの通知は送信済みとして扱います。
+     *
+     * @param userId  ユーザーID
+     * @param message 通知内容
+     * @return 受付できた場合はtrue、キューが満杯で受付できなかった場合はfalse
+     */
+    public boolean enqueue(String userId, String message) {
+        long now = System.currentTimeMillis();
+        boolean[] accepted = new boolean[1];
+        lastAcceptedAtByUser.compute(userId, (id, lastAcceptedAt) -> {
+            if (lastAcceptedAt != null && now - lastAcceptedAt < dedupWindowMillis) {
+                return lastAcceptedAt;
+            }
+            accepted[0] = true;
+            return now;
+        });
+        if (!accepted[0]) {
+            return true; // 重複排除期間内に受付済み
+        }
+        try {
+            if (queue.offer(new ExpirationNotification(userId, message), enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lastAcceptedAtByUser.remove(userId, now); // 受付できなかったため、次回の受付を許可する
+        return false;
+    }
+
+    /**
+     * 送信待ちの通知件数を取得。
+     *
+     * @return キュー内の通知件数
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 送信スレッドの処理。キューから通知をまとめて取り出して送信します。
+     */
+    private void runWorker() {
+        List<ExpirationNotification> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ExpirationNotification first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                sendWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 通知をまとめて送信し、失敗時は指数バックオフで再送します。
+     *
+     * @param batch 送信する通知のリスト
+     * @throws InterruptedException 再送待機中に割り込まれた場合
+     */
+    private void sendWithRetry(List<ExpirationNotification> batch) throws InterruptedException {
+        long backoffMillis = initialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                notificationSender.sendBatch(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    logger.error("有効期限通知の送信を断念しました: 件数={} 試行回数={}", batch.size(), attempt, e);
+                    for (ExpirationNotification notification : batch) {
+                        lastAcceptedAtByUser.remove(notification.getUserId()); // 次回の通知要求で再送できるようにする
+                    }
+                    return;
+                }
+                logger.warn("有効期限通知の送信に失敗したため再送します: 件数={} 試行回数={}", batch.size(), attempt);
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * 重複排除期間を過ぎたユーザーの受付記録を削除します。
+     * 送信スレッドの空き時間ではなくスケジューラで実行するため、キューが空にならない高負荷時でも記録は増え続けません。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.notification.dedup-eviction-interval-ms:60000}")
+    public void evictExpiredAcceptances() {
+        long now = System.currentTimeMillis();
+        lastAcceptedAtByUser.values().removeIf(acceptedAt -> now - acceptedAt >= dedupWindowMillis);
+    }
+}
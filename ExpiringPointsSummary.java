@@ -0,0 +1,16 @@
+package com.example.loyaltyprogram.repository;
+
+import java.time.LocalDate;
+
+/**
+ * ExpiringPointsSummary
+ * 有効期限を迎えるポイントのユーザーごとの集計結果のプロジェクション。
+ */
+public interface ExpiringPointsSummary {
+
+    String getUserId();
+
+    long getPoints();
+
+    LocalDate getEarliestGrantDate();
+}
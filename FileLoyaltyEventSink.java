@@ -0,0 +1,142 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FileLoyaltyEventSink
+ * イベントを1行1件のJSON（NDJSON）としてローカルファイルに追記する配信先の実装。
+ * 各行の開始位置をメモリ上に保持し、オフセット指定の読み出しではその位置から読み出します。
+ * ファイルはノードごとに作成されるため、単一ノード構成専用です。
+ */
+@Component
+@ConditionalOnProperty(name = "loyalty.events.sink", havingValue = "file")
+public class FileLoyaltyEventSink implements LoyaltyEventSink {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${loyalty.events.file.path:loyalty-events.ndjson}")
+    private String filePath;
+
+    private Path path;
+
+    /**
+     * オフセットごとの行の開始位置（バイト）
+     */
+    private long[] lineStarts = new long[1024];
+
+    private int lineCount;
+
+    private long fileLength;
+
+    @PostConstruct
+    public void initialize() throws IOException {
+        path = Paths.get(filePath);
+        if (!Files.exists(path)) {
+            Files.createFile(path);
+        }
+        // 既存の行の開始位置を読み込む（末尾の書きかけの行は切り捨てる）
+        long lineStart = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    addLineStart(lineStart);
+                    lineStart = position;
+                }
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(lineStart);
+        }
+        fileLength = lineStart;
+    }
+
+    @Override
+    public synchronized void append(List<LoyaltyEvent> events) {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(fileLength); // 前回失敗した追記の残りを切り捨てる
+            file.seek(fileLength);
+            long position = fileLength;
+            int count = lineCount;
+            List<Long> starts = new ArrayList<>(events.size());
+            for (LoyaltyEvent event : events) {
+                byte[] line = (objectMapper.writeValueAsString(event.withOffset(count++)) + "\n").getBytes(StandardCharsets.UTF_8);
+                file.write(line);
+                starts.add(position);
+                position += line.length;
+            }
+            file.getFD().sync();
+            for (long start : starts) {
+                addLineStart(start); // 書き込みが完了してからオフセットを公開する
+            }
+            fileLength = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("イベントファイルへの書き込みに失敗しました: " + path, e);
+        }
+    }
+
+    @Override
+    public List<LoyaltyEvent> readFrom(long offset, int maxEvents) {
+        long from;
+        long until;
+        synchronized (this) {
+            if (offset < 0 || offset >= lineCount) {
+                return new ArrayList<>();
+            }
+            int to = (int) Math.min(offset + maxEvents, lineCount);
+            from = lineStarts[(int) offset];
+            until = (to < lineCount) ? lineStarts[to] : fileLength;
+        }
+        // 対象範囲をまとめて読み込み、改行で区切ってイベントに変換する
+        byte[] bytes = new byte[(int) (until - from)];
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            file.seek(from);
+            file.readFully(bytes);
+            List<LoyaltyEvent> events = new ArrayList<>();
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    events.add(objectMapper.readValue(bytes, lineStart, i - lineStart, LoyaltyEvent.class));
+                    lineStart = i + 1;
+                }
+            }
+            return events;
+        } catch (IOException e) {
+            throw new UncheckedIOException("イベントファイルの読み込みに失敗しました: " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized long getEndOffset() {
+        return lineCount;
+    }
+
+    private void addLineStart(long start) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineStarts[lineCount++] = start;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.ExpirationNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * FileNotificationSender
+ * 通知をローカルファイルに追記する通知送信の代替実装（外部通知サービスの接続前の検証用）。
+ */
+@Component
+@ConditionalOnProperty(name = "loyalty.notification.sender", havingValue = "file")
+public class FileNotificationSender implements NotificationSender {
+
+    @Value("${loyalty.notification.file.path:notifications.log}")
+    private String filePath;
+
+    @Override
+    public synchronized void sendBatch(List<ExpirationNotification> notifications) {
+        Path path = Paths.get(filePath);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (ExpirationNotification notification : notifications) {
+                writer.write("通知送信: ユーザーID=" + notification.getUserId()
+                        + " 内容=" + notification.getMessage()
+                        + " 受付日時=" + notification.getRequestedAt());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("通知ファイルへの書き込みに失敗しました: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.loyaltyprogram.repository;
+
+/**
+ * GrantDebitTotal
+ * ユーザーごとの付与ポイント（指定日より前の付与分）と減算ポイント（利用・失効の全件）の集計結果のプロジェクション。
+ * 先に付与されたポイントから順に消費される（先入れ先出し）ものとして、失効対象のポイントを算出するために使用します。
+ */
+public interface GrantDebitTotal {
+
+    String getUserId();
+
+    long getGrantedPoints();
+
+    long getDebitedPoints();
+
+    /**
+     * 指定日までの付与ポイントのうち、利用・失効で消費されずに残っているポイント数を取得。
+     *
+     * @return 未消費のポイント数（0以上）
+     */
+    default long getUnconsumedPoints() {
+        return Math.max(0, getGrantedPoints() - getDebitedPoints());
+    }
+}
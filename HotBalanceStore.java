@@ -0,0 +1,426 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.repository.PointEntityRepository;
+import com.example.loyaltyprogram.repository.PointEntityRepository.PointBalanceRow;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * HotBalanceStore
+ * 会員のポイント残高をJVM内に保持するインメモリストア（台帳モード専用）。
+ * ユーザーIDの64ビットハッシュをキーとするオープンアドレス法のハッシュ表を、プリミティブ配列（AtomicLongArray 2本と読み込み時刻の AtomicIntegerArray）で構成します。
+ * 1エントリあたり20バイトで、エントリごとのオブジェクトを生成しないため、2,000万会員でも数百MBでGCの負荷になりません。
+ *
+ * 値は「残高(上位32ビット) | 保持フラグ」を1つのlong値に詰めて保持し、CASで更新します。
+ * 残高の変更はトランザクションのコミット後に差分として反映し、ロールバック時は反映しません。
+ * DBからの読み込みと差分の反映が競合した場合は、ストライプごとの世代番号で検出してエントリを無効化します。
+ *
+ * このノード以外（他ノード・シャード再配置・reactiveプロファイル）による残高の変更は反映されないため、
+ * エントリはDBから読み込んでから一定時間（ttl-seconds）で失効させ、次回の参照で読み込み直します。
+ * 保持している残高は参照用の目安であり、ポイント利用の可否はDBの条件付き更新で判定してください。
+ */
+@Component
+public class HotBalanceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotBalanceStore.class);
+
+    /**
+     * 値が保持されていることを示すビット（値0を「未保持」とするため）
+     */
+    private static final long PRESENT_BIT = 1L << 31;
+
+    private static final int STRIPES = 4096;
+
+    @Autowired
+    private PointEntityRepository pointEntityRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.points.hot-store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    /**
+     * 保持する会員数の上限
+     */
+    @Value("${loyalty.points.hot-store.max-members:20000000}")
+    private int maxMembers;
+
+    @Value("${loyalty.points.hot-store.load-factor:0.8}")
+    private double loadFactor;
+
+    /**
+     * DBから読み込んだ残高を保持する秒数（他ノードでの変更が反映されるまでの最大時間）
+     */
+    @Value("${loyalty.points.hot-store.ttl-seconds:30}")
+    private int ttlSeconds;
+
+    /**
+     * 読み込み時刻の基準（System.nanoTime）
+     */
+    private final long baseNanos = System.nanoTime();
+
+    /**
+     * キー（ユーザーIDの64ビットハッシュ、0は空きスロット）
+     */
+    private AtomicLongArray keys;
+
+    /**
+     * 値（残高・保持フラグ）
+     */
+    private AtomicLongArray values;
+
+    /**
+     * DBから読み込んだ時刻（基準時刻からの経過秒）
+     */
+    private AtomicIntegerArray loadedAtSeconds;
+
+    private int capacity;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * ストライプごとの世代番号（残高の変更のたびに増加する）
+     */
+    private final AtomicLongArray epochs = new AtomicLongArray(STRIPES);
+
+    /**
+     * ストライプごとのコミット待ちの残高変更数
+     */
+    private final AtomicIntegerArray pendingWrites = new AtomicIntegerArray(STRIPES);
+
+    @PostConstruct
+    public void initialize() {
+        if (enabled && !ledgerMode) {
+            logger.warn("インメモリ残高ストアは台帳モードでのみ有効です。無効化します。");
+            enabled = false;
+        }
+        if (!enabled) {
+            return;
+        }
+        capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) Math.ceil(maxMembers / loadFactor));
+        keys = new AtomicLongArray(capacity);
+        values = new AtomicLongArray(capacity);
+        loadedAtSeconds = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * 起動後に全会員の残高を別スレッドで読み込みます（読み込み中の参照はDBから取得）。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::loadAll, "hot-balance-store-warmup");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 全会員の残高を読み込みます（シャード分割時は全シャードから順に読み込み）。
+     * 読み込み開始時点の世代番号と比較し、読み込み中に残高が変更されたストライプの会員は登録しません。
+     */
+    private void loadAll() {
+        long[] startEpochs = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            startEpochs[i] = epochs.get(i);
+        }
+        AtomicInteger loaded = new AtomicInteger();
+        shardRouter.forEachShard(shard -> transactionTemplate.executeWithoutResult(status -> {
+            status.setRollbackOnly(); // 読み取り専用
+            try (Stream<PointBalanceRow> rows = pointEntityRepository.streamAllBalances()) {
+                rows.forEach(row -> {
+                    long epoch = startEpochs[stripe(hash(row.getUserId()))];
+                    if (load(row.getUserId(), row.getBalance(), epoch)) {
+                        loaded.incrementAndGet();
+                    }
+                });
+            }
+        }));
+        logger.info("インメモリ残高ストアを読み込みました: 会員数={} 容量={}", loaded.get(), capacity);
+    }
+
+    /**
+     * インメモリ残高ストアが有効かを判定。
+     *
+     * @return 有効な場合はtrue
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * ユーザーの残高を取得（読み込みから ttl-seconds を過ぎたエントリは失効させる）。
+     *
+     * @param userId ユーザーID
+     * @return 残高（保持していない場合はnull）
+     */
+    public Integer getBalance(String userId) {
+        long value = getValue(userId);
+        return (value == 0) ? null : (int) (value >> 32);
+    }
+
+    /**
+     * 読み込み前の世代番号を取得（DBから残高を読み込む前に呼び出し、{@link #load} に渡す）。
+     *
+     * @param userId ユーザーID
+     * @return 世代番号
+     */
+    public long epoch(String userId) {
+        return enabled ? epochs.get(stripe(hash(userId))) : 0;
+    }
+
+    /**
+     * DBから読み込んだ残高を登録します（保持済みの場合は何もしない）。
+     * 読み込みと並行して残高が変更された場合は登録しません。
+     *
+     * @param userId  ユーザーID
+     * @param balance DBから読み込んだ残高
+     * @param epoch   読み込み前に {@link #epoch(String)} で取得した世代番号
+     * @return 登録した場合はtrue
+     */
+    public boolean load(String userId, int balance, long epoch) {
+        if (!enabled) {
+            return false;
+        }
+        long key = hash(userId);
+        int stripe = stripe(key);
+        if (pendingWrites.get(stripe) > 0 || epochs.get(stripe) != epoch) {
+            return false; // 読み込んだ残高が古い可能性がある
+        }
+        int slot = findOrInsertSlot(key);
+        if (slot < 0) {
+            return false; // 上限に達している
+        }
+        loadedAtSeconds.set(slot, nowSeconds());
+        boolean inserted = values.compareAndSet(slot, 0, pack(balance));
+        if (inserted && epochs.get(stripe) != epoch) {
+            values.set(slot, 0); // 登録中に残高が変更されたため無効化する
+            return false;
+        }
+        return inserted;
+    }
+
+    /**
+     * 残高の差分を、現在のトランザクションのコミット後に反映します。
+     * トランザクション外で呼び出された場合は、エントリを無効化します。
+     *
+     * @param userId ユーザーID
+     * @param delta  残高の増減
+     */
+    public void applyAfterCommit(String userId, int delta) {
+        applyAfterCommit(Collections.singletonMap(userId, delta));
+    }
+
+    /**
+     * ユーザーごとの残高の差分を、現在のトランザクションのコミット後に反映します。
+     *
+     * @param deltas ユーザーIDごとの残高の増減
+     */
+    public void applyAfterCommit(Map<String, Integer> deltas) {
+        if (!enabled || deltas.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deltas.keySet().forEach(this::invalidate);
+            return;
+        }
+        long[] hashes = new long[deltas.size()];
+        int[] amounts = new int[deltas.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            hashes[i] = hash(entry.getKey());
+            amounts[i] = entry.getValue();
+            beginWrite(stripe(hashes[i]));
+            i++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                for (int j = 0; j < hashes.length; j++) {
+                    if (status == STATUS_COMMITTED) {
+                        addToBalance(hashes[j], amounts[j]);
+                    }
+                    endWrite(stripe(hashes[j]));
+                }
+            }
+        });
+    }
+
+    /**
+     * エントリを無効化します（次回の参照でDBから読み込み直す）。
+     *
+     * @param userId ユーザーID
+     */
+    public void invalidate(String userId) {
+        if (!enabled) {
+            return;
+        }
+        long key = hash(userId);
+        int stripe = stripe(key);
+        epochs.incrementAndGet(stripe);
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            values.set(slot, 0);
+        }
+    }
+
+    /**
+     * 保持している会員数を取得。
+     *
+     * @return 会員数（無効化したエントリを含む）
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private long getValue(String userId) {
+        if (!enabled) {
+            return 0;
+        }
+        int slot = findSlot(hash(userId));
+        if (slot < 0) {
+            return 0;
+        }
+        long value = values.get(slot);
+        if (value != 0 && nowSeconds() - loadedAtSeconds.get(slot) >= ttlSeconds) {
+            values.compareAndSet(slot, value, 0); // 失効（次回の参照でDBから読み込む）
+            return 0;
+        }
+        return value;
+    }
+
+    private int nowSeconds() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - baseNanos);
+    }
+
+    private void addToBalance(long key, int delta) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return;
+        }
+        while (true) {
+            long value = values.get(slot);
+            if (value == 0) {
+                return; // 保持していない（次回の参照でDBから読み込む）
+            }
+            long updated = pack((int) ((value >> 32) + delta));
+            if (values.compareAndSet(slot, value, updated)) {
+                return;
+            }
+        }
+    }
+
+    private void beginWrite(int stripe) {
+        pendingWrites.incrementAndGet(stripe);
+        epochs.incrementAndGet(stripe);
+    }
+
+    private void endWrite(int stripe) {
+        epochs.incrementAndGet(stripe);
+        pendingWrites.decrementAndGet(stripe);
+    }
+
+    /**
+     * キーのスロットを線形探索で検索。
+     *
+     * @return スロット番号（存在しない場合は-1）
+     */
+    private int findSlot(long key) {
+        int slot = indexFor(key);
+        for (int probes = 0; probes < capacity; probes++) {
+            long current = keys.get(slot);
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1 == capacity) ? 0 : slot + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * キーのスロットを検索し、存在しない場合は空きスロットをCASで確保します。
+     *
+     * @return スロット番号（上限に達している場合は-1）
+     */
+    private int findOrInsertSlot(long key) {
+        int slot = indexFor(key);
+        for (int probes = 0; probes < capacity; probes++) {
+            long current = keys.get(slot);
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0) {
+                if (size.get() >= maxMembers) {
+                    return -1;
+                }
+                if (keys.compareAndSet(slot, 0, key)) {
+                    size.incrementAndGet();
+                    return slot;
+                }
+                if (keys.get(slot) == key) {
+                    return slot; // 同じキーが並行して登録された
+                }
+            }
+            slot = (slot + 1 == capacity) ? 0 : slot + 1;
+        }
+        return -1;
+    }
+
+    private int indexFor(long key) {
+        return (int) Long.remainderUnsigned(key, capacity);
+    }
+
+    private static int stripe(long key) {
+        return (int) (key >>> 52) & (STRIPES - 1);
+    }
+
+    private static long pack(int balance) {
+        return ((long) balance << 32) | PRESENT_BIT;
+    }
+
+    /**
+     * ユーザーIDの64ビットハッシュ（FNV-1a を MurmurHash3 の最終化処理で撹拌、0は空きスロットのため除外）。
+     */
+    private static long hash(String userId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < userId.length(); i++) {
+            hash ^= userId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= (hash >>> 33);
+        return (hash == 0) ? 1 : hash;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.loyaltyprogram.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * IdempotencyKeyMismatchException
+ * 処理済みの冪等キーが、初回と異なる内容（ポイント数・購入金額）のリクエストで再利用された場合の例外。
+ * 初回の処理結果は返さず、422 (Unprocessable Entity) としてリクエストを拒否します。
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException(String operation, String idempotencyKey) {
+        super("冪等キーが異なる内容のリクエストで再利用されました: 処理種別=" + operation + " 冪等キー=" + idempotencyKey);
+    }
+}
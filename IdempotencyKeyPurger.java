@@ -0,0 +1,48 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.repository.IdempotencyRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * IdempotencyKeyPurger
+ * 保持期間を過ぎた冪等キーを idempotency_keys テーブルから削除するバッチサービス。
+ * 保持期間はクライアントの再送期間、およびライトビハインドバッファ・利用ジャーナルの再生が起こりうる期間より長く設定してください。
+ */
+@Service
+public class IdempotencyKeyPurger {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyKeyPurger.class);
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.idempotency.retention-days:7}")
+    private int retentionDays;
+
+    /**
+     * 保持期間を過ぎた冪等キーをシャードごとに削除。
+     */
+    @Scheduled(cron = "${loyalty.idempotency.purge-cron:0 30 4 * * *}")
+    public void purgeExpired() {
+        shardRouter.forEachShard(shard -> {
+            Integer deleted = transactionTemplate.execute(status ->
+                    idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(retentionDays)));
+            logger.info("保持期間を過ぎた冪等キーを削除しました: シャード={} {}件", shard, deleted);
+        });
+    }
+}
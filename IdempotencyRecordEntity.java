@@ -0,0 +1,155 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * IdempotencyRecordEntity
+ * ポイント付与・利用の冪等キーと処理結果を管理するデータモデル。
+ * (処理種別, ユーザーID, 冪等キー) の一意制約により、再送されたリクエストの二重処理を防ぎます。
+ * 初回のリクエスト内容（ポイント数・購入金額）も記録し、異なる内容での再利用を検出します。
+ */
+@Entity
+@Table(name = "idempotency_keys",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"operation", "user_id", "idempotency_key"}))
+public class IdempotencyRecordEntity {
+
+    /**
+     * 処理種別: ポイント付与
+     */
+    public static final String OPERATION_ACCRUAL = "ACCRUAL";
+
+    /**
+     * 処理種別: ポイント利用
+     */
+    public static final String OPERATION_REDEMPTION = "REDEMPTION";
+
+    /**
+     * 処理種別: ライトビハインドバッファのDB反映（冪等キーはジャーナルの世代ID）
+     */
+    public static final String OPERATION_ACCRUAL_FLUSH = "ACCRUAL_FLUSH";
+
+    // --- フィールド定義 ---
+
+    /**
+     * 冪等キー識別子（主キー）
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 処理種別（ACCRUAL / REDEMPTION / ACCRUAL_FLUSH）
+     */
+    @Column(name = "operation", nullable = false)
+    private String operation;
+
+    /**
+     * クライアントが指定した冪等キー
+     */
+    @Column(name = "idempotency_key", nullable = false)
+    private String idempotencyKey;
+
+    /**
+     * ユーザーID
+     */
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    /**
+     * 初回のリクエスト内容（例: "amount=1200.0"、"points=100"）
+     */
+    @Column(name = "request_fingerprint", nullable = false)
+    private String requestFingerprint;
+
+    /**
+     * 処理結果（付与の場合は付与ポイント数、利用の場合は成功1・失敗0）
+     */
+    @Column(name = "result", nullable = false)
+    private int result;
+
+    /**
+     * 初回処理日時
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // --- コンストラクタ ---
+
+    public IdempotencyRecordEntity() {
+    }
+
+    public IdempotencyRecordEntity(String operation, String idempotencyKey, String userId,
+                                   String requestFingerprint, int result) {
+        this.operation = operation;
+        this.idempotencyKey = idempotencyKey;
+        this.userId = userId;
+        this.requestFingerprint = requestFingerprint;
+        this.result = result;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    /**
+     * ポイント付与のリクエスト内容を表す文字列を作成。
+     *
+     * @param amount 購入金額
+     * @return リクエスト内容
+     */
+    public static String amountFingerprint(double amount) {
+        return "amount=" + amount;
+    }
+
+    /**
+     * ポイント利用（またはバッファの反映）のリクエスト内容を表す文字列を作成。
+     *
+     * @param points ポイント数
+     * @return リクエスト内容
+     */
+    public static String pointsFingerprint(int points) {
+        return "points=" + points;
+    }
+
+    /**
+     * 初回と同じ内容のリクエストかを判定。
+     *
+     * @param requestFingerprint リクエスト内容
+     * @return 同じ内容の場合はtrue
+     */
+    public boolean matches(String requestFingerprint) {
+        return this.requestFingerprint.equals(requestFingerprint);
+    }
+
+    // --- Getter & Setter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getRequestFingerprint() {
+        return requestFingerprint;
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    public void setResult(int result) {
+        this.result = result;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
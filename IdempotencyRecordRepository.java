@@ -0,0 +1,54 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.IdempotencyRecordEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * IdempotencyRecordRepository
+ * 冪等キー（idempotency_keysテーブル）を管理するリポジトリ。
+ */
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecordEntity, Long> {
+
+    /**
+     * 処理種別・ユーザーID・冪等キーで処理結果を取得。
+     *
+     * @param operation      処理種別
+     * @param userId         ユーザーID
+     * @param idempotencyKey 冪等キー
+     * @return 冪等キーの記録（未処理の場合は空）
+     */
+    Optional<IdempotencyRecordEntity> findByOperationAndUserIdAndIdempotencyKey(String operation, String userId,
+                                                                                 String idempotencyKey);
+
+    /**
+     * 指定した冪等キーのうち、処理済みのものを1回のクエリで取得（ユーザーIDとの組で照合する）。
+     *
+     * @param operation       処理種別
+     * @param idempotencyKeys 冪等キーのリスト
+     * @return 処理済みの冪等キーの記録のリスト
+     */
+    @Query("SELECT r FROM IdempotencyRecordEntity r " +
+            "WHERE r.operation = :operation AND r.idempotencyKey IN :idempotencyKeys")
+    List<IdempotencyRecordEntity> findProcessed(@Param("operation") String operation,
+                                                @Param("idempotencyKeys") Collection<String> idempotencyKeys);
+
+    /**
+     * 保持期間を過ぎた冪等キーを削除。
+     *
+     * @param createdBefore この日時より前に登録された冪等キーを削除
+     * @return 削除件数
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecordEntity r WHERE r.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore);
+}
@@ -0,0 +1,38 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * InMemoryLoyaltyEventSink
+ * イベントをメモリ上に保持する配信先の代替実装（開発・検証用・単一ノード構成専用、既定の配信先）。
+ */
+@Component
+@ConditionalOnProperty(name = "loyalty.events.sink", havingValue = "memory", matchIfMissing = true)
+public class InMemoryLoyaltyEventSink implements LoyaltyEventSink {
+
+    private final List<LoyaltyEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void append(List<LoyaltyEvent> newEvents) {
+        for (LoyaltyEvent event : newEvents) {
+            events.add(event.withOffset(events.size()));
+        }
+    }
+
+    @Override
+    public synchronized List<LoyaltyEvent> readFrom(long offset, int maxEvents) {
+        int from = (int) Math.min(Math.max(offset, 0), events.size());
+        int to = (int) Math.min((long) from + maxEvents, events.size());
+        return new ArrayList<>(events.subList(from, to));
+    }
+
+    @Override
+    public synchronized long getEndOffset() {
+        return events.size();
+    }
+}
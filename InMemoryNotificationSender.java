@@ -0,0 +1,45 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.ExpirationNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * InMemoryNotificationSender
+ * 送信した通知をメモリ上に保持する通知送信の代替実装（開発・検証用、既定の送信先）。
+ * 保持件数の上限を超えた場合は古い通知から破棄します。
+ */
+@Component
+@ConditionalOnProperty(name = "loyalty.notification.sender", havingValue = "memory", matchIfMissing = true)
+public class InMemoryNotificationSender implements NotificationSender {
+
+    private final Deque<ExpirationNotification> sentNotifications = new ArrayDeque<>();
+
+    @Value("${loyalty.notification.memory.capacity:10000}")
+    private int capacity;
+
+    @Override
+    public synchronized void sendBatch(List<ExpirationNotification> notifications) {
+        for (ExpirationNotification notification : notifications) {
+            if (sentNotifications.size() >= capacity) {
+                sentNotifications.removeFirst();
+            }
+            sentNotifications.addLast(notification);
+        }
+    }
+
+    /**
+     * 送信済みの通知を取得。
+     *
+     * @return 送信済み通知のリスト（古い順）
+     */
+    public synchronized List<ExpirationNotification> getSentNotifications() {
+        return new ArrayList<>(sentNotifications);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.loyaltyprogram.config;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * LoadSheddingInterceptor
+ * 全てのエンドポイント（参照系を含め、いずれもDBにアクセスする）に全体の同時実行数制限を適用し、
+ * {@link RateLimited} を付けた更新系エンドポイントには、ユーザー・エンドポイント単位の流量制限も適用するインターセプター。
+ * いずれかの制限を超えたリクエストは処理せずに 429 を返します。
+ * 非同期処理のリクエストは、最初のディスパッチで取得した実行枠を非同期処理の完了まで保持します。
+ * 非同期処理（ストリーミング応答）の処理時間は応答の大きさで決まるため、上限の調整には使いません。
+ */
+public class LoadSheddingInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = LoadSheddingInterceptor.class.getName() + ".START";
+
+    private static final String ASYNC_ATTRIBUTE = LoadSheddingInterceptor.class.getName() + ".ASYNC";
+
+    private final TokenBucketRateLimiter rateLimiter;
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    public LoadSheddingInterceptor(TokenBucketRateLimiter rateLimiter, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod handlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // 非同期の再ディスパッチでは取得し直さない
+        }
+        RateLimited rateLimited = handlerMethod.getMethodAnnotation(RateLimited.class);
+        String userId = request.getParameter("userId");
+        if (rateLimited != null && userId != null && !rateLimiter.tryAcquire(rateLimited.value() + ":" + userId)) {
+            reject(response, "リクエストが多すぎます。時間をおいて再試行してください。");
+            return false;
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            reject(response, "混雑しているため処理できません。時間をおいて再試行してください。");
+            return false;
+        }
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * 非同期処理の開始時は実行枠を返却せず、非同期の再ディスパッチ完了時（afterCompletion）に返却します。
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(ASYNC_ATTRIBUTE, Boolean.TRUE); // 実行枠は保持したままにする
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start != null) {
+            request.removeAttribute(START_ATTRIBUTE);
+            if (request.getAttribute(ASYNC_ATTRIBUTE) != null) {
+                concurrencyLimiter.releaseWithoutSample();
+            } else {
+                concurrencyLimiter.release(System.nanoTime() - (Long) start);
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse response, String message) throws Exception {
+        response.setHeader("Retry-After", "1");
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), message);
+    }
+}
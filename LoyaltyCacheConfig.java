@@ -0,0 +1,65 @@
+package com.example.loyaltyprogram.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * LoyaltyCacheConfig
+ * ステージ・特典情報の読み取りキャッシュ（Caffeine）を設定するクラス。
+ * 各キャッシュは件数上限とTTLで追い出され、ヒット/ミスの統計を記録します。
+ * 統計はActuatorのキャッシュメトリクス（cache.gets など）として公開されます。
+ * 登録・無効化はトランザクションのコミット後に反映されます。
+ * コミット後の無効化だけでは、同時に実行中の読み取りトランザクションが古い行をコミット後に再登録する可能性があるため、
+ * StageBenefitCache で無効化の世代番号を確認してから登録します。
+ */
+@Configuration
+@EnableCaching
+public class LoyaltyCacheConfig {
+
+    /**
+     * ユーザーごとのステージ情報のキャッシュ名
+     */
+    public static final String STAGE_CACHE = "loyaltyStages";
+
+    /**
+     * 特典カタログ（全件・ID指定）のキャッシュ名
+     */
+    public static final String BENEFIT_CATALOG_CACHE = "benefitCatalog";
+
+    @Value("${loyalty.cache.stage.maximum-size:100000}")
+    private long stageMaximumSize;
+
+    @Value("${loyalty.cache.stage.ttl:10m}")
+    private Duration stageTtl;
+
+    @Value("${loyalty.cache.benefit.maximum-size:1000}")
+    private long benefitMaximumSize;
+
+    @Value("${loyalty.cache.benefit.ttl:5m}")
+    private Duration benefitTtl;
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(STAGE_CACHE, Caffeine.newBuilder()
+                .maximumSize(stageMaximumSize)
+                .expireAfterWrite(stageTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(BENEFIT_CATALOG_CACHE, Caffeine.newBuilder()
+                .maximumSize(benefitMaximumSize)
+                .expireAfterWrite(benefitTtl)
+                .recordStats()
+                .build());
+        // トランザクション内での登録・無効化はコミット後に反映する（StageBenefitCache は世代番号の確認のため自前で制御する）
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -1,153 +1,382 @@
-package com.example.loyaltyprogram.controller;
-
-import com.example.loyaltyprogram.model.Benefit;
-import com.example.loyaltyprogram.model.PointHistory;
-import com.example.loyaltyprogram.model.Stage;
-import com.example.loyaltyprogram.service.LoyaltyService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
-import org.springframework.web.bind.annotation.*;
-
-import java.util.List;
-
-/**
- * LoyaltyController
- * ロイヤルティプログラムの機能を管理するためのコントローラークラス。
- */
-@Controller
-@RequestMapping("/loyalty")
-public class LoyaltyController {
-
-    @Autowired
-    private LoyaltyService loyaltyService;
-
-    /**
-     * ポイント履歴を表示するエンドポイント。
-     * GET /loyalty/points/history
-     *
-     * @param userId ユーザーID（クエリパラメータ）
-     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
-     * @return ポイント履歴画面 (PointHistory.html)
-     */
-    @GetMapping("/points/history")
-    public String getPointsHistory(@RequestParam("userId") String userId, Model model) {
-        List<PointHistory> pointHistoryList = loyaltyService.getPointHistory(userId);
-        model.addAttribute("pointHistoryList", pointHistoryList);
-        return "PointHistory";
-    }
-
-    /**
-     * ポイントを利用する情報を表示するエンドポイント。
-     * GET /loyalty/points/use
-     *
-     * @param userId ユーザーID（クエリパラメータ）
-     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
-     * @return ポイント利用画面 (PointUsage.html)
-     */
-    @GetMapping("/points/use")
-    public String getPointUsage(@RequestParam("userId") String userId, Model model) {
-        int availablePoints = loyaltyService.getAvailablePoints(userId);
-        model.addAttribute("availablePoints", availablePoints);
-        return "PointUsage"; // Returns HTML view for point usage
-    }
-
-    /**
-     * ポイントを利用して割引を実行するエンドポイント。
-     * POST /loyalty/points/use
-     *
-     * @param userId ユーザーID（クエリパラメータ）
-     * @param points 使用するポイント数（クエリパラメータ）
-     * @return 処理結果の文字列（成功/失敗）
-     */
-    @PostMapping("/points/use")
-    @ResponseBody
-    public String usePoints(@RequestParam("userId") String userId, @RequestParam("points") int points) {
-        boolean isUsed = loyaltyService.usePoints(userId, points);
-        if (isUsed) {
-            return "ポイントが正常に使用されました。";
-        } else {
-            return "ポイントの使用に失敗しました。ポイントが不足しています。";
-        }
-    }
-
-    /**
-     * 現在のステージをチェックするエンドポイント。
-     * GET /loyalty/stage/check
-     *
-     * @param userId ユーザーID（クエリパラメータ）
-     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
-     * @return ステージ確認画面 (StageCheck.html)
-     */
-    @GetMapping("/stage/check")
-    public String checkStage(@RequestParam("userId") String userId, Model model) {
-        Stage stage = loyaltyService.getStageDetails(userId);
-        model.addAttribute("stage", stage);
-        return "StageCheck";
-    }
-
-    /**
-     * ステージを更新（アップまたはダウン）するエンドポイント。
-     * GET /loyalty/stage/update
-     *
-     * @param userId ユーザーID（クエリパラメータ）
-     * @return 処理結果の文字列（成功/失敗）
-     */
-    @GetMapping("/stage/update")
-    @ResponseBody
-    public String updateStage(@RequestParam("userId") String userId) {
-        String result = loyaltyService.updateStage(userId);
-        return result;
-    }
-
-    /**
-     * ロイヤルティメンバーの特典を表示するエンドポイント。
-     * GET /loyalty/benefits
-     *
-     * @param model HTMLテンプレートにデータを渡すためのModelオブジェクト
-     * @return 特典表示画面 (SpecialBenefits.html)
-     */
-    @GetMapping("/benefits")
-    public String getBenefits(Model model) {
-        List<Benefit> benefitsList = loyaltyService.getAvailableBenefits();
-        model.addAttribute("benefitsList", benefitsList);
-        return "SpecialBenefits";
-    }
-
-    /**
-     * 特定の特典を適用するエンドポイント。
-     * POST /loyalty/benefits/apply/{benefitId}
-     *
-     * @param benefitId 適用する特典ID（パスパラメータ）
-     * @param userId    ユーザーID（クエリパラメータ）
-     * @return 処理結果の文字列（成功/失敗）
-     */
-    @PostMapping("/benefits/apply/{benefitId}")
-    @ResponseBody
-    public String applyBenefit(@PathVariable("benefitId") Long benefitId, @RequestParam("userId") String userId) {
-        boolean isApplied = loyaltyService.applyBenefit(userId, benefitId);
-        if (isApplied) {
-            return "特典を正常に適用しました。";
-        } else {
-            return "特典の適用に失敗しました。";
-        }
-    }
-
-    /**
-     * ポイントの有効期限を通知するエンドポイント。
-     * POST /loyalty/notify
-     *
-     * @param userId ユーザーID（クエリパラメータ）
-     * @return 処理結果の文字列（成功/失敗）
-     */
-    @PostMapping("/notify")
-    @ResponseBody
-    public String notifyExpiration(@RequestParam("userId") String userId) {
-        boolean isNotified = loyaltyService.notifyExpiration(userId);
-        if (isNotified) {
-            return "有効期限通知を正常に送信しました。";
-        } else {
-            return "通知の送信に失敗しました。";
-        }
-    }
+package com.example.loyaltyprogram.controller;
+
+import com.example.loyaltyprogram.config.RateLimited;
+import com.example.loyaltyprogram.model.Benefit;
+import com.example.loyaltyprogram.model.BenefitBulkApplyJobEntity;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointHistoryPage;
+import com.example.loyaltyprogram.model.Purchase;
+import com.example.loyaltyprogram.model.Stage;
+import com.example.loyaltyprogram.service.BenefitBulkApplyJob;
+import com.example.loyaltyprogram.service.LoyaltyEventSink;
+import com.example.loyaltyprogram.service.LoyaltyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LoyaltyController
+ * ロイヤルティプログラムの機能を管理するためのコントローラークラス。
+ * reactiveプロファイルでは ReactiveLoyaltyController が同じURLを提供します。
+ */
+@Controller
+@Profile("!reactive")
+@RequestMapping("/loyalty")
+public class LoyaltyController {
+
+    /**
+     * 一括付与で1トランザクションにまとめる購入件数
+     */
+    private static final int PURCHASE_CHUNK_SIZE = 1000;
+
+    /**
+     * ポイント履歴画面の1ページあたりの表示件数
+     */
+    private static final int HISTORY_PAGE_SIZE = 50;
+
+    /**
+     * イベントストリームの1回あたりの最大取得件数
+     */
+    private static final int MAX_EVENTS_PER_READ = 1000;
+
+    @Autowired
+    private LoyaltyService loyaltyService;
+
+    @Autowired
+    private BenefitBulkApplyJob benefitBulkApplyJob;
+
+    @Autowired
+    private LoyaltyEventSink loyaltyEventSink;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * ポイント履歴を1ページずつ表示するエンドポイント。
+     * GET /loyalty/points/history
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @param cursor 前ページのカーソル（クエリパラメータ、先頭ページの場合は省略）
+     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
+     * @return ポイント履歴画面 (PointHistory.html)
+     */
+    @GetMapping("/points/history")
+    public String getPointsHistory(@RequestParam("userId") String userId,
+                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                   Model model) {
+        PointHistoryPage page = loyaltyService.getPointHistoryPage(userId, cursor, HISTORY_PAGE_SIZE);
+        model.addAttribute("pointHistoryList", page.getItems());
+        model.addAttribute("nextCursor", page.getNextCursor());
+        model.addAttribute("userId", userId);
+        return "PointHistory";
+    }
+
+    /**
+     * ポイント履歴の全件をJSON Lines形式でストリーム返却するエンドポイント。
+     * GET /loyalty/points/history/stream
+     * 1行ずつ書き出すため、履歴件数によらずメモリ使用量は一定です。
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return ポイント履歴のストリーム（1行1件のJSON）
+     */
+    @GetMapping("/points/history/stream")
+    public ResponseEntity<StreamingResponseBody> streamPointsHistory(@RequestParam("userId") String userId) {
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)) {
+                loyaltyService.streamPointHistory(userId, history -> {
+                    try {
+                        writer.write(history);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * ポイントを利用する情報を表示するエンドポイント。
+     * GET /loyalty/points/use
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
+     * @return ポイント利用画面 (PointUsage.html)
+     */
+    @GetMapping("/points/use")
+    public String getPointUsage(@RequestParam("userId") String userId, Model model) {
+        int availablePoints = loyaltyService.getAvailablePoints(userId);
+        model.addAttribute("availablePoints", availablePoints);
+        return "PointUsage"; // Returns HTML view for point usage
+    }
+
+    /**
+     * ポイントを利用して割引を実行するエンドポイント。
+     * POST /loyalty/points/use
+     * Idempotency-Key ヘッダーを指定した再送では、ポイントを再度利用せず初回の処理結果を返します。
+     *
+     * @param userId         ユーザーID（クエリパラメータ）
+     * @param points         使用するポイント数（クエリパラメータ）
+     * @param idempotencyKey 冪等キー（リクエストヘッダー、任意）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @PostMapping("/points/use")
+    @RateLimited("points.use")
+    @ResponseBody
+    public String usePoints(@RequestParam("userId") String userId, @RequestParam("points") int points,
+                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        boolean isUsed = loyaltyService.usePoints(userId, points, idempotencyKey);
+        if (isUsed) {
+            return "ポイントが正常に使用されました。";
+        } else {
+            return "ポイントの使用に失敗しました。ポイントが不足しています。";
+        }
+    }
+
+    /**
+     * 購入金額に基づいてポイントを付与するエンドポイント。
+     * POST /loyalty/points/earn
+     * Idempotency-Key ヘッダーを指定した再送では、ポイントを再度付与せず初回の付与ポイント数を返します。
+     *
+     * @param userId         ユーザーID（クエリパラメータ）
+     * @param amount         購入金額（クエリパラメータ）
+     * @param idempotencyKey 冪等キー（リクエストヘッダー、任意）
+     * @return 処理結果の文字列（付与ポイント数）
+     */
+    @PostMapping("/points/earn")
+    @RateLimited("points.earn")
+    @ResponseBody
+    public ResponseEntity<String> addPoints(@RequestParam("userId") String userId, @RequestParam("amount") double amount,
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (!Double.isFinite(amount) || amount <= 0) {
+            return ResponseEntity.badRequest().body("購入金額が不正です: " + amount);
+        }
+        int pointsEarned = loyaltyService.addPoints(userId, amount, idempotencyKey);
+        return ResponseEntity.ok(pointsEarned + "ポイントを付与しました。");
+    }
+
+    /**
+     * 購入情報を一括で受け取り、ポイントを付与するエンドポイント。
+     * POST /loyalty/points/batch
+     * リクエストボディは「ユーザーID,購入金額[,冪等キー]」形式のCSV行を想定し、
+     * 全件をメモリに載せずに一定件数ごとに読み込んで付与します。
+     * 冪等キーを指定した行は、同じユーザー・キーで付与済みの場合は付与しないため、ファイル全体を再送しても二重に付与されません。
+     * 購入金額が正の有限値でない行があった場合は、その行番号を示して400を返します（それより前の行は付与済み）。
+     *
+     * @param purchaseStream 購入情報のCSV（リクエストボディ）
+     * @return 処理結果の文字列（処理件数・付与ポイント合計）
+     * @throws IOException リクエストボディの読み込みに失敗した場合
+     */
+    @PostMapping("/points/batch")
+    @ResponseBody
+    public ResponseEntity<String> addPointsBatch(InputStream purchaseStream) throws IOException {
+        int purchaseCount = 0;
+        int skippedCount = 0;
+        long totalPointsEarned = 0;
+        int lineNumber = 0;
+        List<Purchase> chunk = new ArrayList<>(PURCHASE_CHUNK_SIZE);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(purchaseStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String[] columns = line.split(",");
+            if (columns.length < 2 || columns.length > 3) {
+                skippedCount++; // 形式不正の行は読み飛ばす
+                continue;
+            }
+            double amount;
+            try {
+                amount = Double.parseDouble(columns[1].trim());
+            } catch (NumberFormatException e) {
+                skippedCount++;
+                continue;
+            }
+            if (!Double.isFinite(amount) || amount <= 0) {
+                // 負の金額・NaN・Infinityは付与ポイントが不正になるため、処理を中止する
+                return ResponseEntity.badRequest().body(lineNumber + "行目の購入金額が不正です: " + columns[1].trim()
+                        + "（この行より前の" + purchaseCount + "件は付与済みです）");
+            }
+            String idempotencyKey = columns.length == 3 ? columns[2].trim() : null;
+            chunk.add(new Purchase(columns[0].trim(), amount, idempotencyKey));
+            if (chunk.size() >= PURCHASE_CHUNK_SIZE) {
+                totalPointsEarned += loyaltyService.addPointsBatch(chunk);
+                purchaseCount += chunk.size();
+                chunk = new ArrayList<>(PURCHASE_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            totalPointsEarned += loyaltyService.addPointsBatch(chunk);
+            purchaseCount += chunk.size();
+        }
+        return ResponseEntity.ok(purchaseCount + "件の購入に対して合計" + totalPointsEarned + "ポイントを付与しました。（読み飛ばし: " + skippedCount + "件）");
+    }
+
+    /**
+     * 現在のステージをチェックするエンドポイント。
+     * GET /loyalty/stage/check
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
+     * @return ステージ確認画面 (StageCheck.html)
+     */
+    @GetMapping("/stage/check")
+    public String checkStage(@RequestParam("userId") String userId, Model model) {
+        Stage stage = loyaltyService.getStageDetails(userId);
+        model.addAttribute("stage", stage);
+        return "StageCheck";
+    }
+
+    /**
+     * ステージを更新（アップまたはダウン）するエンドポイント。
+     * GET /loyalty/stage/update
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @GetMapping("/stage/update")
+    @RateLimited("stage.update")
+    @ResponseBody
+    public String updateStage(@RequestParam("userId") String userId) {
+        String result = loyaltyService.updateStage(userId);
+        return result;
+    }
+
+    /**
+     * ロイヤルティメンバーの特典を表示するエンドポイント。
+     * GET /loyalty/benefits
+     * ユーザーIDを指定した場合は、そのユーザーのステージで利用できる有効な特典のみを表示します。
+     *
+     * @param userId ユーザーID（クエリパラメータ、省略時は特典カタログ全件）
+     * @param model  HTMLテンプレートにデータを渡すためのModelオブジェクト
+     * @return 特典表示画面 (SpecialBenefits.html)
+     */
+    @GetMapping("/benefits")
+    public String getBenefits(@RequestParam(value = "userId", required = false) String userId, Model model) {
+        List<Benefit> benefitsList = (userId == null)
+                ? loyaltyService.getAvailableBenefits()
+                : loyaltyService.getBenefitsForUser(userId);
+        model.addAttribute("benefitsList", benefitsList);
+        model.addAttribute("userId", userId);
+        return "SpecialBenefits";
+    }
+
+    /**
+     * 特定の特典を適用するエンドポイント。
+     * POST /loyalty/benefits/apply/{benefitId}
+     *
+     * @param benefitId 適用する特典ID（パスパラメータ）
+     * @param userId    ユーザーID（クエリパラメータ）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @PostMapping("/benefits/apply/{benefitId}")
+    @RateLimited("benefits.apply")
+    @ResponseBody
+    public String applyBenefit(@PathVariable("benefitId") Long benefitId, @RequestParam("userId") String userId) {
+        boolean isApplied = loyaltyService.applyBenefit(userId, benefitId);
+        if (isApplied) {
+            return "特典を正常に適用しました。";
+        } else {
+            return "特典の適用に失敗しました。";
+        }
+    }
+
+    /**
+     * 特典を一括で適用するジョブを開始するエンドポイント。
+     * POST /loyalty/benefits/bulk-apply/{benefitId}
+     * ユーザーIDを指定した場合はそのユーザーのうち特典の対象ステージのユーザーに、
+     * 指定しない場合は対象ステージ（ステージ名の指定があればそのステージのみ）の全ユーザーに適用します。
+     *
+     * @param benefitId 適用する特典ID（パスパラメータ）
+     * @param stageName 対象ステージ名（クエリパラメータ、省略可）
+     * @param userIds   対象ユーザーIDのリスト（クエリパラメータ、省略可）
+     * @return 登録したジョブ
+     */
+    @PostMapping("/benefits/bulk-apply/{benefitId}")
+    @ResponseBody
+    public BenefitBulkApplyJobEntity bulkApplyBenefit(@PathVariable("benefitId") Long benefitId,
+                                                      @RequestParam(value = "stage", required = false) String stageName,
+                                                      @RequestParam(value = "userIds", required = false) List<String> userIds) {
+        if (userIds != null && !userIds.isEmpty()) {
+            return benefitBulkApplyJob.startForUsers(benefitId, userIds);
+        }
+        return benefitBulkApplyJob.startForStage(benefitId, stageName);
+    }
+
+    /**
+     * 特典の一括適用ジョブの進捗を取得するエンドポイント。
+     * GET /loyalty/benefits/bulk-apply/jobs/{jobId}
+     *
+     * @param jobId ジョブID（パスパラメータ）
+     * @return ジョブ（存在しない場合は404）
+     */
+    @GetMapping("/benefits/bulk-apply/jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<BenefitBulkApplyJobEntity> getBulkApplyJob(@PathVariable("jobId") Long jobId) {
+        return ResponseEntity.of(benefitBulkApplyJob.findJob(jobId));
+    }
+
+    /**
+     * 失敗した特典の一括適用ジョブを続きから再開するエンドポイント。
+     * POST /loyalty/benefits/bulk-apply/jobs/{jobId}/resume
+     *
+     * @param jobId ジョブID（パスパラメータ）
+     * @return 再開したジョブ（存在しない場合は404）
+     */
+    @PostMapping("/benefits/bulk-apply/jobs/{jobId}/resume")
+    @ResponseBody
+    public ResponseEntity<BenefitBulkApplyJobEntity> resumeBulkApplyJob(@PathVariable("jobId") Long jobId) {
+        return ResponseEntity.of(benefitBulkApplyJob.resume(jobId));
+    }
+
+    /**
+     * ロイヤルティイベントを指定したオフセットから取得するエンドポイント（下流システム向け）。
+     * GET /loyalty/events
+     * 利用者は最後に処理したイベントのオフセット + 1 を指定して続きから読み出します。
+     *
+     * @param offset 読み出しを開始するオフセット（クエリパラメータ、省略時は先頭から）
+     * @param limit  最大取得件数（クエリパラメータ、上限1000件）
+     * @return イベントのリスト（オフセット順）
+     */
+    @GetMapping("/events")
+    @ResponseBody
+    public List<LoyaltyEvent> readEvents(@RequestParam(value = "offset", defaultValue = "0") long offset,
+                                         @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return loyaltyEventSink.readFrom(offset, Math.max(1, Math.min(limit, MAX_EVENTS_PER_READ)));
+    }
+
+    /**
+     * ポイントの有効期限を通知するエンドポイント。
+     * POST /loyalty/notify
+     * 通知は送信キューに登録され、外部通知サービスへの送信完了を待たずに応答します。
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @PostMapping("/notify")
+    @RateLimited("notify")
+    @ResponseBody
+    public String notifyExpiration(@RequestParam("userId") String userId) {
+        boolean isNotified = loyaltyService.notifyExpiration(userId);
+        if (isNotified) {
+            return "有効期限通知の送信を受け付けました。";
+        } else {
+            return "通知の送信に失敗しました。";
+        }
+    }
 }
\ No newline at end of file
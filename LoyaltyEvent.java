@@ -0,0 +1,133 @@
+package com.example.loyaltyprogram.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * LoyaltyEvent
+ * 下流システム（分析・CRMなど）へ配信するロイヤルティイベント。
+ * オフセットは配信先が追記順に採番し、利用者はオフセットを指定して続きから読み出します。
+ * 配信は少なくとも1回（at-least-once）のため、利用者はイベントIDで重複を除外してください。
+ */
+public class LoyaltyEvent {
+
+    /**
+     * イベント種別: ポイント付与
+     */
+    public static final String POINT_EARNED = "PointEarned";
+
+    /**
+     * イベント種別: ポイント利用
+     */
+    public static final String POINT_USED = "PointUsed";
+
+    /**
+     * イベント種別: ポイント利用の取り消し（ジャーナルに記録した利用が、DBへの反映時に残高不足で拒否された）
+     */
+    public static final String POINT_USE_REJECTED = "PointUseRejected";
+
+    /**
+     * イベント種別: ポイント失効（有効期限切れ）
+     */
+    public static final String POINT_EXPIRED = "PointExpired";
+
+    /**
+     * イベント種別: ステージ変更
+     */
+    public static final String STAGE_CHANGED = "StageChanged";
+
+    /**
+     * イベント種別: 特典適用
+     */
+    public static final String BENEFIT_APPLIED = "BenefitApplied";
+
+    // --- フィールド定義 ---
+
+    /**
+     * 配信先でのオフセット（配信前は-1）
+     */
+    private final long offset;
+
+    /**
+     * イベントID（アウトボックスの登録順）
+     */
+    private final long eventId;
+
+    /**
+     * イベント種別
+     */
+    private final String eventType;
+
+    /**
+     * ユーザーID
+     */
+    private final String userId;
+
+    /**
+     * イベント内容
+     */
+    private final Map<String, Object> payload;
+
+    /**
+     * イベント発生日時
+     */
+    private final LocalDateTime occurredAt;
+
+    // --- コンストラクタ ---
+
+    @JsonCreator
+    public LoyaltyEvent(@JsonProperty("offset") long offset,
+                        @JsonProperty("eventId") long eventId,
+                        @JsonProperty("eventType") String eventType,
+                        @JsonProperty("userId") String userId,
+                        @JsonProperty("payload") Map<String, Object> payload,
+                        @JsonProperty("occurredAt") LocalDateTime occurredAt) {
+        this.offset = offset;
+        this.eventId = eventId;
+        this.eventType = eventType;
+        this.userId = userId;
+        this.payload = payload;
+        this.occurredAt = occurredAt;
+    }
+
+    // --- Getter ---
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Map<String, Object> getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    // --- ヘルパーメソッド ---
+
+    /**
+     * 配信先で採番したオフセットを設定したイベントを作成します。
+     *
+     * @param offset オフセット
+     * @return オフセットを設定したイベント
+     */
+    public LoyaltyEvent withOffset(long offset) {
+        return new LoyaltyEvent(offset, eventId, eventType, userId, payload, occurredAt);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * LoyaltyEventLogEntity
+ * 配信済みのロイヤルティイベントをオフセット順に保持するデータモデル（全ノード共通のイベントログ）。
+ * オフセットは追記時に0から連番で採番し、どのノードから読み出しても同じオフセットで同じイベントを返します。
+ * シャード分割時も既定のシャードにのみ保持します。
+ */
+@Entity
+@Table(name = "loyalty_event_log")
+public class LoyaltyEventLogEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * オフセット（主キー、0から連番）
+     */
+    @Id
+    @Column(name = "event_offset")
+    private Long eventOffset;
+
+    /**
+     * イベント種別
+     */
+    @Column(name = "event_type", nullable = false)
+    private String eventType;
+
+    /**
+     * ユーザーID
+     */
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    /**
+     * イベント（オフセットを含むJSON）
+     */
+    @Lob
+    @Column(name = "event_json", nullable = false)
+    private String eventJson;
+
+    /**
+     * 追記日時
+     */
+    @Column(name = "appended_at", nullable = false)
+    private LocalDateTime appendedAt;
+
+    // --- コンストラクタ ---
+
+    public LoyaltyEventLogEntity() {
+    }
+
+    // --- Getter ---
+
+    public Long getEventOffset() {
+        return eventOffset;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEventJson() {
+        return eventJson;
+    }
+
+    public LocalDateTime getAppendedAt() {
+        return appendedAt;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.OutboxEventEntity;
+import com.example.loyaltyprogram.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LoyaltyEventPublisher
+ * ロイヤルティイベントをアウトボックスに登録するサービス。
+ * 業務データの更新と同一トランザクションで登録するため、コミットされた更新のイベントだけが配信されます。
+ * 登録順（アウトボックスのID順）で配信され、未コミットのイベントを追い越さないよう取り出すため、同一ユーザーのイベントは発生順に並びます。
+ */
+@Service
+public class LoyaltyEventPublisher {
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${loyalty.events.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * イベントをアウトボックスに登録します（呼び出し元のトランザクション内でのみ実行可能）。
+     *
+     * @param eventType イベント種別（LoyaltyEventの定数）
+     * @param userId    ユーザーID
+     * @param payload   イベント内容
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String eventType, String userId, Map<String, Object> payload) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            outboxEventRepository.save(new OutboxEventEntity(eventType, userId, objectMapper.writeValueAsString(payload)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("イベント内容をJSONに変換できません: " + eventType, e);
+        }
+    }
+
+    /**
+     * キーと値の組からイベント内容を作成します。
+     *
+     * @param keysAndValues キーと値を交互に並べた配列
+     * @return イベント内容（指定順を保持）
+     */
+    public static Map<String, Object> payload(Object... keysAndValues) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            payload.put(String.valueOf(keysAndValues[i]), keysAndValues[i + 1]);
+        }
+        return payload;
+    }
+}
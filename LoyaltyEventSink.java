@@ -0,0 +1,40 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+
+import java.util.List;
+
+/**
+ * LoyaltyEventSink
+ * ロイヤルティイベントの配信先を表すインターフェース。
+ * 追記したイベントにオフセット（0から連番）を採番し、利用者がオフセットを指定して続きから読み出せるようにします。
+ * 配信先ごとの実装を差し替えて使用します。
+ * ノードごとに保持する実装（file / memory）は単一ノード構成専用です。複数ノード構成では、
+ * どのノードから読み出しても同じオフセットになるよう、共通のイベントログ（database）を使用してください。
+ */
+public interface LoyaltyEventSink {
+
+    /**
+     * イベントを追記順にまとめて追記します。
+     *
+     * @param events 追記するイベントのリスト（同一ユーザーのイベントは発生順）
+     * @throws RuntimeException 追記に失敗した場合（呼び出し側で再送します）
+     */
+    void append(List<LoyaltyEvent> events);
+
+    /**
+     * 指定したオフセット以降のイベントを取得します。
+     *
+     * @param offset    読み出しを開始するオフセット
+     * @param maxEvents 取得する最大件数
+     * @return イベントのリスト（オフセット順）
+     */
+    List<LoyaltyEvent> readFrom(long offset, int maxEvents);
+
+    /**
+     * 次に採番するオフセット（= 追記済みのイベント件数）を取得します。
+     *
+     * @return 次のオフセット
+     */
+    long getEndOffset();
+}
@@ -0,0 +1,55 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+
+/**
+ * LoyaltyExecutionConfig
+ * Webリクエストの実行方式を切り替える設定クラス。
+ * loyalty.web.execution-mode=virtual の場合、Tomcatのリクエスト処理を仮想スレッド（Java 21）で実行し、
+ * DBの同時利用数をコネクションプールのサイズ（spring.datasource.hikari.maximum-pool-size）に合わせて制限します。
+ * 同時利用数は loyalty.web.db-max-concurrency で明示的に指定することもできます（0の場合はプールサイズから取得）。
+ * 未設定（platform）の場合は従来どおりTomcatのプラットフォームスレッドプールで実行します。
+ */
+@Configuration
+@ConditionalOnProperty(name = "loyalty.web.execution-mode", havingValue = "virtual")
+public class LoyaltyExecutionConfig implements WebMvcConfigurer {
+
+    private final DatabaseConcurrencyGuard databaseConcurrencyGuard;
+
+    public LoyaltyExecutionConfig(DataSource dataSource,
+                                  @Value("${loyalty.web.db-max-concurrency:0}") int maxConcurrency,
+                                  @Value("${loyalty.web.db-permit-timeout-ms:1000}") long permitTimeoutMillis) {
+        this.databaseConcurrencyGuard = (maxConcurrency > 0)
+                ? new DatabaseConcurrencyGuard(maxConcurrency, permitTimeoutMillis)
+                : DatabaseConcurrencyGuard.matchingPoolSize(dataSource, Runtime.getRuntime().availableProcessors() * 2, permitTimeoutMillis);
+    }
+
+    /**
+     * Tomcatのリクエスト処理を仮想スレッドで実行します。
+     *
+     * @return Tomcatのプロトコルハンドラー設定
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public DatabaseConcurrencyGuard databaseConcurrencyGuard() {
+        return databaseConcurrencyGuard;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(databaseConcurrencyGuard).addPathPatterns("/loyalty/**");
+    }
+}
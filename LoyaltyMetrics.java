@@ -0,0 +1,87 @@
+package com.example.loyaltyprogram.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * LoyaltyMetrics
+ * ロイヤルティプログラムの業務メトリクス（Micrometer）を記録するコンポーネント。
+ * ポイントの付与・利用、利用拒否、ステージ遷移、特典適用、通知キューの滞留数を計測します。
+ */
+@Component
+public class LoyaltyMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ExpirationNotificationDispatcher expirationNotificationDispatcher;
+
+    private Counter pointsEarned;
+
+    private Counter pointsRedeemed;
+
+    @PostConstruct
+    public void registerMeters() {
+        pointsEarned = Counter.builder("loyalty.points.earned")
+                .description("付与したポイント数")
+                .register(meterRegistry);
+        pointsRedeemed = Counter.builder("loyalty.points.redeemed")
+                .description("利用されたポイント数")
+                .register(meterRegistry);
+        Gauge.builder("loyalty.notification.queue.depth", expirationNotificationDispatcher,
+                        ExpirationNotificationDispatcher::getQueueDepth)
+                .description("送信待ちの有効期限通知の件数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * ポイントの付与を記録。
+     *
+     * @param points 付与したポイント数
+     */
+    public void recordPointsEarned(long points) {
+        pointsEarned.increment(points);
+    }
+
+    /**
+     * ポイントの利用を記録。
+     *
+     * @param points 利用されたポイント数
+     */
+    public void recordPointsRedeemed(int points) {
+        pointsRedeemed.increment(points);
+    }
+
+    /**
+     * ポイント利用の拒否を記録。
+     *
+     * @param reason 拒否理由（例: insufficient_balance, invalid_amount）
+     */
+    public void recordRedemptionRejected(String reason) {
+        meterRegistry.counter("loyalty.points.redemption.rejected", "reason", reason).increment();
+    }
+
+    /**
+     * ステージの遷移を記録。
+     *
+     * @param fromStage 変更前のステージ名
+     * @param toStage   変更後のステージ名
+     */
+    public void recordStageTransition(String fromStage, String toStage) {
+        meterRegistry.counter("loyalty.stage.transitions", "from", String.valueOf(fromStage), "to", toStage).increment();
+    }
+
+    /**
+     * 特典適用の結果を記録。
+     *
+     * @param applied 適用成功ならtrue
+     */
+    public void recordBenefitApplied(boolean applied) {
+        meterRegistry.counter("loyalty.benefit.apply", "result", applied ? "success" : "failure").increment();
+    }
+}
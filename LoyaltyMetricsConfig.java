@@ -0,0 +1,52 @@
+package com.example.loyaltyprogram.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * LoyaltyMetricsConfig
+ * ロイヤルティプログラムのメトリクス計測を設定するクラス。
+ * サービスメソッドの処理時間（@Timed）とリクエストごとのDB往復回数を計測します。
+ * メトリクスはActuatorのPrometheusエンドポイント（/actuator/prometheus）から取得できます。
+ * （micrometer-registry-prometheus と management.endpoints.web.exposure.include=prometheus が必要）
+ */
+@Configuration
+public class LoyaltyMetricsConfig implements WebMvcConfigurer {
+
+    private final MeterRegistry meterRegistry;
+
+    public LoyaltyMetricsConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @Timed を付与したメソッドの処理時間を計測します。
+     *
+     * @return 処理時間計測のアスペクト
+     */
+    @Bean
+    public TimedAspect timedAspect() {
+        return new TimedAspect(meterRegistry);
+    }
+
+    /**
+     * Hibernateが発行するSQL文を数えるインスペクターを登録します。
+     *
+     * @return Hibernateの設定
+     */
+    @Bean
+    public HibernatePropertiesCustomizer statementCountingCustomizer() {
+        return hibernateProperties -> hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, new StatementCountingInspector());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new DbRoundTripMetricsInterceptor(meterRegistry)).addPathPatterns("/loyalty/**");
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * LoyaltyRateLimitConfig
+ * /loyalty 配下のエンドポイントの流量制限と負荷制限を設定するクラス。
+ * DBのコネクションプールのサイズを基準にした適応的な同時実行数制限を全てのエンドポイントに、
+ * ユーザー・エンドポイント単位のトークンバケットを更新系エンドポイント（{@link RateLimited}）に適用します。
+ * loyalty.web.rate-limit.enabled=false で無効化できます。
+ */
+@Configuration
+@ConditionalOnProperty(name = "loyalty.web.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class LoyaltyRateLimitConfig implements WebMvcConfigurer {
+
+    private final TokenBucketRateLimiter rateLimiter;
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    public LoyaltyRateLimitConfig(DataSource dataSource,
+                                  @Value("${loyalty.web.rate-limit.capacity:20}") int capacity,
+                                  @Value("${loyalty.web.rate-limit.refill-per-second:5}") int refillPerSecond,
+                                  @Value("${loyalty.web.rate-limit.idle-eviction-ms:600000}") long idleMillis,
+                                  @Value("${loyalty.web.load-shedding.target-latency-ms:200}") long targetLatencyMillis,
+                                  @Value("${loyalty.web.load-shedding.backoff-ratio:0.9}") double backoffRatio) {
+        // シャード・レプリカの振り分け用データソースの場合は既定の振り分け先のプールサイズを使用する
+        int poolSize = ConnectionPoolSizes.resolveMaximumPoolSize(dataSource, Runtime.getRuntime().availableProcessors() * 2);
+        this.rateLimiter = new TokenBucketRateLimiter(capacity, refillPerSecond, idleMillis);
+        // プールサイズを初期値とし、応答時間に余裕があればプールの待ち行列が短い範囲（2倍）まで引き上げる
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(poolSize, 1, poolSize * 2, targetLatencyMillis, backoffRatio);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new LoadSheddingInterceptor(rateLimiter, concurrencyLimiter)).addPathPatterns("/loyalty/**");
+    }
+
+    /**
+     * 使われていないトークンバケットを定期的に削除します。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.web.rate-limit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        rateLimiter.evictIdleBuckets();
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * LoyaltySchedulingConfig
+ * ロイヤルティプログラムの定期実行ジョブ（照合・夜間バッチなど）を有効化する設定クラス。
+ */
+@Configuration
+@EnableScheduling
+public class LoyaltySchedulingConfig {
+}
@@ -1,171 +1,849 @@
-package com.example.loyaltyprogram.service;
-
-import com.example.loyaltyprogram.model.Benefit;
-import com.example.loyaltyprogram.model.PointHistory;
-import com.example.loyaltyprogram.model.Stage;
-import com.example.loyaltyprogram.repository.BenefitRepository;
-import com.example.loyaltyprogram.repository.PointHistoryRepository;
-import com.example.loyaltyprogram.repository.StageRepository;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
-
-import java.time.LocalDate;
-import java.util.List;
-
-/**
- * LoyaltyService
- * ロイヤルティプログラムのビジネスロジックを提供するサービスクラス。
- * 主にポイント、特典、ステージ管理に関連する処理を実装します。
- */
-@Service
-public class LoyaltyService {
-
-    @Autowired
-    private PointHistoryRepository pointHistoryRepository;
-
-    @Autowired
-    private StageRepository stageRepository;
-
-    @Autowired
-    private BenefitRepository benefitRepository;
-
-    /**
-     * ユーザーのポイント残高を取得。
-     *
-     * @param userId ユーザーID
-     * @return 現在のポイント残高
-     */
-    public int getAvailablePoints(String userId) {
-        return pointHistoryRepository.calculateTotalPoints(userId);
-    }
-
-    /**
-     * 購入金額に基づいてポイントを付与します。
-     *
-     * @param userId  ユーザーID
-     * @param amount  購入金額
-     * @return 付与されたポイント数
-     */
-    public int addPoints(String userId, double amount) {
-        int pointsEarned = (int) (amount * 0.1); // 購入金額の10%をポイントとして付与
-        PointHistory pointHistory = new PointHistory(userId, pointsEarned, LocalDate.now(), "購入によるポイント付与");
-        pointHistoryRepository.save(pointHistory);
-        return pointsEarned;
-    }
-
-    /**
-     * ポイントを利用して割引を適用。
-     *
-     * @param userId ユーザーID
-     * @param points 使用するポイント数
-     * @return ポイント利用成功ならtrue、失敗ならfalse（ポイント残高不足など）
-     */
-    public boolean usePoints(String userId, int points) {
-        int availablePoints = getAvailablePoints(userId);
-        if (availablePoints < points) {
-            return false; // ポイント残高不足
-        }
-        PointHistory pointUsage = new PointHistory(userId, -points, LocalDate.now(), "ポイント使用");
-        pointHistoryRepository.save(pointUsage);
-        return true; // 正常にポイントが利用された
-    }
-
-    /**
-     * ユーザーのポイント履歴を取得。
-     *
-     * @param userId ユーザーID
-     * @return ポイント履歴のリスト
-     */
-    public List<PointHistory> getPointHistory(String userId) {
-        return pointHistoryRepository.findByUserIdOrderByDateDesc(userId);
-    }
-
-    /**
-     * ユーザーの現在のステージ情報を取得。
-     *
-     * @param userId ユーザーID
-     * @return 現在のステージ情報
-     */
-    public Stage getStageDetails(String userId) {
-        return stageRepository.findByUserId(userId);
-    }
-
-    /**
-     * ユーザーのステージを更新（アップまたはダウン）。
-     *
-     * @param userId ユーザーID
-     * @return 更新結果（新しいステージ名）
-     */
-    public String updateStage(String userId) {
-        Stage currentStage = stageRepository.findByUserId(userId);
-        int totalPoints = getAvailablePoints(userId);
-        String newStage;
-        
-        if (totalPoints >= 1000) {
-            newStage = "ゴールド会員";
-        } else if (totalPoints >= 500) {
-            newStage = "シルバー会員";
-        } else {
-            newStage = "ブロンズ会員";
-        }
-        
-        if (!newStage.equals(currentStage.getName())) {
-            currentStage.setName(newStage);
-            stageRepository.save(currentStage);
-        }
-        
-        return newStage;
-    }
-
-    /**
-     * ステージごとの特典を取得。
-     *
-     * @return 特典のリスト
-     */
-    public List<Benefit> getAvailableBenefits() {
-        return benefitRepository.findAll();
-    }
-
-    /**
-     * 特定の特典を適用。
-     *
-     * @param userId    ユーザーID
-     * @param benefitId 特典ID
-     * @return 特典適用成功ならtrue、失敗ならfalse
-     */
-    public boolean applyBenefit(String userId, Long benefitId) {
-        Benefit benefit = benefitRepository.findById(benefitId).orElse(null);
-        if (benefit == null || !benefit.getEligibleStages().contains(stageRepository.findByUserId(userId).getName())) {
-            return false; // 適用条件に合致しなかった
-        }
-        benefitRepository.markAsApplied(benefitId, userId);
-        return true;
-    }
-
-    /**
-     * ポイントの使用期限通知を送信。
-     *
-     * @param userId ユーザーID
-     * @return 通知送信成功ならtrue、失敗ならfalse
-     */
-    public boolean notifyExpiration(String userId) {
-        List<PointHistory> expiringPoints = pointHistoryRepository.findExpiringPoints(userId, LocalDate.now().plusDays(30));
-        if (expiringPoints.isEmpty()) {
-            return false; // 有効期限が近いポイントはない
-        }
-        // 外部通知サービスを通じてメールやSMSを送信する処理（仮実装）
-        sendNotification(userId, "ポイントの有効期限が近づいています。確認してください。");
-        return true;
-    }
-
-    /**
-     * 外部通知サービスでメッセージをユーザーに送信（モックとして実装）。
-     *
-     * @param userId ユーザーID
-     * @param message 通知内容
-     */
-    private void sendNotification(String userId, String message) {
-        // 実際にはメールやSMS送信のロジックを実装
-        System.out.println("通知送信: ユーザーID=" + userId + " 内容=" + message);
-    }
-}
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ReadYourWritesTracker;
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.config.UserRouted;
+import com.example.loyaltyprogram.model.Benefit;
+import com.example.loyaltyprogram.model.IdempotencyRecordEntity;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointHistory;
+import com.example.loyaltyprogram.model.PointHistoryCursor;
+import com.example.loyaltyprogram.model.PointHistoryPage;
+import com.example.loyaltyprogram.model.PointHistoryRow;
+import com.example.loyaltyprogram.model.Purchase;
+import com.example.loyaltyprogram.model.Stage;
+import com.example.loyaltyprogram.repository.BenefitCatalogReplicaWriter;
+import com.example.loyaltyprogram.repository.BenefitRepository;
+import com.example.loyaltyprogram.repository.GrantDebitTotal;
+import com.example.loyaltyprogram.repository.IdempotencyRecordRepository;
+import com.example.loyaltyprogram.repository.PointAccrualBatchWriter;
+import com.example.loyaltyprogram.repository.PointEntityRepository;
+import com.example.loyaltyprogram.repository.PointHistoryQueryRepository;
+import com.example.loyaltyprogram.repository.PointHistoryRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * LoyaltyService
+ * ロイヤルティプログラムのビジネスロジックを提供するサービスクラス。
+ * 主にポイント、特典、ステージ管理に関連する処理を実装します。
+ */
+@Service
+@Timed("loyalty.service")
+public class LoyaltyService {
+
+    /**
+     * ポイント履歴の1ページあたりの最大件数
+     */
+    public static final int MAX_HISTORY_PAGE_SIZE = 200;
+
+    @Autowired
+    private PointHistoryRepository pointHistoryRepository;
+
+    @Autowired
+    private PointHistoryQueryRepository pointHistoryQueryRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private BenefitRepository benefitRepository;
+
+    @Autowired
+    private StageBenefitCache stageBenefitCache;
+
+    @Autowired
+    private BenefitApplicationRecorder benefitApplicationRecorder;
+
+    @Autowired
+    private BenefitCatalogReplicaWriter benefitCatalogReplicaWriter;
+
+    @Autowired
+    private BenefitEligibilityIndex benefitEligibilityIndex;
+
+    @Autowired
+    private PointEntityRepository pointEntityRepository;
+
+    @Autowired
+    private PointAccrualBatchWriter pointAccrualBatchWriter;
+
+    @Autowired
+    private UserLockStripes userLockStripes;
+
+    @Autowired
+    private StageThresholdRegistry stageThresholdRegistry;
+
+    @Autowired
+    private ExpirationNotificationDispatcher expirationNotificationDispatcher;
+
+    @Autowired
+    private LoyaltyMetrics loyaltyMetrics;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private RecentIdempotencyKeys recentIdempotencyKeys;
+
+    @Autowired
+    private PointSnapshotService pointSnapshotService;
+
+    @Autowired
+    private PointAccrualBuffer pointAccrualBuffer;
+
+    @Autowired
+    private RedemptionJournal redemptionJournal;
+
+    @Autowired
+    private HotBalanceStore hotBalanceStore;
+
+    @Autowired
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Autowired
+    private StageChangeRecorder stageChangeRecorder;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 台帳モード（pointsテーブルの残高を履歴と同一トランザクションで更新し、参照も残高行から行う）
+     */
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.points.validity-days:365}")
+    private int validityDays;
+
+    /**
+     * ユーザーのポイント残高を取得。
+     * ライトビハインドモードではDBへ未反映の付与ポイントを含め、
+     * ジャーナルモードではDBへ未反映の利用ポイントを差し引きます。
+     * リードレプリカ構成では、更新直後を除きレプリカから読み取ります。
+     *
+     * @param userId ユーザーID
+     * @return 現在のポイント残高
+     */
+    @UserRouted
+    @Transactional(readOnly = true)
+    public int getAvailablePoints(String userId) {
+        return getPersistedPoints(userId) + pointAccrualBuffer.getPendingPoints(userId)
+                - redemptionJournal.getPendingPoints(userId);
+    }
+
+    /**
+     * DBに反映済みのポイント残高を取得。
+     * 台帳モードではインメモリ残高ストア、なければ残高行を参照し、
+     * 残高行が存在しない場合は最新のスナップショットと以降の履歴から算出します。
+     *
+     * @param userId ユーザーID
+     * @return DBに反映済みのポイント残高
+     */
+    private int getPersistedPoints(String userId) {
+        if (ledgerMode) {
+            Integer hotBalance = hotBalanceStore.getBalance(userId);
+            if (hotBalance != null) {
+                return hotBalance; // インメモリ残高ストアにあればDBに問い合わせない
+            }
+            long epoch = hotBalanceStore.epoch(userId);
+            Optional<Integer> balance = pointEntityRepository.findBalanceByUserId(userId);
+            if (balance.isPresent()) {
+                hotBalanceStore.load(userId, balance.get(), epoch);
+                return balance.get();
+            }
+        }
+        return pointSnapshotService.calculateBalance(userId);
+    }
+
+    /**
+     * 購入金額に基づいてポイントを付与します。
+     * ライトビハインドモードでは付与をバッファに記録して返し（トランザクションは開始しない）、DBへはまとめて反映します。
+     *
+     * @param userId  ユーザーID
+     * @param amount  購入金額
+     * @return 付与されたポイント数
+     */
+    @UserRouted
+    public int addPoints(String userId, double amount) {
+        if (pointAccrualBuffer.isEnabled()) {
+            int pointsEarned = calculatePointsEarned(amount);
+            pointAccrualBuffer.append(userId, pointsEarned);
+            loyaltyMetrics.recordPointsEarned(pointsEarned);
+            return pointsEarned;
+        }
+        return transactionTemplate.execute(status -> accruePoints(userId, amount));
+    }
+
+    /**
+     * 冪等キーを指定して、購入金額に基づいてポイントを付与します。
+     * 同じ冪等キーで再送された場合はポイントを付与せず、初回に付与したポイント数を返します。
+     * 冪等キーはユーザーごとに管理し、初回と異なる購入金額での再利用は拒否します。
+     *
+     * @param userId         ユーザーID
+     * @param amount         購入金額
+     * @param idempotencyKey 冪等キー（未指定の場合は冪等性を保証しない）
+     * @return 付与されたポイント数（再送の場合は初回の付与ポイント数）
+     * @throws IdempotencyKeyMismatchException 冪等キーが異なる購入金額で再利用された場合
+     */
+    @UserRouted
+    public int addPoints(String userId, double amount, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return transactionTemplate.execute(status -> accruePoints(userId, amount));
+        }
+        String operation = IdempotencyRecordEntity.OPERATION_ACCRUAL;
+        String fingerprint = IdempotencyRecordEntity.amountFingerprint(amount);
+        Integer recentResult = recentIdempotencyKeys.get(operation, userId, idempotencyKey, fingerprint);
+        if (recentResult != null) {
+            return recentResult; // 直近の再送はDBに問い合わせずに元の結果を返す
+        }
+        int pointsEarned;
+        try {
+            pointsEarned = transactionTemplate.execute(status -> {
+                // 一意制約で重複を検出するため、付与より先に冪等キーを登録する
+                idempotencyRecordRepository.saveAndFlush(new IdempotencyRecordEntity(
+                        operation, idempotencyKey, userId, fingerprint, calculatePointsEarned(amount)));
+                return accruePoints(userId, amount);
+            });
+        } catch (DataIntegrityViolationException e) {
+            pointsEarned = findIdempotentResult(operation, userId, idempotencyKey, fingerprint, e);
+        }
+        recentIdempotencyKeys.put(operation, userId, idempotencyKey, fingerprint, pointsEarned);
+        return pointsEarned;
+    }
+
+    /**
+     * ポイント履歴を登録し、台帳モードの残高を更新（トランザクション内で呼び出す）。
+     *
+     * @param userId ユーザーID
+     * @param amount 購入金額
+     * @return 付与されたポイント数
+     */
+    private int accruePoints(String userId, double amount) {
+        int pointsEarned = calculatePointsEarned(amount);
+        PointHistory pointHistory = new PointHistory(userId, pointsEarned, LocalDate.now(), "購入によるポイント付与");
+        pointHistoryRepository.save(pointHistory);
+        applyBalanceDelta(userId, pointsEarned);
+        readYourWritesTracker.recordWrite(userId);
+        loyaltyEventPublisher.publish(LoyaltyEvent.POINT_EARNED, userId,
+                LoyaltyEventPublisher.payload("points", pointsEarned, "amount", amount));
+        loyaltyMetrics.recordPointsEarned(pointsEarned);
+        return pointsEarned;
+    }
+
+    /**
+     * 複数の購入に対してポイントを一括付与します。
+     * ポイント履歴はJDBCバッチで一括登録し、台帳モードの残高はユーザーごとに1回だけ更新します。
+     * シャード分割時は購入をユーザーのシャードごとに分け、シャードごとに1トランザクションで登録します。
+     * 冪等キーを指定した購入は、同じユーザー・キーで付与済みの場合は付与しません（ファイルの再送に対応）。
+     *
+     * @param purchases 購入情報のリスト
+     * @return 付与されたポイントの合計
+     */
+    public long addPointsBatch(List<Purchase> purchases) {
+        Map<String, List<Purchase>> purchasesByUser = new LinkedHashMap<>();
+        for (Purchase purchase : purchases) {
+            purchasesByUser.computeIfAbsent(purchase.getUserId(), userId -> new ArrayList<>()).add(purchase);
+        }
+        long[] totalPointsEarned = new long[1];
+        shardRouter.forEachShardOf(purchasesByUser, (shard, shardPurchases) ->
+                totalPointsEarned[0] += transactionTemplate.execute(status -> addPointsBatchOnShard(shardPurchases)));
+        loyaltyMetrics.recordPointsEarned(totalPointsEarned[0]);
+        return totalPointsEarned[0];
+    }
+
+    /**
+     * 1シャード分の購入に対してポイントを一括付与（トランザクション内で呼び出す）。
+     *
+     * @param purchasesByUser ユーザーIDごとの購入情報
+     * @return 付与されたポイントの合計
+     */
+    private long addPointsBatchOnShard(Map<String, List<Purchase>> purchasesByUser) {
+        LocalDate today = LocalDate.now();
+        Set<Purchase> replayedPurchases = findReplayedPurchases(purchasesByUser);
+        List<PointHistory> histories = new ArrayList<>();
+        Map<String, Integer> balanceDeltas = new HashMap<>();
+        long totalPointsEarned = 0;
+        for (List<Purchase> userPurchases : purchasesByUser.values()) {
+            for (Purchase purchase : userPurchases) {
+                if (replayedPurchases.contains(purchase)) {
+                    continue; // 付与済みの冪等キーの行は付与しない
+                }
+                int pointsEarned = calculatePointsEarned(purchase.getAmount());
+                histories.add(new PointHistory(purchase.getUserId(), pointsEarned, today, "購入によるポイント付与"));
+                balanceDeltas.merge(purchase.getUserId(), pointsEarned, Integer::sum);
+                totalPointsEarned += pointsEarned;
+            }
+        }
+        pointAccrualBatchWriter.insertHistories(histories);
+        if (ledgerMode) {
+            pointAccrualBatchWriter.applyBalanceDeltas(balanceDeltas, LocalDateTime.now());
+            hotBalanceStore.applyAfterCommit(balanceDeltas);
+        }
+        // イベントはユーザーごとに合算して1件ずつ登録する
+        for (Map.Entry<String, Integer> delta : balanceDeltas.entrySet()) {
+            readYourWritesTracker.recordWrite(delta.getKey());
+            loyaltyEventPublisher.publish(LoyaltyEvent.POINT_EARNED, delta.getKey(),
+                    LoyaltyEventPublisher.payload("points", delta.getValue()));
+        }
+        return totalPointsEarned;
+    }
+
+    /**
+     * 冪等キーを指定した購入の冪等キーを一括登録し、既に登録されていた（付与済みの）購入を求める（トランザクション内で呼び出す）。
+     * 冪等キーの登録は付与と同じトランザクションで行うため、付与がロールバックされた場合はキーも登録されません。
+     * 一括付与では行ごとの結果を返さないため、付与済みのキーが異なる購入金額で再利用されていても拒否せずに付与しません。
+     *
+     * @param purchasesByUser ユーザーIDごとの購入情報
+     * @return 付与済みの購入（同じファイル内で重複したキーの2件目以降を含む）
+     */
+    private Set<Purchase> findReplayedPurchases(Map<String, List<Purchase>> purchasesByUser) {
+        List<Purchase> keyedPurchases = new ArrayList<>();
+        List<IdempotencyRecordEntity> records = new ArrayList<>();
+        for (List<Purchase> userPurchases : purchasesByUser.values()) {
+            for (Purchase purchase : userPurchases) {
+                String idempotencyKey = purchase.getIdempotencyKey();
+                if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+                    keyedPurchases.add(purchase);
+                    records.add(new IdempotencyRecordEntity(IdempotencyRecordEntity.OPERATION_ACCRUAL, idempotencyKey,
+                            purchase.getUserId(), IdempotencyRecordEntity.amountFingerprint(purchase.getAmount()),
+                            calculatePointsEarned(purchase.getAmount())));
+                }
+            }
+        }
+        if (records.isEmpty()) {
+            return Collections.emptySet();
+        }
+        int[] counts = pointAccrualBatchWriter.insertIdempotencyKeysIfAbsent(records);
+        Set<Purchase> replayedPurchases = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                replayedPurchases.add(keyedPurchases.get(i));
+            }
+        }
+        return replayedPurchases;
+    }
+
+    /**
+     * 購入金額から付与ポイント数を算出。
+     *
+     * @param amount 購入金額
+     * @return 付与ポイント数
+     */
+    private int calculatePointsEarned(double amount) {
+        return (int) (amount * 0.1); // 購入金額の10%をポイントとして付与
+    }
+
+    /**
+     * ポイントを利用して割引を適用。
+     * 台帳モードでは残高行の条件付き更新で残高確認と減算を同時に行います。
+     * 残高行を使わない場合はユーザー単位のストライプロックで残高確認から履歴登録までを直列化し、
+     * 同一ユーザーへの同時利用による残高超過を防ぎます。
+     * ジャーナルモードでは利用をローカルジャーナルに記録した時点で成功とし、DBへは非同期に反映します。
+     *
+     * @param userId ユーザーID
+     * @param points 使用するポイント数
+     * @return ポイント利用成功ならtrue、失敗ならfalse（ポイント残高不足など）
+     */
+    @UserRouted
+    public boolean usePoints(String userId, int points) {
+        return usePoints(userId, points, null);
+    }
+
+    /**
+     * 冪等キーを指定して、ポイントを利用して割引を適用。
+     * 同じ冪等キーで再送された場合はポイントを利用せず、初回の処理結果を返します。
+     *
+     * @param userId         ユーザーID
+     * @param points         使用するポイント数
+     * @param idempotencyKey 冪等キー（未指定の場合は冪等性を保証しない）
+     * @return ポイント利用成功ならtrue、失敗ならfalse（再送の場合は初回の処理結果）
+     */
+    @UserRouted
+    public boolean usePoints(String userId, int points, String idempotencyKey) {
+        if (points <= 0) {
+            loyaltyMetrics.recordRedemptionRejected("invalid_amount");
+            return false; // 使用ポイント数が不正
+        }
+        String key = (idempotencyKey == null || idempotencyKey.isBlank()) ? null : idempotencyKey;
+        String operation = IdempotencyRecordEntity.OPERATION_REDEMPTION;
+        String fingerprint = IdempotencyRecordEntity.pointsFingerprint(points);
+        if (key != null) {
+            Integer recentResult = recentIdempotencyKeys.get(operation, userId, key, fingerprint);
+            if (recentResult != null) {
+                return recentResult == 1; // 直近の再送はDBに問い合わせずに元の結果を返す
+            }
+        }
+        boolean redeemed;
+        try {
+            redeemed = redeem(userId, points, key);
+        } catch (DataIntegrityViolationException e) {
+            boolean originalResult = findIdempotentResult(operation, userId, key, fingerprint, e) == 1;
+            recentIdempotencyKeys.put(operation, userId, key, fingerprint, originalResult ? 1 : 0);
+            return originalResult;
+        }
+        if (key != null && !redemptionJournal.isEnabled()) {
+            // ジャーナルの受け付けは確定した結果ではない（DBへの反映時に取り消される場合がある）ためキャッシュしない
+            recentIdempotencyKeys.put(operation, userId, key, fingerprint, redeemed ? 1 : 0);
+        }
+        if (redeemed) {
+            loyaltyMetrics.recordPointsRedeemed(points);
+        } else {
+            loyaltyMetrics.recordRedemptionRejected("insufficient_balance");
+        }
+        return redeemed;
+    }
+
+    /**
+     * 残高行の条件付き更新、またはユーザー単位のロックによる直列化でポイントを利用。
+     *
+     * 冪等キーは利用処理と同一トランザクションで登録し、処理結果を記録します。
+     *
+     * @param userId         ユーザーID
+     * @param points         使用するポイント数
+     * @param idempotencyKey 冪等キー（未指定の場合はnull）
+     * @return ポイント利用成功ならtrue、残高不足ならfalse
+     * @throws DataIntegrityViolationException 冪等キーが処理済みの場合
+     */
+    private boolean redeem(String userId, int points, String idempotencyKey) {
+        if (redemptionJournal.isEnabled()) {
+            return redeemToJournal(userId, points, idempotencyKey);
+        }
+        if (ledgerMode) {
+            Integer hotBalance = hotBalanceStore.getBalance(userId);
+            if (hotBalance != null && hotBalance < points) {
+                // 他ノードでの付与が反映されていない可能性があるため、読み込み直させたうえでDBの条件付き更新で判定する
+                hotBalanceStore.invalidate(userId);
+            }
+            Boolean redeemed = transactionTemplate.execute(status -> {
+                IdempotencyRecordEntity record = reserveRedemptionKey(userId, points, idempotencyKey);
+                Boolean result = redeemFromBalanceRow(userId, points);
+                if (result == null) {
+                    status.setRollbackOnly(); // 冪等キーの登録を取り消して履歴による判定でやり直す
+                    return null;
+                }
+                completeRedemptionKey(record, result);
+                return result;
+            });
+            if (redeemed != null) {
+                return redeemed;
+            }
+            // 残高行が存在しない場合は履歴の合計による判定に切り替える
+        }
+        Lock lock = userLockStripes.lockFor(userId);
+        lock.lock();
+        try {
+            // コミット完了までロックを保持するため、トランザクションはロック内で開始する
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                IdempotencyRecordEntity record = reserveRedemptionKey(userId, points, idempotencyKey);
+                boolean result = redeemFromHistory(userId, points);
+                completeRedemptionKey(record, result);
+                return result;
+            }));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 残高を確認してポイント利用をジャーナルに記録（DBへの反映は非同期）。
+     * ユーザー単位のロック内で、DBの残高から未反映の利用を差し引いた残高で判定します。
+     * この判定はノード内でのみ有効なため、DBへの反映時に残高行の条件付き更新で確定させます（RedemptionJournal 参照）。
+     *
+     * @param userId         ユーザーID
+     * @param points         使用するポイント数
+     * @param idempotencyKey 冪等キー（未指定の場合はnull）
+     * @return ポイント利用成功ならtrue、残高不足ならfalse（再送の場合は初回の処理結果）
+     */
+    private boolean redeemToJournal(String userId, int points, String idempotencyKey) {
+        Lock lock = userLockStripes.lockFor(userId);
+        lock.lock();
+        try {
+            if (idempotencyKey != null) {
+                String operation = IdempotencyRecordEntity.OPERATION_REDEMPTION;
+                Integer pendingPoints = redemptionJournal.getPendingRequestPoints(userId, idempotencyKey);
+                if (pendingPoints != null) {
+                    if (pendingPoints != points) {
+                        throw new IdempotencyKeyMismatchException(operation, idempotencyKey);
+                    }
+                    return true; // 記録済みでDBへ反映待ち
+                }
+                Optional<IdempotencyRecordEntity> processed = idempotencyRecordRepository
+                        .findByOperationAndUserIdAndIdempotencyKey(operation, userId, idempotencyKey);
+                if (processed.isPresent()) {
+                    if (!processed.get().matches(IdempotencyRecordEntity.pointsFingerprint(points))) {
+                        throw new IdempotencyKeyMismatchException(operation, idempotencyKey);
+                    }
+                    return processed.get().getResult() == 1;
+                }
+            }
+            int availablePoints = getPersistedPoints(userId) - redemptionJournal.getPendingPoints(userId);
+            if (availablePoints < points) {
+                return false; // ポイント残高不足
+            }
+            redemptionJournal.record(userId, points, idempotencyKey);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ポイント利用の冪等キーを登録（一意制約により処理済みのキーは例外となる）。
+     *
+     * @param userId         ユーザーID
+     * @param points         使用するポイント数
+     * @param idempotencyKey 冪等キー（未指定の場合はnull）
+     * @return 登録した冪等キーの記録（未指定の場合はnull）
+     */
+    private IdempotencyRecordEntity reserveRedemptionKey(String userId, int points, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        return idempotencyRecordRepository.saveAndFlush(new IdempotencyRecordEntity(IdempotencyRecordEntity.OPERATION_REDEMPTION,
+                idempotencyKey, userId, IdempotencyRecordEntity.pointsFingerprint(points), 0));
+    }
+
+    /**
+     * ポイント利用の処理結果を冪等キーの記録に反映（コミット時に更新される）。
+     *
+     * @param record   冪等キーの記録（未指定の場合はnull）
+     * @param redeemed ポイント利用成功ならtrue
+     */
+    private void completeRedemptionKey(IdempotencyRecordEntity record, boolean redeemed) {
+        if (record != null) {
+            record.setResult(redeemed ? 1 : 0);
+        }
+    }
+
+    /**
+     * 処理済みの冪等キーの結果を取得。
+     *
+     * @param operation          処理種別
+     * @param userId             ユーザーID
+     * @param idempotencyKey     冪等キー
+     * @param requestFingerprint リクエスト内容
+     * @param cause              冪等キー登録時の一意制約違反
+     * @return 初回の処理結果
+     * @throws DataIntegrityViolationException 冪等キー以外の制約違反だった場合
+     * @throws IdempotencyKeyMismatchException 初回と異なる内容のリクエストの場合
+     */
+    private int findIdempotentResult(String operation, String userId, String idempotencyKey, String requestFingerprint,
+                                     DataIntegrityViolationException cause) {
+        if (idempotencyKey == null) {
+            throw cause;
+        }
+        IdempotencyRecordEntity record = idempotencyRecordRepository
+                .findByOperationAndUserIdAndIdempotencyKey(operation, userId, idempotencyKey)
+                .orElseThrow(() -> cause);
+        if (!record.matches(requestFingerprint)) {
+            throw new IdempotencyKeyMismatchException(operation, idempotencyKey);
+        }
+        return record.getResult();
+    }
+
+    /**
+     * 残高行の条件付き更新でポイントを利用。
+     *
+     * @param userId ユーザーID
+     * @param points 使用するポイント数
+     * @return 利用成功ならtrue、残高不足ならfalse、残高行が存在しない場合はnull
+     */
+    private Boolean redeemFromBalanceRow(String userId, int points) {
+        int updated = pointEntityRepository.deductBalanceIfSufficient(userId, points, LocalDateTime.now());
+        if (updated == 0) {
+            return pointEntityRepository.findBalanceByUserId(userId).isPresent() ? Boolean.FALSE : null;
+        }
+        PointHistory pointUsage = new PointHistory(userId, -points, LocalDate.now(), "ポイント使用");
+        pointHistoryRepository.save(pointUsage);
+        hotBalanceStore.applyAfterCommit(userId, -points);
+        readYourWritesTracker.recordWrite(userId);
+        loyaltyEventPublisher.publish(LoyaltyEvent.POINT_USED, userId, LoyaltyEventPublisher.payload("points", points));
+        return Boolean.TRUE;
+    }
+
+    /**
+     * ポイント履歴の合計で残高を確認してポイントを利用（ユーザー単位のロック取得後に呼び出す）。
+     *
+     * @param userId ユーザーID
+     * @param points 使用するポイント数
+     * @return ポイント利用成功ならtrue、残高不足ならfalse
+     */
+    private boolean redeemFromHistory(String userId, int points) {
+        int availablePoints = getPersistedPoints(userId); // 未反映の付与は反映後に利用可能とする
+        if (availablePoints < points) {
+            return false; // ポイント残高不足
+        }
+        PointHistory pointUsage = new PointHistory(userId, -points, LocalDate.now(), "ポイント使用");
+        pointHistoryRepository.save(pointUsage);
+        applyBalanceDelta(userId, -points);
+        readYourWritesTracker.recordWrite(userId);
+        loyaltyEventPublisher.publish(LoyaltyEvent.POINT_USED, userId, LoyaltyEventPublisher.payload("points", points));
+        return true; // 正常にポイントが利用された
+    }
+
+    /**
+     * 台帳モードの場合、ポイント履歴の登録と同一トランザクションで残高行を更新。
+     * 残高行が存在しないユーザーは更新されず、残高参照時に履歴の合計から算出されます。
+     *
+     * @param userId ユーザーID
+     * @param delta  残高の増減ポイント数
+     */
+    private void applyBalanceDelta(String userId, int delta) {
+        if (ledgerMode) {
+            pointEntityRepository.addToBalance(userId, delta, LocalDateTime.now());
+            hotBalanceStore.applyAfterCommit(userId, delta);
+        }
+    }
+
+    /**
+     * ユーザーのポイント履歴を取得。
+     *
+     * @param userId ユーザーID
+     * @return ポイント履歴のリスト
+     */
+    @UserRouted
+    @Transactional(readOnly = true)
+    public List<PointHistory> getPointHistory(String userId) {
+        return pointHistoryRepository.findByUserIdOrderByDateDesc(userId);
+    }
+
+    /**
+     * ユーザーのポイント履歴を1ページ分取得（(日時, ID) によるキーセットページング）。
+     * 各行には、その履歴を反映した時点のポイント残高（現在の残高から遡った累計）を付与します。
+     *
+     * @param userId   ユーザーID
+     * @param cursor   前ページのカーソル（先頭ページの場合はnull）
+     * @param pageSize 1ページあたりの件数
+     * @return ポイント履歴のページ
+     */
+    @UserRouted
+    @Transactional(readOnly = true)
+    public PointHistoryPage getPointHistoryPage(String userId, String cursor, int pageSize) {
+        int size = Math.min(Math.max(pageSize, 1), MAX_HISTORY_PAGE_SIZE);
+        PageRequest limit = PageRequest.of(0, size + 1); // 次ページの有無を判定するため1件多く取得
+        PointHistoryCursor after = PointHistoryCursor.parse(cursor);
+        List<PointHistory> rows = (after == null)
+                ? pointHistoryQueryRepository.findFirstPage(userId, limit)
+                : pointHistoryQueryRepository.findPageAfter(userId, after.getDate(), after.getId(), limit);
+        int balance = resolveRunningBalance(userId, after);
+        int itemCount = Math.min(rows.size(), size);
+        List<PointHistoryRow> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            PointHistory history = rows.get(i);
+            items.add(new PointHistoryRow(history, balance));
+            balance -= history.getChangeQuantity(); // 1つ古い行の時点の残高
+        }
+        if (rows.size() <= size) {
+            return new PointHistoryPage(items, null);
+        }
+        PointHistory last = rows.get(size - 1);
+        return new PointHistoryPage(items, new PointHistoryCursor(last.getDate(), last.getId(), balance).encode());
+    }
+
+    /**
+     * ページ先頭行の時点のポイント残高を取得。
+     * 先頭ページは現在の残高、以降のページはカーソルに含まれる残高を使用します。
+     *
+     * @param userId ユーザーID
+     * @param after  前ページのカーソル（先頭ページの場合はnull）
+     * @return ページ先頭行の時点のポイント残高
+     */
+    private int resolveRunningBalance(String userId, PointHistoryCursor after) {
+        if (after == null) {
+            return getAvailablePoints(userId);
+        }
+        if (after.getBalance() != null) {
+            return after.getBalance();
+        }
+        // 残高を含まないカーソルの場合は、前ページまでの履歴を差し引いて求める
+        return getAvailablePoints(userId) - (int) pointHistoryQueryRepository.sumPointsNotOlderThan(userId, after.getDate(), after.getId());
+    }
+
+    /**
+     * ユーザーのポイント履歴を新しい順に1件ずつ処理（全件をメモリに載せない）。
+     * 処理済みの行は永続化コンテキストから切り離し、件数によらずメモリ使用量を一定に保ちます。
+     *
+     * @param userId   ユーザーID
+     * @param consumer ポイント履歴1件ごとの処理
+     */
+    @UserRouted
+    @Transactional(readOnly = true)
+    public void streamPointHistory(String userId, Consumer<PointHistory> consumer) {
+        try (Stream<PointHistory> histories = pointHistoryQueryRepository.streamByUserId(userId)) {
+            histories.forEach(history -> {
+                consumer.accept(history);
+                entityManager.detach(history);
+            });
+        }
+    }
+
+    /**
+     * ユーザーの現在のステージ情報を取得。
+     *
+     * @param userId ユーザーID
+     * @return 現在のステージ情報
+     */
+    @UserRouted
+    @Transactional(readOnly = true)
+    public Stage getStageDetails(String userId) {
+        return stageBenefitCache.findStageByUserId(userId);
+    }
+
+    /**
+     * ユーザーのステージを更新（アップまたはダウン）。
+     *
+     * @param userId ユーザーID
+     * @return 更新結果（新しいステージ名）
+     */
+    @UserRouted
+    @Transactional
+    public String updateStage(String userId) {
+        Stage currentStage = stageBenefitCache.loadStageForUpdate(userId); // 更新はキャッシュではなくDBの値を基に行う
+        int totalPoints = getAvailablePoints(userId);
+        String newStage = resolveStageName(totalPoints);
+        
+        if (!newStage.equals(currentStage.getName())) {
+            String previousStage = currentStage.getName();
+            currentStage.setName(newStage);
+            stageBenefitCache.saveStage(userId, currentStage);
+            stageChangeRecorder.recordChange(userId, previousStage, newStage, totalPoints);
+        }
+        
+        return newStage;
+    }
+
+    /**
+     * ポイント合計に対応するステージ名を判定（ステージ定義のしきい値テーブルを使用）。
+     *
+     * @param totalPoints ポイント合計
+     * @return ステージ名
+     */
+    public String resolveStageName(int totalPoints) {
+        return stageThresholdRegistry.resolveStage(totalPoints);
+    }
+
+    /**
+     * ステージごとの特典を取得。
+     *
+     * @return 特典のリスト
+     */
+    @Transactional(readOnly = true)
+    public List<Benefit> getAvailableBenefits() {
+        return stageBenefitCache.findAllBenefits();
+    }
+
+    /**
+     * 特典情報を更新（特典カタログのキャッシュを無効化）。
+     * 特典カタログは全シャードに複製します。特典IDは既定のシャードで採番し、他のシャードには同じIDで登録します。
+     *
+     * @param benefit 更新する特典
+     * @return 更新後の特典
+     */
+    public Benefit updateBenefit(Benefit benefit) {
+        Benefit saved = shardRouter.callOnShard(shardRouter.getDefaultShard(), () -> stageBenefitCache.saveBenefit(benefit));
+        Map<String, Object> row = shardRouter.callOnShard(shardRouter.getDefaultShard(),
+                () -> benefitCatalogReplicaWriter.findRow(saved.getId()));
+        shardRouter.forEachShard(shard -> {
+            if (!shard.equals(shardRouter.getDefaultShard())) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    benefitCatalogReplicaWriter.insertIfAbsent(row); // 複製先で別のIDが採番されないよう、先に同じIDで登録する
+                    stageBenefitCache.saveBenefit(saved);
+                });
+            }
+        });
+        benefitEligibilityIndex.upsert(saved);
+        return saved;
+    }
+
+    /**
+     * ユーザーの現在のステージで利用できる有効な特典を取得（有効期限の早い順）。
+     *
+     * @param userId ユーザーID
+     * @return 特典のリスト（ステージ情報がない場合は空）
+     */
+    @UserRouted
+    @Transactional(readOnly = true)
+    public List<Benefit> getBenefitsForUser(String userId) {
+        Stage stage = stageBenefitCache.findStageByUserId(userId);
+        if (stage == null) {
+            return Collections.emptyList();
+        }
+        return benefitEligibilityIndex.getActiveBenefits(stage.getName());
+    }
+
+    /**
+     * 特定の特典を適用。
+     * 特典がユーザーのステージの対象で、有効期間内であるかを特典インデックスで判定します。
+     *
+     * @param userId    ユーザーID
+     * @param benefitId 特典ID
+     * @return 特典適用成功ならtrue、失敗ならfalse
+     */
+    @UserRouted
+    @Transactional
+    public boolean applyBenefit(String userId, Long benefitId) {
+        Stage stage = stageBenefitCache.findStageByUserId(userId);
+        if (stage == null || !benefitEligibilityIndex.isEligible(benefitId, stage.getName())) {
+            loyaltyMetrics.recordBenefitApplied(false);
+            return false; // 適用条件に合致しなかった
+        }
+        // インデックスは他ノードでの変更を定期再構築まで反映しないため、適用前にDBの特典で確認する
+        Optional<Benefit> current = benefitRepository.findById(benefitId);
+        if (current.isEmpty() || !BenefitEligibilityIndex.isEligible(current.get(), stage.getName())) {
+            loyaltyMetrics.recordBenefitApplied(false);
+            return false; // 他ノードで終了・対象変更された特典
+        }
+        benefitApplicationRecorder.recordApplication(benefitId, userId, stage.getName());
+        return true;
+    }
+
+    /**
+     * ポイントの使用期限通知を送信キューに登録（送信は非同期で行われます）。
+     * 30日以内に期限を迎えるポイントのうち、利用・失効で消費済みの分は対象としません（夜間バッチと同じ先入れ先出しの判定）。
+     *
+     * @param userId ユーザーID
+     * @return 通知を受け付けた場合はtrue、期限が近いポイントがない場合や受付できなかった場合はfalse
+     */
+    @UserRouted
+    public boolean notifyExpiration(String userId) {
+        LocalDate grantedBefore = LocalDate.now().minusDays(validityDays).plusDays(30);
+        long expiringPoints = pointHistoryQueryRepository.sumGrantsAndDebitsByUserIds(List.of(userId), grantedBefore)
+                .stream()
+                .mapToLong(GrantDebitTotal::getUnconsumedPoints)
+                .sum();
+        if (expiringPoints <= 0) {
+            return false; // 有効期限が近いポイントはない（使用済みを含む）
+        }
+        // 外部通知サービスへの送信は送信スレッドで行う
+        return expirationNotificationDispatcher.enqueue(userId, "ポイントの有効期限が近づいています。確認してください。");
+    }
+}
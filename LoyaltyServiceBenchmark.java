@@ -0,0 +1,199 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ReadYourWritesTracker;
+import com.example.loyaltyprogram.model.Benefit;
+import com.example.loyaltyprogram.model.PointHistory;
+import com.example.loyaltyprogram.model.Stage;
+import com.example.loyaltyprogram.repository.BenefitRepository;
+import com.example.loyaltyprogram.repository.PointEntityRepository;
+import com.example.loyaltyprogram.repository.PointHistoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * LoyaltyServiceBenchmark
+ * LoyaltyService の主要な処理（残高参照・付与・利用・ステージ更新・特典適用・履歴参照）のJMHベンチマーク。
+ * DBは LoyaltyServiceRedemptionStressTest と同じくインメモリの疑似実装に置き換え、
+ * ユーザーあたりの履歴件数（10〜10万件）を変えたときのサービス層の処理コストを測定します。
+ * 残高は履歴の全件合計で算出する（スナップショットがない場合の最悪値）ため、履歴件数に比例した差が出ます。
+ * main から実行すると、スループット・レイテンシのパーセンタイル（p99など）・GCプロファイラのアロケーション量を
+ * JSON（jmh-result.json）に出力するため、前回の結果と比較して性能の劣化を検出できます。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoyaltyServiceBenchmark {
+
+    private static final String USER_ID = "user-1";
+
+    private static final String STAGE_NAME = "GOLD";
+
+    private static final Long BENEFIT_ID = 1L;
+
+    /**
+     * ユーザーあたりのポイント履歴の件数
+     */
+    @Param({"10", "1000", "100000"})
+    private int historySize;
+
+    private LoyaltyService loyaltyService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<PointHistory> histories = new ArrayList<>(historySize);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < historySize; i++) {
+            histories.add(new PointHistory(USER_ID, 100, today.minusDays(i % 365), "購入によるポイント付与"));
+        }
+
+        PointHistoryRepository pointHistoryRepository = mock(PointHistoryRepository.class);
+        when(pointHistoryRepository.save(any(PointHistory.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(pointHistoryRepository.findByUserIdOrderByDateDesc(anyString())).thenReturn(histories);
+
+        // 残高は履歴の全件合計で算出する（登録した履歴は合計に含めず、測定中に履歴件数が変わらないようにする）
+        PointSnapshotService pointSnapshotService = mock(PointSnapshotService.class);
+        when(pointSnapshotService.calculateBalance(anyString())).thenAnswer(invocation -> {
+            int total = 0;
+            for (PointHistory history : histories) {
+                total += history.getChangeQuantity();
+            }
+            return total;
+        });
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(mock(TransactionStatus.class));
+        });
+
+        Stage stage = new Stage();
+        stage.setName(STAGE_NAME);
+        StageBenefitCache stageBenefitCache = mock(StageBenefitCache.class);
+        when(stageBenefitCache.findStageByUserId(anyString())).thenReturn(stage);
+        when(stageBenefitCache.loadStageForUpdate(anyString())).thenReturn(stage);
+
+        StageThresholdRegistry stageThresholdRegistry = mock(StageThresholdRegistry.class);
+        when(stageThresholdRegistry.resolveStage(anyInt())).thenReturn(STAGE_NAME);
+
+        // 対象ステージのコレクションの型（List/Set）によらず返せるよう、戻り値の型で切り替える
+        Benefit benefit = mock(Benefit.class, invocation -> {
+            String name = invocation.getMethod().getName();
+            if (name.equals("getId")) {
+                return BENEFIT_ID;
+            }
+            if (name.equals("getEligibleStages")) {
+                return List.class.isAssignableFrom(invocation.getMethod().getReturnType())
+                        ? List.of(STAGE_NAME)
+                        : Set.of(STAGE_NAME);
+            }
+            return null; // 有効期間の指定なし
+        });
+        BenefitRepository benefitRepository = mock(BenefitRepository.class);
+        when(benefitRepository.findById(anyLong())).thenReturn(Optional.of(benefit));
+        BenefitEligibilityIndex benefitEligibilityIndex = mock(BenefitEligibilityIndex.class);
+        when(benefitEligibilityIndex.isEligible(anyLong(), anyString())).thenReturn(true);
+
+        loyaltyService = new LoyaltyService();
+        ReflectionTestUtils.setField(loyaltyService, "pointHistoryRepository", pointHistoryRepository);
+        ReflectionTestUtils.setField(loyaltyService, "pointSnapshotService", pointSnapshotService);
+        ReflectionTestUtils.setField(loyaltyService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(loyaltyService, "stageBenefitCache", stageBenefitCache);
+        ReflectionTestUtils.setField(loyaltyService, "stageThresholdRegistry", stageThresholdRegistry);
+        ReflectionTestUtils.setField(loyaltyService, "benefitRepository", benefitRepository);
+        ReflectionTestUtils.setField(loyaltyService, "benefitEligibilityIndex", benefitEligibilityIndex);
+        ReflectionTestUtils.setField(loyaltyService, "userLockStripes", new UserLockStripes(1024));
+        ReflectionTestUtils.setField(loyaltyService, "pointEntityRepository", mock(PointEntityRepository.class));
+        ReflectionTestUtils.setField(loyaltyService, "pointAccrualBuffer", mock(PointAccrualBuffer.class));
+        ReflectionTestUtils.setField(loyaltyService, "redemptionJournal", mock(RedemptionJournal.class));
+        ReflectionTestUtils.setField(loyaltyService, "hotBalanceStore", mock(HotBalanceStore.class));
+        ReflectionTestUtils.setField(loyaltyService, "benefitApplicationRecorder", mock(BenefitApplicationRecorder.class));
+        ReflectionTestUtils.setField(loyaltyService, "stageChangeRecorder", mock(StageChangeRecorder.class));
+        ReflectionTestUtils.setField(loyaltyService, "loyaltyEventPublisher", mock(LoyaltyEventPublisher.class));
+        ReflectionTestUtils.setField(loyaltyService, "readYourWritesTracker", mock(ReadYourWritesTracker.class));
+        ReflectionTestUtils.setField(loyaltyService, "recentIdempotencyKeys", mock(RecentIdempotencyKeys.class));
+        ReflectionTestUtils.setField(loyaltyService, "loyaltyMetrics", mock(LoyaltyMetrics.class));
+    }
+
+    @Benchmark
+    public int getAvailablePoints() {
+        return loyaltyService.getAvailablePoints(USER_ID);
+    }
+
+    @Benchmark
+    public int addPoints() {
+        return loyaltyService.addPoints(USER_ID, 1_000);
+    }
+
+    @Benchmark
+    public boolean usePoints() {
+        return loyaltyService.usePoints(USER_ID, 10);
+    }
+
+    @Benchmark
+    public String updateStage() {
+        return loyaltyService.updateStage(USER_ID);
+    }
+
+    @Benchmark
+    public boolean applyBenefit() {
+        return loyaltyService.applyBenefit(USER_ID, BENEFIT_ID);
+    }
+
+    @Benchmark
+    public List<PointHistory> getPointHistory() {
+        return loyaltyService.getPointHistory(USER_ID);
+    }
+
+    /**
+     * ベンチマークを実行し、結果をJSONで出力します（出力先は引数で指定、省略時は jmh-result.json）。
+     *
+     * @param args 結果の出力先
+     * @throws RunnerException ベンチマークの実行に失敗した場合
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LoyaltyServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 0 ? args[0] : "jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
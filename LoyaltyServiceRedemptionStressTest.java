@@ -0,0 +1,228 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ReadYourWritesTracker;
+import com.example.loyaltyprogram.model.PointHistory;
+import com.example.loyaltyprogram.repository.PointEntityRepository;
+import com.example.loyaltyprogram.repository.PointHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * LoyaltyServiceRedemptionStressTest
+ * 同一ユーザーへのポイント利用を多数のスレッドから同時に実行し、残高超過が起きないことを検証するテスト。
+ * DBはユーザーごとの残高・履歴合計を保持するインメモリの疑似実装に置き換え、
+ * 残高確認から履歴登録までの間に意図的に待ちを入れて競合を起こりやすくしています。
+ * あわせて、異なるユーザーへの利用がユーザー単位のロックで直列化されず、スレッド数に応じて並列に処理されることを、
+ * 1秒あたりの利用件数の比で検証します（1件ごとに1ミリ秒の待ちがあるため、直列化されると件数は増えません）。
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class LoyaltyServiceRedemptionStressTest {
+
+    private static final int INITIAL_BALANCE = 1_000;
+
+    private static final int POINTS_PER_REDEMPTION = 10;
+
+    @Mock
+    private PointHistoryRepository pointHistoryRepository;
+
+    @Mock
+    private PointEntityRepository pointEntityRepository;
+
+    @Mock
+    private PointSnapshotService pointSnapshotService;
+
+    @Mock
+    private PointAccrualBuffer pointAccrualBuffer;
+
+    @Mock
+    private RedemptionJournal redemptionJournal;
+
+    @Mock
+    private HotBalanceStore hotBalanceStore;
+
+    @Mock
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Mock
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Mock
+    private LoyaltyMetrics loyaltyMetrics;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private UserLockStripes userLockStripes = new UserLockStripes(1024);
+
+    @InjectMocks
+    private LoyaltyService loyaltyService;
+
+    /**
+     * ユーザーごとのポイント履歴の合計（point_historyの疑似実装）
+     */
+    private final Map<String, AtomicInteger> historyTotals = new ConcurrentHashMap<>();
+
+    /**
+     * ユーザーごとの残高行（pointsテーブルの疑似実装）
+     */
+    private final Map<String, AtomicInteger> rowBalances = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(mock(TransactionStatus.class));
+        });
+        // 履歴の合計による残高確認（確認から登録までの間に他スレッドが割り込めるよう待ちを入れる）
+        when(pointSnapshotService.calculateBalance(anyString())).thenAnswer(invocation -> {
+            int balance = historyTotals.get(invocation.<String>getArgument(0)).get();
+            Thread.sleep(1);
+            return balance;
+        });
+        when(pointHistoryRepository.save(any(PointHistory.class))).thenAnswer(invocation -> {
+            PointHistory history = invocation.getArgument(0);
+            historyTotals.get(history.getUserId()).addAndGet(history.getChangeQuantity());
+            return history;
+        });
+        // 台帳モードの条件付き更新（UPDATE ... WHERE balance >= ? と同じく確認と減算を不可分に行う）
+        when(pointEntityRepository.deductBalanceIfSufficient(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            AtomicInteger balance = rowBalances.get(invocation.<String>getArgument(0));
+            int points = invocation.getArgument(1);
+            while (true) {
+                int current = balance.get();
+                if (current < points) {
+                    return 0;
+                }
+                if (balance.compareAndSet(current, current - points)) {
+                    return 1;
+                }
+            }
+        });
+        when(pointEntityRepository.findBalanceByUserId(anyString()))
+                .thenAnswer(invocation -> Optional.of(rowBalances.get(invocation.<String>getArgument(0)).get()));
+    }
+
+    @Test
+    void concurrentRedemptionsWithoutBalanceRowNeverOverdraw() throws Exception {
+        assertNoOverdraft(false);
+    }
+
+    @Test
+    void concurrentRedemptionsWithConditionalUpdateNeverOverdraw() throws Exception {
+        assertNoOverdraft(true);
+    }
+
+    @Test
+    void redemptionsForDifferentUsersScaleWithThreads() throws Exception {
+        double singleThreadRate = redemptionsPerSecond(1);
+        double multiThreadRate = redemptionsPerSecond(8);
+
+        // 理想は8倍。CI環境の揺らぎを見込み、3倍を下回った場合のみ直列化されているとみなす
+        assertTrue(multiThreadRate >= singleThreadRate * 3,
+                String.format("8スレッドの利用件数が1スレッドの3倍未満です: 1スレッド=%.0f件/秒 8スレッド=%.0f件/秒",
+                        singleThreadRate, multiThreadRate));
+    }
+
+    /**
+     * スレッドごとに異なるユーザーのポイント利用を実行し、1秒あたりの利用件数を返す。
+     */
+    private double redemptionsPerSecond(int threads) throws Exception {
+        int redemptionsPerThread = 50;
+        historyTotals.clear();
+        for (int t = 0; t < threads; t++) {
+            historyTotals.put("user-" + t, new AtomicInteger(redemptionsPerThread * POINTS_PER_REDEMPTION));
+        }
+        long startedAt = System.nanoTime();
+        int succeeded = runConcurrently(threads, redemptionsPerThread, t -> "user-" + t);
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+        assertEquals(threads * redemptionsPerThread, succeeded);
+        return succeeded / seconds;
+    }
+
+    /**
+     * 1ユーザーの残高を超える回数のポイント利用を同時に実行し、残高の範囲内の件数だけが成功することを検証。
+     */
+    private void assertNoOverdraft(boolean ledgerMode) throws Exception {
+        ReflectionTestUtils.setField(loyaltyService, "ledgerMode", ledgerMode);
+        historyTotals.put("user-1", new AtomicInteger(INITIAL_BALANCE));
+        rowBalances.put("user-1", new AtomicInteger(INITIAL_BALANCE));
+        int threads = 16;
+        int attemptsPerThread = INITIAL_BALANCE / POINTS_PER_REDEMPTION; // 合計で残高の16倍を要求する
+
+        int succeeded = runConcurrently(threads, attemptsPerThread, t -> "user-1");
+
+        assertEquals(INITIAL_BALANCE / POINTS_PER_REDEMPTION, succeeded);
+        assertEquals(0, historyTotals.get("user-1").get(), "利用履歴の合計が残高を超えました");
+        if (ledgerMode) {
+            assertEquals(0, rowBalances.get("user-1").get(), "残高行がマイナスになりました");
+        }
+    }
+
+    /**
+     * 指定したスレッド数で一斉にポイント利用を実行し、成功件数を返す。
+     */
+    private int runConcurrently(int threads, int attemptsPerThread, IntFunction<String> userOfThread)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                String userId = userOfThread.apply(t);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int succeeded = 0;
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (loyaltyService.usePoints(userId, POINTS_PER_REDEMPTION)) {
+                            succeeded++;
+                        }
+                    }
+                    return succeeded;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(60, TimeUnit.SECONDS);
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.loyaltyprogram.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * MappedJournal
+ * メモリマップドファイルによる追記専用のローカルジャーナル。
+ * レコードはページキャッシュ上のマップ領域に書き込まれるため、プロセスが異常終了しても失われません
+ * （OSの停止にも備える場合は追記ごとに force してください）。
+ *
+ * ファイル形式: [世代ID(16バイト)] [長さ(4)][CRC32(4)][本体] ... [0(終端)]
+ * 長さを最後に書き込むため、書き込み途中のレコードは再生時に無視されます。
+ * 世代IDはリセットごとに採番され、ジャーナルの内容をDBへ反映済みかの判定に使用します。
+ */
+public class MappedJournal implements Closeable {
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int TERMINATOR_SIZE = 4;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final boolean syncOnAppend;
+
+    private int position;
+
+    private String generationId;
+
+    /**
+     * ジャーナルファイルを開きます（存在しない場合は作成します）。
+     *
+     * @param path         ジャーナルファイルのパス
+     * @param capacity     ジャーナルの容量（バイト）
+     * @param syncOnAppend 追記ごとにディスクへ同期する場合はtrue
+     * @throws IOException ファイルを開けなかった場合
+     */
+    public MappedJournal(Path path, int capacity, boolean syncOnAppend) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.syncOnAppend = syncOnAppend;
+        long mostSignificantBits = buffer.getLong(0);
+        long leastSignificantBits = buffer.getLong(8);
+        if (mostSignificantBits == 0 && leastSignificantBits == 0) {
+            reset(); // 新規ファイル
+        } else {
+            this.generationId = new UUID(mostSignificantBits, leastSignificantBits).toString();
+            this.position = replay(record -> {
+                // 末尾の位置を求めるために走査のみ行う
+            });
+        }
+    }
+
+    /**
+     * レコードを追記します。
+     *
+     * @param payload レコード本体
+     * @return 追記できた場合はtrue、容量不足の場合はfalse
+     */
+    public synchronized boolean append(byte[] payload) {
+        if (position + RECORD_HEADER_SIZE + payload.length + TERMINATOR_SIZE > buffer.capacity()) {
+            return false;
+        }
+        buffer.putInt(position + RECORD_HEADER_SIZE + payload.length, 0); // 次のレコード位置に終端を書く
+        buffer.put(position + RECORD_HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, payload.length); // 長さを最後に書き、レコードを有効にする
+        position += RECORD_HEADER_SIZE + payload.length;
+        if (syncOnAppend) {
+            buffer.force();
+        }
+        return true;
+    }
+
+    /**
+     * 有効なレコードを先頭から順に読み出します。
+     * 終端、またはCRCが一致しないレコード（書き込み途中）で読み出しを終了します。
+     *
+     * @param consumer レコード本体ごとの処理（読み取り専用のバッファが渡されます）
+     * @return 最後の有効なレコードの直後の位置
+     */
+    public synchronized int replay(Consumer<ByteBuffer> consumer) {
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(offset + RECORD_HEADER_SIZE, length).asReadOnlyBuffer();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            consumer.accept(payload);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    /**
+     * ジャーナルを空にし、新しい世代IDを採番します。
+     * 先にレコードを無効化してから世代IDを書き換えるため、途中で停止しても古いレコードが新しい世代として再生されることはありません。
+     */
+    public synchronized void reset() {
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.force();
+        UUID generation = UUID.randomUUID();
+        buffer.putLong(0, generation.getMostSignificantBits());
+        buffer.putLong(8, generation.getLeastSignificantBits());
+        buffer.force();
+        this.generationId = generation.toString();
+        this.position = HEADER_SIZE;
+    }
+
+    /**
+     * 現在の世代IDを取得。
+     *
+     * @return 世代ID
+     */
+    public synchronized String getGenerationId() {
+        return generationId;
+    }
+
+    /**
+     * レコードが存在しないかを判定。
+     *
+     * @return レコードが存在しない場合はtrue
+     */
+    public synchronized boolean isEmpty() {
+        return position == HEADER_SIZE;
+    }
+
+    /**
+     * マップ領域の内容をディスクへ同期します。
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.ExpirationNotification;
+
+import java.util.List;
+
+/**
+ * NotificationSender
+ * 外部通知サービス（メール・SMSなど）への送信処理を表すインターフェース。
+ * 送信先ごとの実装を差し替えて使用します。
+ */
+public interface NotificationSender {
+
+    /**
+     * 通知をまとめて送信します。
+     *
+     * @param notifications 送信する通知のリスト
+     * @throws RuntimeException 送信に失敗した場合（呼び出し側で再送します）
+     */
+    void sendBatch(List<ExpirationNotification> notifications);
+}
@@ -0,0 +1,174 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.OutboxEventEntity;
+import com.example.loyaltyprogram.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * OutboxDrainer
+ * アウトボックスに登録されたイベントを登録順にまとめて取り出し、配信先へ追記するバッチサービス。
+ * 配信先への追記後に配信済みを記録するため、記録前に停止した場合は同じイベントが再送されます（at-least-once）。
+ * 複数ノードで実行しても、アドバイザリロックによりシャードごとに1ノードだけが取り出します。
+ */
+@Service
+public class OutboxDrainer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxDrainer.class);
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
+
+    /**
+     * 取り出しを1ノードに限定するアドバイザリロックのキー
+     */
+    private static final long DRAIN_LOCK_KEY = 0x4C4F_5554_424F_5801L;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private LoyaltyEventSink loyaltyEventSink;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.events.drain.batch-size:500}")
+    private int batchSize;
+
+    @Value("${loyalty.events.drain.max-batches:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${loyalty.events.retention-days:7}")
+    private int retentionDays;
+
+    /**
+     * IDの欠番を未コミットのイベントとみなして待つ時間（これを過ぎた欠番はロールバックによるものとみなす）
+     */
+    @Value("${loyalty.events.drain.gap-settle-ms:5000}")
+    private long gapSettleMillis;
+
+    /**
+     * シャードごとの、欠番のID（欠番の先頭）と、その欠番を最初に検出した時刻（ミリ秒）。
+     * 取り出すノードが替わった場合は新しいノードで検出し直すため、待ち時間が延びるだけで欠番を早く飛ばすことはありません。
+     */
+    private final Map<String, NavigableMap<Long, Long>> gapFirstSeenByShard = new ConcurrentHashMap<>();
+
+    /**
+     * 未配信のイベントを配信先へ追記（1回の実行でシャードごとに最大 batch-size × max-batches 件）。
+     * 取り出しはアドバイザリロックを取得できたノードだけが行うため、配信順は登録順と一致します。
+     * シャード分割時はシャードごとに取り出します（同一ユーザーのイベントは同じシャードに登録されるため順序は保たれます）。
+     *
+     * @return 配信したイベント件数
+     */
+    @Scheduled(fixedDelayString = "${loyalty.events.drain.interval-ms:1000}")
+    public int drain() {
+        int[] total = new int[1];
+        shardRouter.forEachShard(shard -> total[0] += drainShard(shard));
+        return total[0];
+    }
+
+    private int drainShard(String shard) {
+        NavigableMap<Long, Long> gapFirstSeen = gapFirstSeenByShard.computeIfAbsent(shard, key -> new ConcurrentSkipListMap<>());
+        int total = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            Integer drained = transactionTemplate.execute(status -> drainBatch(gapFirstSeen));
+            if (drained == null || drained == 0) {
+                break;
+            }
+            total += drained;
+            if (drained < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 保持期間を過ぎた配信済みのイベントをアウトボックスから削除。
+     */
+    @Scheduled(cron = "${loyalty.events.purge-cron:0 15 4 * * *}")
+    public void purgePublished() {
+        shardRouter.forEachShard(shard -> {
+            Integer deleted = transactionTemplate.execute(status ->
+                    outboxEventRepository.deletePublishedBefore(LocalDateTime.now().minusDays(retentionDays)));
+            logger.info("配信済みイベントを削除しました: シャード={} {}件", shard, deleted);
+        });
+    }
+
+    /**
+     * 未配信のイベントを1バッチ分取り出して配信先へ追記します。
+     * IDはコミット順ではなく採番順のため、欠番（採番済みで未コミットのイベント）があれば、その手前までで打ち切ります。
+     * 欠番を最初に検出してから gap-settle-ms を過ぎた場合は、欠番をロールバックによるものとみなして配信します。
+     * 欠番の後のイベントの登録日時では判定しません（滞留した後はすべての欠番が一度に古く見えてしまうため）。
+     *
+     * @param gapFirstSeen 取り出すシャードの、欠番を最初に検出した時刻
+     * @return 配信したイベント件数（他のノードが取り出し中の場合は0）
+     */
+    private int drainBatch(NavigableMap<Long, Long> gapFirstSeen) {
+        if (!outboxEventRepository.tryLockForDrain(DRAIN_LOCK_KEY)) {
+            return 0; // 他のノードが取り出し中
+        }
+        List<OutboxEventEntity> rows = outboxEventRepository.findUnpublished(PageRequest.of(0, batchSize));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Long lastId = outboxEventRepository.findLastPublishedId();
+        long now = System.currentTimeMillis();
+        List<LoyaltyEvent> events = new ArrayList<>(rows.size());
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (OutboxEventEntity row : rows) {
+            if (lastId != null && row.getId() != lastId + 1) {
+                long firstSeen = gapFirstSeen.computeIfAbsent(lastId + 1, gapId -> now);
+                if (now - firstSeen < gapSettleMillis) {
+                    break; // 手前のIDのイベントがまだコミットされていない可能性がある
+                }
+            }
+            events.add(new LoyaltyEvent(-1, row.getId(), row.getEventType(), row.getUserId(),
+                    readPayload(row), row.getOccurredAt()));
+            ids.add(row.getId());
+            lastId = row.getId();
+        }
+        if (events.isEmpty()) {
+            return 0;
+        }
+        loyaltyEventSink.append(events);
+        outboxEventRepository.markPublished(ids, LocalDateTime.now());
+        gapFirstSeen.headMap(lastId, true).clear(); // 通過した欠番は追跡しない
+        return events.size();
+    }
+
+    private Map<String, Object> readPayload(OutboxEventEntity row) {
+        try {
+            return objectMapper.readValue(row.getPayload(), PAYLOAD_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("イベント内容を読み込めません: ID=" + row.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * OutboxEventEntity
+ * 下流システムへ配信するロイヤルティイベントを一時的に保持するデータモデル（トランザクショナルアウトボックス）。
+ * イベントは業務データの更新と同一トランザクションで登録し、配信後に配信日時を記録します。
+ */
+@Entity
+@Table(name = "loyalty_outbox",
+        indexes = @Index(name = "idx_loyalty_outbox_unpublished", columnList = "published_at, id"))
+public class OutboxEventEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * イベント識別子（主キー、登録順）
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * イベント種別（PointEarned / PointUsed / PointExpired / StageChanged / BenefitApplied など）
+     */
+    @Column(name = "event_type", nullable = false)
+    private String eventType;
+
+    /**
+     * ユーザーID
+     */
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    /**
+     * イベント内容（JSON）
+     */
+    @Lob
+    @Column(name = "payload", nullable = false)
+    private String payload;
+
+    /**
+     * イベント発生日時
+     */
+    @Column(name = "occurred_at", nullable = false, updatable = false)
+    private LocalDateTime occurredAt;
+
+    /**
+     * 配信日時（未配信の場合はnull）
+     */
+    @Column(name = "published_at")
+    private LocalDateTime publishedAt;
+
+    // --- コンストラクタ ---
+
+    public OutboxEventEntity() {
+    }
+
+    public OutboxEventEntity(String eventType, String userId, String payload) {
+        this.eventType = eventType;
+        this.userId = userId;
+        this.payload = payload;
+        this.occurredAt = LocalDateTime.now();
+    }
+
+    // --- Getter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+}
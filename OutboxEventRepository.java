@@ -0,0 +1,69 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.OutboxEventEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * OutboxEventRepository
+ * ロイヤルティイベントのアウトボックス（loyalty_outboxテーブル）を管理するリポジトリ。
+ */
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+    /**
+     * 未配信のイベントを登録順に取得。
+     *
+     * @param limit 取得件数
+     * @return 未配信のイベントのリスト
+     */
+    @Query("SELECT e FROM OutboxEventEntity e WHERE e.publishedAt IS NULL ORDER BY e.id")
+    List<OutboxEventEntity> findUnpublished(Pageable limit);
+
+    /**
+     * 配信済みのイベントのうち最大のIDを取得。
+     *
+     * @return 最大のイベントID（配信済みのイベントがない場合はnull）
+     */
+    @Query("SELECT MAX(e.id) FROM OutboxEventEntity e WHERE e.publishedAt IS NOT NULL")
+    Long findLastPublishedId();
+
+    /**
+     * アウトボックスの取り出し用のアドバイザリロックを、トランザクションの終了まで取得（PostgreSQL）。
+     * 取得できない場合は待たずにfalseを返します。
+     *
+     * @param key ロックのキー
+     * @return 取得できた場合はtrue
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryLockForDrain(@Param("key") long key);
+
+    /**
+     * イベントを配信済みにします。
+     *
+     * @param ids         イベントIDのリスト
+     * @param publishedAt 配信日時
+     * @return 更新件数
+     */
+    @Modifying
+    @Query("UPDATE OutboxEventEntity e SET e.publishedAt = :publishedAt WHERE e.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+
+    /**
+     * 保持期間を過ぎた配信済みのイベントを削除。
+     *
+     * @param publishedBefore この日時より前に配信されたイベントを削除
+     * @return 削除件数
+     */
+    @Modifying
+    @Query("DELETE FROM OutboxEventEntity e WHERE e.publishedAt < :publishedBefore")
+    int deletePublishedBefore(@Param("publishedBefore") LocalDateTime publishedBefore);
+}
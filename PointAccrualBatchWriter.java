@@ -0,0 +1,131 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.IdempotencyRecordEntity;
+import com.example.loyaltyprogram.model.PointHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PointAccrualBatchWriter
+ * ポイント履歴と残高をJDBCバッチでまとめて書き込むリポジトリ。
+ * IDはDB側で採番させ、INSERT文からIDを除外することで、IDENTITY採番のテーブルでもJDBCバッチを有効にします。
+ * （IDENTITY採番でバッチが無効になるのはHibernate経由の保存の場合のみ）
+ */
+@Repository
+public class PointAccrualBatchWriter {
+
+    private static final String INSERT_HISTORY_SQL =
+            "INSERT INTO point_history (user_id, change_quantity, date, reason) VALUES (?, ?, ?, ?)";
+
+    private static final String UPDATE_BALANCE_SQL =
+            "UPDATE points SET balance = balance + ?, updated_at = ? WHERE user_id = ?";
+
+    private static final String DEDUCT_BALANCE_SQL =
+            "UPDATE points SET balance = balance - ?, updated_at = ? WHERE user_id = ? AND balance >= ?";
+
+    private static final String INSERT_IDEMPOTENCY_KEY_SQL =
+            "INSERT INTO idempotency_keys (operation, idempotency_key, user_id, request_fingerprint, result, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (operation, user_id, idempotency_key) DO NOTHING";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${loyalty.points.batch.jdbc-batch-size:500}")
+    private int jdbcBatchSize;
+
+    /**
+     * ポイント履歴をJDBCバッチで一括登録。
+     *
+     * @param histories 登録するポイント履歴のリスト
+     */
+    public void insertHistories(List<PointHistory> histories) {
+        jdbcTemplate.batchUpdate(INSERT_HISTORY_SQL, histories, jdbcBatchSize, (ps, history) -> {
+            ps.setString(1, history.getUserId());
+            ps.setInt(2, history.getChangeQuantity());
+            ps.setDate(3, Date.valueOf(history.getDate()));
+            ps.setString(4, history.getReason());
+        });
+    }
+
+    /**
+     * ユーザーごとに集計済みの残高差分をJDBCバッチで一括反映（1ユーザーにつき1回の更新）。
+     * 一括付与・ライトビハインドの反映・ジャーナルの反映が同時に実行されても行ロックの取得順が揃うよう、
+     * ユーザーID順に更新します（取得順が異なるとデッドロックになるため）。
+     *
+     * @param deltas    ユーザーIDごとの残高差分
+     * @param updatedAt 最終更新日時
+     */
+    public void applyBalanceDeltas(Map<String, Integer> deltas, LocalDateTime updatedAt) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(deltas.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        Timestamp timestamp = Timestamp.valueOf(updatedAt);
+        jdbcTemplate.batchUpdate(UPDATE_BALANCE_SQL, entries, jdbcBatchSize, (ps, entry) -> {
+            ps.setInt(1, entry.getValue());
+            ps.setTimestamp(2, timestamp);
+            ps.setString(3, entry.getKey());
+        });
+    }
+
+    /**
+     * ポイント利用ごとに、残高が足りる場合のみ残高を減算する条件付き更新をJDBCバッチで実行。
+     * 更新は指定した順に実行されるため、呼び出し側でユーザーID順に並べてください（同一ユーザー内の順序は保たれます）。
+     * 更新件数を利用の可否に使うため、更新件数を返さないバッチの書き換え（SUCCESS_NO_INFO）を行うドライバ設定では使用できません。
+     *
+     * @param redemptions ユーザーIDと利用ポイントの組のリスト
+     * @param updatedAt   最終更新日時
+     * @return 利用ごとの更新件数（1: 減算済み、0: 残高不足または残高行なし）
+     */
+    public int[] deductBalancesIfSufficient(List<Map.Entry<String, Integer>> redemptions, LocalDateTime updatedAt) {
+        Timestamp timestamp = Timestamp.valueOf(updatedAt);
+        int[][] counts = jdbcTemplate.batchUpdate(DEDUCT_BALANCE_SQL, redemptions, jdbcBatchSize, (ps, redemption) -> {
+            ps.setInt(1, redemption.getValue());
+            ps.setTimestamp(2, timestamp);
+            ps.setString(3, redemption.getKey());
+            ps.setInt(4, redemption.getValue());
+        });
+        int[] results = new int[redemptions.size()];
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                results[i++] = count;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 冪等キーをJDBCバッチで一括登録し、登録済みのキーは登録しない（PostgreSQLの ON CONFLICT DO NOTHING）。
+     * 同じバッチ内で重複するキーは最初の1件だけが登録されます。
+     * 登録件数を付与の可否に使うため、更新件数を返さないバッチの書き換え（SUCCESS_NO_INFO）を行うドライバ設定では使用できません。
+     *
+     * @param records 登録する冪等キーのリスト
+     * @return キーごとの登録件数（1: 登録済み、0: 既に登録されていたキー）
+     */
+    public int[] insertIdempotencyKeysIfAbsent(List<IdempotencyRecordEntity> records) {
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_IDEMPOTENCY_KEY_SQL, records, jdbcBatchSize, (ps, record) -> {
+            ps.setString(1, record.getOperation());
+            ps.setString(2, record.getIdempotencyKey());
+            ps.setString(3, record.getUserId());
+            ps.setString(4, record.getRequestFingerprint());
+            ps.setInt(5, record.getResult());
+            ps.setTimestamp(6, Timestamp.valueOf(record.getCreatedAt()));
+        });
+        int[] results = new int[records.size()];
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                results[i++] = count;
+            }
+        }
+        return results;
+    }
+}
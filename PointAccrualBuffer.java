@@ -0,0 +1,448 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ReadYourWritesTracker;
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.model.IdempotencyRecordEntity;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointHistory;
+import com.example.loyaltyprogram.repository.IdempotencyRecordRepository;
+import com.example.loyaltyprogram.repository.PointAccrualBatchWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * PointAccrualBuffer
+ * ポイント付与をユーザーごとに集約してからまとめて書き込むライトビハインドバッファ。
+ * 付与はシャード分割したメモリ上のバッファとローカルジャーナル（メモリマップドファイル）に記録した時点で完了とし、
+ * 一定間隔または一定件数ごとに、ユーザーごとに集約した1件のポイント履歴と1回の残高差分としてDBへ反映します。
+ *
+ * 反映は呼び出し元のトランザクションには参加せず、反映用のスレッドでシャードごとに新しいトランザクションで行います。
+ * ジャーナルは2面を交互に使用し、反映中の面は全シャードのコミット後にリセットします。
+ * 反映時にジャーナルの世代IDを冪等キーとして同一トランザクションで登録するため、
+ * 起動時の再生でコミット済みの世代を二重に反映することはありません。
+ */
+@Component
+public class PointAccrualBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointAccrualBuffer.class);
+
+    private static final String ACCRUAL_REASON = "購入によるポイント付与";
+
+    /**
+     * 世代IDを冪等キーとして登録する際のユーザーID（特定ユーザーに属さない記録）
+     */
+    private static final String SYSTEM_USER_ID = "*";
+
+    @Autowired
+    private PointAccrualBatchWriter pointAccrualBatchWriter;
+
+    @Autowired
+    private HotBalanceStore hotBalanceStore;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * シャードごとの反映用（呼び出し元のトランザクション・シャードの接続を引き継がない）
+     */
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.points.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.points.write-behind.shards:16}")
+    private int shardCount;
+
+    /**
+     * シャードごとの付与件数がこの値に達した時点で、反映周期を待たずに反映します。
+     */
+    @Value("${loyalty.points.write-behind.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${loyalty.points.write-behind.journal-dir:./data/accrual-journal}")
+    private String journalDirectory;
+
+    @Value("${loyalty.points.write-behind.journal-bytes:67108864}")
+    private int journalBytes;
+
+    /**
+     * 追記ごとにジャーナルをディスクへ同期するか（falseの場合もプロセスの異常終了では失われない）
+     */
+    @Value("${loyalty.points.write-behind.sync-on-append:false}")
+    private boolean syncOnAppend;
+
+    private Shard[] shards;
+
+    private final MappedJournal[] journals = new MappedJournal[2];
+
+    private int activeJournal;
+
+    /**
+     * 付与の記録（読み取りロック）と、バッファの取り出し・ジャーナルの切り替え（書き込みロック）を排他する
+     */
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+
+    private final Object flushMonitor = new Object();
+
+    /**
+     * DBへ反映中（未コミット）のユーザーごとの付与ポイント。
+     * シャードごとのトランザクションのコミット直後に、そのシャードのユーザーを取り除きます
+     * （コミット済みの付与をDBの残高と二重に数えないため）。
+     */
+    private volatile Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+
+    private int inFlightJournal;
+
+    private ExecutorService flushExecutor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        Path directory = Paths.get(journalDirectory);
+        Files.createDirectories(directory);
+        for (int i = 0; i < journals.length; i++) {
+            journals[i] = new MappedJournal(directory.resolve("accrual-" + i + ".journal"), journalBytes, syncOnAppend);
+            recover(journals[i]);
+        }
+        flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "point-accrual-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        flush(); // 残っている付与を反映しきる
+        for (MappedJournal journal : journals) {
+            journal.close();
+        }
+    }
+
+    /**
+     * ライトビハインドモードが有効かを判定。
+     *
+     * @return 有効な場合はtrue
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * ポイント付与をジャーナルとバッファに記録します（DBへの反映は待ちません）。
+     *
+     * @param userId ユーザーID
+     * @param points 付与ポイント数
+     * @throws IllegalStateException ジャーナルが満杯で、DBへの反映もできなかった場合
+     */
+    public void append(String userId, int points) {
+        byte[] record = encode(userId, points);
+        if (tryAppend(userId, points, record)) {
+            return;
+        }
+        flushOnFlusherThread(); // ジャーナルが満杯のため、反映して空きを作ってから再度記録する
+        if (!tryAppend(userId, points, record)) {
+            throw new IllegalStateException("ポイント付与のジャーナルが満杯のため、付与を受け付けられません。");
+        }
+    }
+
+    /**
+     * 反映用のスレッドで反映し、完了を待ちます（停止処理中は呼び出し元のスレッドで反映）。
+     */
+    private void flushOnFlusherThread() {
+        if (flushExecutor.isShutdown()) {
+            flush();
+            return;
+        }
+        try {
+            flushExecutor.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("ポイント付与の反映待ちが中断されました。", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("ポイント付与の反映に失敗しました。", e.getCause());
+        }
+    }
+
+    /**
+     * DBへ未反映のポイントを取得（バッファ内と反映中の合計）。
+     *
+     * @param userId ユーザーID
+     * @return 未反映のポイント
+     */
+    public int getPendingPoints(String userId) {
+        if (!enabled) {
+            return 0;
+        }
+        rotationLock.readLock().lock();
+        try {
+            Shard shard = shardFor(userId);
+            int pending;
+            synchronized (shard) {
+                pending = shard.pendingPoints.getOrDefault(userId, 0);
+            }
+            return pending + inFlight.getOrDefault(userId, 0);
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * バッファの内容を定期的にDBへ反映。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.points.write-behind.flush-interval-ms:200}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * バッファの内容をユーザーごとに集約してDBへ反映します。
+     * 前回の反映が失敗している場合は、新しい付与を取り出す前に同じ内容で再試行します。
+     */
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (flushMonitor) {
+            if (inFlight.isEmpty()) {
+                drain();
+            }
+            if (inFlight.isEmpty()) {
+                return;
+            }
+            MappedJournal journal = journals[inFlightJournal];
+            try {
+                commit(new HashMap<>(inFlight), journal.getGenerationId());
+            } catch (DataAccessException e) {
+                // コミット済みのシャードのユーザーは取り除かれており、残りのユーザーだけを再試行する
+                logger.warn("ポイント付与のDB反映に失敗したため、次回の反映で再試行します: 件数={}", inFlight.size(), e);
+                return;
+            }
+            journal.reset();
+        }
+    }
+
+    /**
+     * ジャーナルとバッファに付与を記録。
+     *
+     * @return 記録できた場合はtrue、ジャーナルが満杯の場合はfalse
+     */
+    private boolean tryAppend(String userId, int points, byte[] record) {
+        boolean flushRequired;
+        rotationLock.readLock().lock();
+        try {
+            // 付与の完了を返す前にジャーナルへ記録する
+            if (!journals[activeJournal].append(record)) {
+                return false;
+            }
+            Shard shard = shardFor(userId);
+            synchronized (shard) {
+                shard.pendingPoints.merge(userId, points, Integer::sum);
+                flushRequired = ++shard.entryCount >= maxEntries;
+            }
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+        if (flushRequired && !flushExecutor.isShutdown()) {
+            flushExecutor.execute(this::flush);
+        }
+        return true;
+    }
+
+    /**
+     * 全シャードのバッファを取り出して反映中とし、以降の付与をもう一方のジャーナルに記録するよう切り替えます。
+     * 取り出しと切り替えを同時に行うため、反映中のジャーナルには取り出した付与だけが含まれます。
+     */
+    private void drain() {
+        rotationLock.writeLock().lock();
+        try {
+            Map<String, Integer> drained = new HashMap<>();
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    shard.pendingPoints.forEach((userId, points) -> drained.merge(userId, points, Integer::sum));
+                    shard.pendingPoints.clear();
+                    shard.entryCount = 0;
+                }
+            }
+            if (drained.isEmpty()) {
+                return;
+            }
+            inFlightJournal = activeJournal;
+            activeJournal = 1 - activeJournal; // もう一方は前回の反映成功時にリセット済み
+            inFlight = new ConcurrentHashMap<>(drained);
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * ユーザーごとに集約した付与をシャードごとに1トランザクションでDBへ反映。
+     * ジャーナルの世代IDをシャードごとの冪等キーとして登録し、反映済みのシャードは何もしません。
+     *
+     * @param pointsByUser ユーザーIDごとの付与ポイント
+     * @param generationId ジャーナルの世代ID
+     */
+    private void commit(Map<String, Integer> pointsByUser, String generationId) {
+        shardRouter.forEachShardOf(pointsByUser, (shard, shardPoints) -> commitOnShard(shardPoints, generationId));
+    }
+
+    private void commitOnShard(Map<String, Integer> pointsByUser, String generationId) {
+        String operation = IdempotencyRecordEntity.OPERATION_ACCRUAL_FLUSH;
+        transactionTemplate.executeWithoutResult(status -> {
+            removeFromInFlightAfterCommit(pointsByUser);
+            if (idempotencyRecordRepository.findByOperationAndUserIdAndIdempotencyKey(operation, SYSTEM_USER_ID, generationId).isPresent()) {
+                return; // コミット済みの世代
+            }
+            LocalDate today = LocalDate.now();
+            List<PointHistory> histories = new ArrayList<>(pointsByUser.size());
+            int totalPoints = 0;
+            for (Map.Entry<String, Integer> entry : pointsByUser.entrySet()) {
+                histories.add(new PointHistory(entry.getKey(), entry.getValue(), today, ACCRUAL_REASON));
+                totalPoints += entry.getValue();
+                readYourWritesTracker.recordWrite(entry.getKey()); // 未反映分がレプリカに届くまでプライマリから読む
+                loyaltyEventPublisher.publish(LoyaltyEvent.POINT_EARNED, entry.getKey(),
+                        LoyaltyEventPublisher.payload("points", entry.getValue()));
+            }
+            idempotencyRecordRepository.saveAndFlush(new IdempotencyRecordEntity(operation, generationId, SYSTEM_USER_ID,
+                    IdempotencyRecordEntity.pointsFingerprint(totalPoints), totalPoints));
+            pointAccrualBatchWriter.insertHistories(histories);
+            if (ledgerMode) {
+                pointAccrualBatchWriter.applyBalanceDeltas(pointsByUser, LocalDateTime.now());
+                hotBalanceStore.applyAfterCommit(pointsByUser);
+            }
+        });
+    }
+
+    /**
+     * トランザクションのコミット直後に、反映したユーザーを反映中の付与から取り除きます。
+     * コミットからフラッシュ処理の完了までの間に、DBの残高と反映中の付与が二重に数えられないようにします。
+     *
+     * @param pointsByUser 反映するユーザーIDごとの付与ポイント
+     */
+    private void removeFromInFlightAfterCommit(Map<String, Integer> pointsByUser) {
+        Map<String, Integer> committing = inFlight;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committing.keySet().removeAll(pointsByUser.keySet());
+            }
+        });
+    }
+
+    /**
+     * 起動時にジャーナルを再生し、未反映の付与をDBへ反映してからジャーナルをリセットします。
+     *
+     * @param journal 再生するジャーナル
+     */
+    private void recover(MappedJournal journal) {
+        if (journal.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> pointsByUser = new HashMap<>();
+        journal.replay(record -> {
+            String userId = decodeUserId(record);
+            pointsByUser.merge(userId, record.getInt(), Integer::sum);
+        });
+        logger.info("ポイント付与のジャーナルを再生します: 世代={} ユーザー数={}", journal.getGenerationId(), pointsByUser.size());
+        if (!pointsByUser.isEmpty()) {
+            commit(pointsByUser, journal.getGenerationId());
+        }
+        journal.reset();
+    }
+
+    /**
+     * 付与をジャーナルのレコードに変換。
+     * 形式: [ユーザーIDの長さ(2)][ユーザーID(UTF-8)][付与ポイント(4)][記録日時(8)]
+     */
+    private byte[] encode(String userId, int points) {
+        byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(2 + userIdBytes.length + 4 + 8)
+                .putShort((short) userIdBytes.length)
+                .put(userIdBytes)
+                .putInt(points)
+                .putLong(System.currentTimeMillis())
+                .array();
+    }
+
+    /**
+     * ジャーナルのレコードからユーザーIDを読み出し、バッファの位置を付与ポイントの先頭に進めます。
+     */
+    private String decodeUserId(ByteBuffer record) {
+        byte[] userIdBytes = new byte[record.getShort()];
+        record.get(userIdBytes);
+        return new String(userIdBytes, StandardCharsets.UTF_8);
+    }
+
+    private Shard shardFor(String userId) {
+        return shards[Math.floorMod(userId.hashCode(), shards.length)];
+    }
+
+    /**
+     * ユーザーIDで分割したバッファの1区画（区画ごとにロックする）。
+     */
+    private static class Shard {
+
+        private final Map<String, Integer> pendingPoints = new HashMap<>();
+
+        private int entryCount;
+    }
+}
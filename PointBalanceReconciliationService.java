@@ -0,0 +1,99 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.model.PointEntity;
+import com.example.loyaltyprogram.repository.PointEntityRepository;
+import com.example.loyaltyprogram.repository.PointHistoryQueryRepository;
+import com.example.loyaltyprogram.repository.PointEntityRepository.PointBalanceDrift;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * PointBalanceReconciliationService
+ * ポイント残高（pointsテーブル）とポイント履歴の合計を照合するバッチサービス。
+ * 台帳モードで残高を直接更新している場合に、履歴とのずれを検出・補正します。
+ */
+@Service
+public class PointBalanceReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointBalanceReconciliationService.class);
+
+    @Autowired
+    private PointEntityRepository pointEntityRepository;
+
+    @Autowired
+    private PointHistoryQueryRepository pointHistoryQueryRepository;
+
+    @Autowired
+    private HotBalanceStore hotBalanceStore;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.points.reconciliation.repair:false}")
+    private boolean repairEnabled;
+
+    /**
+     * 残高と履歴合計のずれを検出し、設定に応じて履歴合計で残高を補正（シャード分割時はシャードごとに照合）。
+     *
+     * @return 検出されたずれのリスト
+     */
+    @Scheduled(cron = "${loyalty.points.reconciliation.cron:0 30 3 * * *}")
+    public List<PointBalanceDrift> reconcile() {
+        if (!ledgerMode) {
+            return Collections.emptyList(); // 台帳モードでなければ照合不要
+        }
+        List<PointBalanceDrift> drifts = new ArrayList<>();
+        shardRouter.forEachShard(shard -> drifts.addAll(transactionTemplate.execute(status -> reconcileShard())));
+        return drifts;
+    }
+
+    private List<PointBalanceDrift> reconcileShard() {
+        List<PointBalanceDrift> drifts = pointEntityRepository.findBalanceDrifts();
+        for (PointBalanceDrift drift : drifts) {
+            logger.warn("ポイント残高のずれを検出: ユーザーID={} 残高={} 履歴合計={}",
+                    drift.getUserId(), drift.getBalance(), drift.getHistoryTotal());
+            if (repairEnabled) {
+                repairBalance(drift.getUserId());
+            }
+        }
+        return drifts;
+    }
+
+    /**
+     * 残高行をロックしてから履歴の合計を読み直し、残高を補正（トランザクション内で呼び出す）。
+     * 検出時点の値で上書きすると、検出後にコミットされた付与・利用が失われるため、ロック後の値を使用します。
+     *
+     * @param userId ユーザーID
+     */
+    private void repairBalance(String userId) {
+        Optional<PointEntity> locked = pointEntityRepository.findForUpdateByUserId(userId);
+        if (locked.isEmpty()) {
+            return; // 検出後に残高行が削除された
+        }
+        int currentBalance = locked.get().getBalance();
+        int historyTotal = (int) pointHistoryQueryRepository.sumPointsByUserId(userId);
+        if (historyTotal == currentBalance) {
+            return; // 検出後のコミットでずれが解消された
+        }
+        pointEntityRepository.overwriteBalance(userId, historyTotal, LocalDateTime.now());
+        hotBalanceStore.applyAfterCommit(userId, historyTotal - currentBalance);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.loyaltyprogram.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * PointBalanceRecord
+ * ポイント残高（pointsテーブル）の1行を表すR2DBC用のデータモデル（reactiveプロファイル用）。
+ *
+ * @param id        残高ID
+ * @param userId    ユーザーID
+ * @param balance   ポイント残高
+ * @param updatedAt 最終更新日時
+ */
+@Table("points")
+public record PointBalanceRecord(
+        @Id Long id,
+        @Column("user_id") String userId,
+        @Column("balance") int balance,
+        @Column("updated_at") LocalDateTime updatedAt) {
+}
@@ -0,0 +1,132 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.PointEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * PointEntityRepository
+ * ポイント残高（pointsテーブル）を管理するリポジトリ。
+ * 残高をポイント履歴の合計から都度算出せず、ユーザーごとの1行で参照・更新するために使用します。
+ * ユーザー情報・ポイント履歴との関連は遅延読み込みのため、参照は必要な列だけを取得するクエリ（スカラー値・プロジェクション）で行い、
+ * 関連を結合しません。関連をたどる処理を追加する場合は、その検索メソッドに @EntityGraph を指定してください。
+ */
+@Repository
+public interface PointEntityRepository extends JpaRepository<PointEntity, Long> {
+
+    /**
+     * ユーザーIDで現在のポイント残高を取得。
+     *
+     * @param userId ユーザーID
+     * @return ポイント残高（残高行が存在しない場合は空）
+     */
+    @Query("SELECT p.balance FROM PointEntity p WHERE p.user.id = :userId")
+    Optional<Integer> findBalanceByUserId(@Param("userId") String userId);
+
+    /**
+     * 全ユーザーのポイント残高を1行ずつ取得（インメモリ残高ストアの初期読み込み用）。
+     *
+     * @return ユーザーごとのポイント残高のストリーム（呼び出し側でクローズすること）
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.user.id AS userId, p.balance AS balance FROM PointEntity p")
+    Stream<PointBalanceRow> streamAllBalances();
+
+    /**
+     * ポイント残高に差分を加算し、最終更新日時を更新。
+     *
+     * @param userId    ユーザーID
+     * @param delta     加算するポイント数（使用時は負数）
+     * @param updatedAt 最終更新日時
+     * @return 更新件数（残高行が存在しない場合は0）
+     */
+    @Modifying
+    @Query("UPDATE PointEntity p SET p.balance = p.balance + :delta, p.updatedAt = :updatedAt WHERE p.user.id = :userId")
+    int addToBalance(@Param("userId") String userId, @Param("delta") int delta, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * ポイント残高が足りている場合のみ残高を減算（条件付き更新）。
+     * 残高の確認と減算を1文で行うため、同一ユーザーへの同時利用でも残高がマイナスになりません。
+     *
+     * @param userId    ユーザーID
+     * @param points    使用するポイント数
+     * @param updatedAt 最終更新日時
+     * @return 更新件数（残高不足または残高行が存在しない場合は0）
+     */
+    @Modifying
+    @Query("UPDATE PointEntity p SET p.balance = p.balance - :points, p.updatedAt = :updatedAt " +
+            "WHERE p.user.id = :userId AND p.balance >= :points")
+    int deductBalanceIfSufficient(@Param("userId") String userId, @Param("points") int points, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * ユーザーIDでポイント残高行を更新ロック付きで取得（照合ジョブによる補正用）。
+     * ロック取得後に履歴の合計を読み直すことで、照合中にコミットされた付与・利用を上書きしません。
+     *
+     * @param userId ユーザーID
+     * @return ポイント情報（残高行が存在しない場合は空）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM PointEntity p WHERE p.user.id = :userId")
+    Optional<PointEntity> findForUpdateByUserId(@Param("userId") String userId);
+
+    /**
+     * ポイント残高を指定値で上書き（照合ジョブによる補正用）。
+     *
+     * @param userId    ユーザーID
+     * @param balance   補正後のポイント残高
+     * @param updatedAt 最終更新日時
+     * @return 更新件数
+     */
+    @Modifying
+    @Query("UPDATE PointEntity p SET p.balance = :balance, p.updatedAt = :updatedAt WHERE p.user.id = :userId")
+    int overwriteBalance(@Param("userId") String userId, @Param("balance") int balance, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * ポイント残高とポイント履歴の合計が一致しないユーザーを検出。
+     *
+     * @return 残高のずれがあるユーザーのリスト
+     */
+    @Query("SELECT p.user.id AS userId, p.balance AS balance, " +
+            "(SELECT COALESCE(SUM(h.changeQuantity), 0) FROM PointHistory h WHERE h.userId = p.user.id) AS historyTotal " +
+            "FROM PointEntity p " +
+            "WHERE p.balance <> (SELECT COALESCE(SUM(h2.changeQuantity), 0) FROM PointHistory h2 WHERE h2.userId = p.user.id)")
+    List<PointBalanceDrift> findBalanceDrifts();
+
+    /**
+     * ポイント残高のプロジェクション。
+     */
+    interface PointBalanceRow {
+
+        String getUserId();
+
+        int getBalance();
+    }
+
+    /**
+     * 残高照合結果のプロジェクション。
+     */
+    interface PointBalanceDrift {
+
+        String getUserId();
+
+        int getBalance();
+
+        long getHistoryTotal();
+    }
+}
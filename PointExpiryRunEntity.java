@@ -0,0 +1,103 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * PointExpiryRunEntity
+ * ポイント失効処理の進捗を失効日ごとに記録するデータモデル。
+ * 処理済みの最終ユーザーIDを記録するため、中断後の再実行では続きから処理します。
+ */
+@Entity
+@Table(name = "point_expiry_runs")
+public class PointExpiryRunEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * 失効日（主キー）
+     */
+    @Id
+    @Column(name = "expiry_date", nullable = false)
+    private LocalDate expiryDate;
+
+    /**
+     * 処理済みの最終ユーザーID
+     */
+    @Column(name = "last_user_id", nullable = false)
+    private String lastUserId;
+
+    /**
+     * 失効させたポイントの合計
+     */
+    @Column(name = "expired_points", nullable = false)
+    private long expiredPoints;
+
+    /**
+     * 失効日分の処理が完了したか
+     */
+    @Column(name = "completed", nullable = false)
+    private boolean completed;
+
+    /**
+     * 進捗の最終更新日時
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // --- コンストラクタ ---
+
+    public PointExpiryRunEntity() {
+    }
+
+    public PointExpiryRunEntity(LocalDate expiryDate) {
+        this.expiryDate = expiryDate;
+        this.lastUserId = "";
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // --- Getter ---
+
+    public LocalDate getExpiryDate() {
+        return expiryDate;
+    }
+
+    public String getLastUserId() {
+        return lastUserId;
+    }
+
+    public long getExpiredPoints() {
+        return expiredPoints;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // --- ヘルパーメソッド ---
+
+    /**
+     * 処理済みのユーザー範囲と失効ポイントを記録します。
+     *
+     * @param lastUserId    処理済みの最終ユーザーID
+     * @param expiredPoints 今回失効させたポイント数
+     */
+    public void recordProgress(String lastUserId, long expiredPoints) {
+        this.lastUserId = lastUserId;
+        this.expiredPoints += expiredPoints;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * 失効日分の処理を完了にします。
+     */
+    public void markCompleted() {
+        this.completed = true;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
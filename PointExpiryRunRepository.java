@@ -0,0 +1,38 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.PointExpiryRunEntity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * PointExpiryRunRepository
+ * ポイント失効処理の進捗を管理するリポジトリ。
+ */
+@Repository
+public interface PointExpiryRunRepository extends JpaRepository<PointExpiryRunEntity, LocalDate> {
+
+    /**
+     * 処理が完了した最新の失効日を取得。
+     *
+     * @return 最新の失効日（未実行の場合はnull）
+     */
+    @Query("SELECT MAX(r.expiryDate) FROM PointExpiryRunEntity r WHERE r.completed = true")
+    LocalDate findLatestCompletedExpiryDate();
+
+    /**
+     * 失効日の進捗を更新ロックを取得して読み込み（複数ノードの失効処理を直列化する）。
+     *
+     * @param expiryDate 失効日
+     * @return 進捗（存在しない場合は空）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM PointExpiryRunEntity r WHERE r.expiryDate = :expiryDate")
+    Optional<PointExpiryRunEntity> findForUpdate(@Param("expiryDate") LocalDate expiryDate);
+}
@@ -0,0 +1,296 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointExpiryRunEntity;
+import com.example.loyaltyprogram.model.PointHistory;
+import com.example.loyaltyprogram.repository.ExpiringPointsSummary;
+import com.example.loyaltyprogram.repository.GrantDebitTotal;
+import com.example.loyaltyprogram.repository.PointAccrualBatchWriter;
+import com.example.loyaltyprogram.repository.PointExpiryRunRepository;
+import com.example.loyaltyprogram.repository.PointHistoryQueryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * PointExpirySweepService
+ * 全会員のポイント有効期限を一括で処理する夜間バッチ。
+ * ユーザーごとの問い合わせは行わず、付与日の範囲でポイント履歴を1回走査して対象ユーザーと
+ * 対象ポイントを集計し、期限間近の通知と期限切れポイントの失効（マイナスの履歴登録）をまとめて行います。
+ * 付与ポイントの有効期限は付与日から loyalty.points.validity-days 日後とします。
+ * ポイントは先に付与されたものから順に消費される（先入れ先出し）ものとし、失効・通知の対象ポイントは
+ * 「期限を迎える日までの付与ポイントの合計 − 利用・失効済みポイントの合計」（0未満は0）で算出します。
+ * 全ノードで実行されるため、失効の書き込みは失効日ごとの進捗行を更新ロックして直列化し、
+ * 他のノードが処理済みのユーザーは失効させません。
+ */
+@Service
+public class PointExpirySweepService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointExpirySweepService.class);
+
+    /**
+     * 1トランザクションで失効処理するユーザー数
+     */
+    private static final int EXPIRY_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private PointHistoryQueryRepository pointHistoryQueryRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private PointAccrualBatchWriter pointAccrualBatchWriter;
+
+    @Autowired
+    private HotBalanceStore hotBalanceStore;
+
+    @Autowired
+    private PointExpiryRunRepository pointExpiryRunRepository;
+
+    @Autowired
+    private ExpirationNotificationDispatcher expirationNotificationDispatcher;
+
+    @Autowired
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.points.validity-days:365}")
+    private int validityDays;
+
+    @Value("${loyalty.points.expiry.notice-days:30}")
+    private int noticeDays;
+
+    /**
+     * 夜間バッチとして失効処理と期限間近の通知を実行（シャード分割時はシャードごとに実行）。
+     */
+    @Scheduled(cron = "${loyalty.points.expiry.cron:0 0 2 * * *}")
+    public void runNightly() {
+        LocalDate today = LocalDate.now();
+        shardRouter.forEachShard(shard -> {
+            expirePoints(today);
+            notifyUpcomingExpirations(today);
+        });
+    }
+
+    /**
+     * 有効期限が指定日数以内に到来するポイントを持つユーザーへ通知（ポイント履歴を1回走査）。
+     * 期間内に付与されたポイントのうち、利用・失効で消費済みの分は通知の対象としません。
+     *
+     * @param today 基準日
+     * @return 通知を受け付けたユーザー数
+     */
+    public int notifyUpcomingExpirations(LocalDate today) {
+        LocalDate fromGrantDate = today.minusDays(validityDays);
+        LocalDate toGrantDate = fromGrantDate.plusDays(noticeDays);
+        int[] counts = new int[2]; // [0]: 受付件数, [1]: 受付拒否件数
+        readOnlyTransaction().executeWithoutResult(status -> {
+            List<ExpiringPointsSummary> chunk = new ArrayList<>(EXPIRY_CHUNK_SIZE);
+            try (Stream<ExpiringPointsSummary> summaries = pointHistoryQueryRepository.streamGrantsBetween(fromGrantDate, toGrantDate)) {
+                summaries.forEach(summary -> {
+                    chunk.add(summary);
+                    if (chunk.size() >= EXPIRY_CHUNK_SIZE) {
+                        enqueueNotices(chunk, toGrantDate, counts);
+                        chunk.clear();
+                    }
+                });
+            }
+            if (!chunk.isEmpty()) {
+                enqueueNotices(chunk, toGrantDate, counts);
+            }
+        });
+        if (counts[1] > 0) {
+            logger.warn("送信キューが満杯のため受け付けられなかった有効期限通知があります: 件数={}", counts[1]);
+        }
+        return counts[0];
+    }
+
+    /**
+     * 期限間近のポイントが消費されずに残っているユーザーへの通知を送信キューに登録します。
+     *
+     * @param chunk         期間内にポイントを付与したユーザーごとの集計結果
+     * @param grantedBefore 通知対象とする付与日の上限（含まない）
+     * @param counts        受付件数・受付拒否件数の集計先
+     */
+    private void enqueueNotices(List<ExpiringPointsSummary> chunk, LocalDate grantedBefore, int[] counts) {
+        Map<String, Long> expiringPoints = findUnconsumedPoints(chunk, grantedBefore);
+        for (ExpiringPointsSummary summary : chunk) {
+            long points = expiringPoints.getOrDefault(summary.getUserId(), 0L);
+            if (points <= 0) {
+                continue; // 期限間近のポイントは使用済み
+            }
+            LocalDate expiresOn = summary.getEarliestGrantDate().plusDays(validityDays);
+            String message = points + "ポイントの有効期限（" + expiresOn + "から順次）が近づいています。確認してください。";
+            counts[expirationNotificationDispatcher.enqueue(summary.getUserId(), message) ? 0 : 1]++;
+        }
+    }
+
+    /**
+     * 指定日より前に付与したポイントのうち、利用・失効で消費されずに残っているポイント数をユーザーごとに取得。
+     *
+     * @param chunk         対象ユーザーごとの集計結果
+     * @param grantedBefore 付与日の上限（含まない）
+     * @return ユーザーIDごとの未消費のポイント数
+     */
+    private Map<String, Long> findUnconsumedPoints(List<ExpiringPointsSummary> chunk, LocalDate grantedBefore) {
+        List<String> userIds = new ArrayList<>(chunk.size());
+        for (ExpiringPointsSummary summary : chunk) {
+            userIds.add(summary.getUserId());
+        }
+        Map<String, Long> unconsumedByUser = new HashMap<>();
+        for (GrantDebitTotal total : pointHistoryQueryRepository.sumGrantsAndDebitsByUserIds(userIds, grantedBefore)) {
+            unconsumedByUser.put(total.getUserId(), total.getUnconsumedPoints());
+        }
+        return unconsumedByUser;
+    }
+
+    /**
+     * 前回の処理以降に有効期限を迎えたポイントを失効させます。
+     * 失効日ごとに進捗を記録するため、中断後の再実行や実行漏れの日も続きから処理します。
+     *
+     * @param today 基準日（前日までに期限を迎えたポイントが対象）
+     * @return 失効させたポイントの合計
+     */
+    public long expirePoints(LocalDate today) {
+        LocalDate latestCompleted = pointExpiryRunRepository.findLatestCompletedExpiryDate();
+        LocalDate expiryDate = (latestCompleted == null) ? today.minusDays(1) : latestCompleted.plusDays(1);
+        long expiredPoints = 0;
+        for (; expiryDate.isBefore(today); expiryDate = expiryDate.plusDays(1)) {
+            expiredPoints += expireGrantsOf(expiryDate);
+        }
+        return expiredPoints;
+    }
+
+    /**
+     * 指定の失効日に有効期限を迎えたポイントを失効させます。
+     *
+     * @param expiryDate 失効日
+     * @return 失効させたポイントの合計
+     */
+    private long expireGrantsOf(LocalDate expiryDate) {
+        PointExpiryRunEntity run = findOrCreateRun(expiryDate);
+        if (run.isCompleted()) {
+            return 0;
+        }
+        LocalDate grantDate = expiryDate.minusDays(validityDays);
+        long[] expiredPoints = new long[1];
+        readOnlyTransaction().executeWithoutResult(status -> {
+            List<ExpiringPointsSummary> chunk = new ArrayList<>(EXPIRY_CHUNK_SIZE);
+            try (Stream<ExpiringPointsSummary> summaries = pointHistoryQueryRepository.streamGrantsOn(grantDate, run.getLastUserId())) {
+                summaries.forEach(summary -> {
+                    chunk.add(summary);
+                    if (chunk.size() >= EXPIRY_CHUNK_SIZE) {
+                        expiredPoints[0] += writeExpiryChunk(expiryDate, chunk);
+                        chunk.clear();
+                    }
+                });
+            }
+            if (!chunk.isEmpty()) {
+                expiredPoints[0] += writeExpiryChunk(expiryDate, chunk);
+            }
+        });
+        newTransaction().executeWithoutResult(status -> pointExpiryRunRepository.findById(expiryDate)
+                .ifPresent(completedRun -> {
+                    completedRun.markCompleted();
+                    pointExpiryRunRepository.save(completedRun);
+                }));
+        logger.info("ポイント失効処理が完了しました: 失効日={} 失効ポイント={}", expiryDate, expiredPoints[0]);
+        return expiredPoints[0];
+    }
+
+    /**
+     * 失効日の進捗を取得し、存在しない場合は登録します（他のノードと同時に登録した場合は登録済みの行を使用）。
+     */
+    private PointExpiryRunEntity findOrCreateRun(LocalDate expiryDate) {
+        return pointExpiryRunRepository.findById(expiryDate).orElseGet(() -> {
+            try {
+                return newTransaction().execute(status -> pointExpiryRunRepository.saveAndFlush(new PointExpiryRunEntity(expiryDate)));
+            } catch (DataIntegrityViolationException e) {
+                return pointExpiryRunRepository.findById(expiryDate).orElseThrow(() -> e);
+            }
+        });
+    }
+
+    /**
+     * 失効対象のユーザーをまとめて失効させ、失効イベントと進捗を同一トランザクションで記録します。
+     * 失効ポイントは、期限を迎えた日までの付与ポイントから利用・失効済みのポイントを差し引いた残りとします。
+     * 進捗行を更新ロックしてから、他のノードが処理済みのユーザー（進捗の最終ユーザーID以前）を除いて失効させます。
+     *
+     * @param expiryDate 失効日
+     * @param candidates 失効対象のユーザーごとの集計結果（ユーザーID順）
+     * @return 失効させたポイントの合計
+     */
+    private long writeExpiryChunk(LocalDate expiryDate, List<ExpiringPointsSummary> candidates) {
+        Long expired = newTransaction().execute(status -> {
+            PointExpiryRunEntity run = pointExpiryRunRepository.findForUpdate(expiryDate).orElseThrow();
+            List<ExpiringPointsSummary> chunk = new ArrayList<>(candidates.size());
+            for (ExpiringPointsSummary summary : candidates) {
+                if (!run.isCompleted() && summary.getUserId().compareTo(run.getLastUserId()) > 0) {
+                    chunk.add(summary);
+                }
+            }
+            if (chunk.isEmpty()) {
+                return 0L; // 他のノードが処理済み
+            }
+            // 失効日に期限を迎えるのは、付与日が (失効日 - 有効日数) 以前のポイント
+            LocalDate grantedBefore = expiryDate.minusDays(validityDays).plusDays(1);
+            Map<String, Long> expiringPoints = findUnconsumedPoints(chunk, grantedBefore);
+            List<PointHistory> expirations = new ArrayList<>();
+            Map<String, Integer> balanceDeltas = new HashMap<>();
+            long total = 0;
+            for (ExpiringPointsSummary summary : chunk) {
+                int points = expiringPoints.getOrDefault(summary.getUserId(), 0L).intValue();
+                if (points <= 0) {
+                    continue; // 失効対象のポイントは既に使用済み
+                }
+                expirations.add(new PointHistory(summary.getUserId(), -points, expiryDate, "ポイント有効期限切れ"));
+                balanceDeltas.put(summary.getUserId(), -points);
+                loyaltyEventPublisher.publish(LoyaltyEvent.POINT_EXPIRED, summary.getUserId(),
+                        LoyaltyEventPublisher.payload("points", points, "expiryDate", expiryDate.toString()));
+                total += points;
+            }
+            pointAccrualBatchWriter.insertHistories(expirations);
+            if (ledgerMode) {
+                pointAccrualBatchWriter.applyBalanceDeltas(balanceDeltas, LocalDateTime.now());
+                hotBalanceStore.applyAfterCommit(balanceDeltas);
+            }
+            run.recordProgress(chunk.get(chunk.size() - 1).getUserId(), total);
+            pointExpiryRunRepository.save(run);
+            return total;
+        });
+        return expired == null ? 0 : expired;
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.loyaltyprogram.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * PointHistoryCursor
+ * ポイント履歴のキーセットページングで使用するカーソル（前ページ最終行の日時とID）。
+ * 次ページ先頭行の時点のポイント残高も保持し、ページごとに残高を再集計せずに累計を表示します。
+ * 画面やAPIには「日時:ID:残高」形式の文字列として受け渡します。
+ */
+public class PointHistoryCursor {
+
+    // --- フィールド定義 ---
+
+    /**
+     * 前ページ最終行の日時
+     */
+    private final LocalDate date;
+
+    /**
+     * 前ページ最終行のID
+     */
+    private final Long id;
+
+    /**
+     * 次ページ先頭行の時点のポイント残高（不明な場合はnull）
+     */
+    private final Integer balance;
+
+    // --- コンストラクタ ---
+
+    public PointHistoryCursor(LocalDate date, Long id, Integer balance) {
+        this.date = date;
+        this.id = id;
+        this.balance = balance;
+    }
+
+    // --- Getter ---
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Integer getBalance() {
+        return balance;
+    }
+
+    // --- ヘルパーメソッド ---
+
+    /**
+     * カーソルを文字列に変換します。
+     *
+     * @return 「日時:ID:残高」形式の文字列（残高が不明な場合は「日時:ID」）
+     */
+    public String encode() {
+        return (balance == null) ? date + ":" + id : date + ":" + id + ":" + balance;
+    }
+
+    /**
+     * 文字列からカーソルを復元します。
+     * 未指定または形式不正の場合はnull（先頭ページ）として扱います。
+     *
+     * @param value 「日時:ID:残高」または「日時:ID」形式の文字列
+     * @return カーソル（先頭ページの場合はnull）
+     */
+    public static PointHistoryCursor parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String[] parts = value.split(":");
+        if (parts.length != 2 && parts.length != 3) {
+            return null;
+        }
+        try {
+            Integer balance = (parts.length == 3) ? Integer.valueOf(parts[2]) : null;
+            return new PointHistoryCursor(LocalDate.parse(parts[0]), Long.valueOf(parts[1]), balance);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.loyaltyprogram.model;
+
+import java.util.List;
+
+/**
+ * PointHistoryPage
+ * ポイント履歴の1ページ分の結果と、次ページ取得用のカーソル。
+ */
+public class PointHistoryPage {
+
+    // --- フィールド定義 ---
+
+    /**
+     * ページ内のポイント履歴（新しい順、各時点の残高付き）
+     */
+    private final List<PointHistoryRow> items;
+
+    /**
+     * 次ページ取得用のカーソル（最終ページの場合はnull）
+     */
+    private final String nextCursor;
+
+    // --- コンストラクタ ---
+
+    public PointHistoryPage(List<PointHistoryRow> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // --- Getter ---
+
+    public List<PointHistoryRow> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.PointHistory;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * PointHistoryQueryRepository
+ * ポイント履歴をページ単位・ストリームで取得するためのリポジトリ。
+ * (日時, ID) の降順によるキーセットページングを行うため、
+ * point_history に (user_id, date, id) の複合インデックスを作成してください。
+ */
+@Repository
+public interface PointHistoryQueryRepository extends JpaRepository<PointHistory, Long> {
+
+    /**
+     * ユーザーのポイント履歴の先頭ページを取得。
+     *
+     * @param userId   ユーザーID
+     * @param pageable 取得件数（先頭ページ指定）
+     * @return 新しい順のポイント履歴
+     */
+    @Query("SELECT h FROM PointHistory h WHERE h.userId = :userId ORDER BY h.date DESC, h.id DESC")
+    List<PointHistory> findFirstPage(@Param("userId") String userId, Pageable pageable);
+
+    /**
+     * 指定した (日時, ID) より古いポイント履歴を取得（キーセットページング）。
+     *
+     * @param userId   ユーザーID
+     * @param date     前ページ最終行の日時
+     * @param id       前ページ最終行のID
+     * @param pageable 取得件数（先頭ページ指定）
+     * @return 新しい順のポイント履歴
+     */
+    @Query("SELECT h FROM PointHistory h WHERE h.userId = :userId " +
+            "AND (h.date < :date OR (h.date = :date AND h.id < :id)) " +
+            "ORDER BY h.date DESC, h.id DESC")
+    List<PointHistory> findPageAfter(@Param("userId") String userId, @Param("date") LocalDate date,
+                                     @Param("id") Long id, Pageable pageable);
+
+    /**
+     * ユーザーのポイント履歴を新しい順にストリームで取得。
+     * 呼び出し側はトランザクション内でストリームを消費し、利用後にクローズしてください。
+     *
+     * @param userId ユーザーID
+     * @return ポイント履歴のストリーム
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT h FROM PointHistory h WHERE h.userId = :userId ORDER BY h.date DESC, h.id DESC")
+    Stream<PointHistory> streamByUserId(@Param("userId") String userId);
+
+    /**
+     * 付与日が指定範囲内のポイントを、ユーザーごとに集計してストリームで取得（全会員を1回で走査）。
+     * 付与日の古い順（有効期限の近い順）に返します。
+     *
+     * @param fromDate 付与日の範囲開始（含む）
+     * @param toDate   付与日の範囲終了（含まない）
+     * @return ユーザーごとの集計結果のストリーム
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT h.userId AS userId, SUM(h.changeQuantity) AS points, MIN(h.date) AS earliestGrantDate " +
+            "FROM PointHistory h WHERE h.changeQuantity > 0 AND h.date >= :fromDate AND h.date < :toDate " +
+            "GROUP BY h.userId ORDER BY MIN(h.date), h.userId")
+    Stream<ExpiringPointsSummary> streamGrantsBetween(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    /**
+     * 指定日に付与されたポイントを、ユーザーID順にユーザーごとに集計してストリームで取得。
+     *
+     * @param grantDate   付与日
+     * @param afterUserId このユーザーIDより後のユーザーのみ取得（中断後の再開用）
+     * @return ユーザーごとの集計結果のストリーム
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT h.userId AS userId, SUM(h.changeQuantity) AS points, MIN(h.date) AS earliestGrantDate " +
+            "FROM PointHistory h WHERE h.changeQuantity > 0 AND h.date = :grantDate AND h.userId > :afterUserId " +
+            "GROUP BY h.userId ORDER BY h.userId")
+    Stream<ExpiringPointsSummary> streamGrantsOn(@Param("grantDate") LocalDate grantDate, @Param("afterUserId") String afterUserId);
+
+    /**
+     * 複数ユーザーについて、指定日より前に付与したポイントの合計と、利用・失効で減算したポイントの合計を1回のクエリで取得。
+     * 減算は付与日によらず全件を対象とします（先に付与されたポイントから順に消費されるため）。
+     *
+     * @param userIds       ユーザーIDのリスト
+     * @param grantedBefore 付与日の上限（含まない）
+     * @return ユーザーごとの付与・減算ポイントの合計
+     */
+    @Query("SELECT h.userId AS userId, " +
+            "COALESCE(SUM(CASE WHEN h.changeQuantity > 0 AND h.date < :grantedBefore THEN h.changeQuantity ELSE 0 END), 0) AS grantedPoints, " +
+            "COALESCE(SUM(CASE WHEN h.changeQuantity < 0 THEN -h.changeQuantity ELSE 0 END), 0) AS debitedPoints " +
+            "FROM PointHistory h WHERE h.userId IN :userIds GROUP BY h.userId")
+    List<GrantDebitTotal> sumGrantsAndDebitsByUserIds(@Param("userIds") Collection<String> userIds,
+                                                      @Param("grantedBefore") LocalDate grantedBefore);
+
+    /**
+     * ユーザーのポイント履歴の合計を取得。
+     *
+     * @param userId ユーザーID
+     * @return ポイント履歴の合計
+     */
+    @Query("SELECT COALESCE(SUM(h.changeQuantity), 0) FROM PointHistory h WHERE h.userId = :userId")
+    long sumPointsByUserId(@Param("userId") String userId);
+
+    /**
+     * 指定した履歴IDより後のポイント履歴を集計（スナップショット以降の差分）。
+     *
+     * @param userId  ユーザーID
+     * @param afterId スナップショットで集約済みの最後の履歴ID
+     * @return 差分の合計・件数・最後の履歴ID
+     */
+    @Query("SELECT COALESCE(SUM(h.changeQuantity), 0) AS totalPoints, COUNT(h) AS entryCount, MAX(h.id) AS lastHistoryId " +
+            "FROM PointHistory h WHERE h.userId = :userId AND h.id > :afterId")
+    PointHistoryTail summarizeTail(@Param("userId") String userId, @Param("afterId") long afterId);
+
+    /**
+     * 指定した履歴IDの範囲のポイント履歴を、日時によらずすべて集計（スナップショット作成用）。
+     *
+     * @param userId  ユーザーID
+     * @param afterId スナップショットで集約済みの最後の履歴ID（含まない）
+     * @param upToId  集約する最後の履歴ID（含む）
+     * @return 差分の合計・件数・最後の履歴ID
+     */
+    @Query("SELECT COALESCE(SUM(h.changeQuantity), 0) AS totalPoints, COUNT(h) AS entryCount, MAX(h.id) AS lastHistoryId " +
+            "FROM PointHistory h WHERE h.userId = :userId AND h.id > :afterId AND h.id <= :upToId")
+    PointHistoryTail summarizeTailUpTo(@Param("userId") String userId, @Param("afterId") long afterId,
+                                       @Param("upToId") long upToId);
+
+    /**
+     * 指定した (日時, ID) 以降（同じ行を含む）のポイント履歴の合計を取得（表示順で前にある行の合計）。
+     *
+     * @param userId ユーザーID
+     * @param date   基準行の日時
+     * @param id     基準行のID
+     * @return ポイント履歴の合計
+     */
+    @Query("SELECT COALESCE(SUM(h.changeQuantity), 0) FROM PointHistory h WHERE h.userId = :userId " +
+            "AND (h.date > :date OR (h.date = :date AND h.id >= :id))")
+    long sumPointsNotOlderThan(@Param("userId") String userId, @Param("date") LocalDate date, @Param("id") Long id);
+}
@@ -0,0 +1,26 @@
+package com.example.loyaltyprogram.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDate;
+
+/**
+ * PointHistoryRecord
+ * ポイント履歴（point_historyテーブル）の1行を表すR2DBC用のデータモデル（reactiveプロファイル用）。
+ *
+ * @param id             履歴ID（登録前はnull）
+ * @param userId         ユーザーID
+ * @param changeQuantity ポイントの増減数（利用時は負数）
+ * @param date           付与・利用日
+ * @param reason         増減の理由
+ */
+@Table("point_history")
+public record PointHistoryRecord(
+        @Id Long id,
+        @Column("user_id") String userId,
+        @Column("change_quantity") int changeQuantity,
+        @Column("date") LocalDate date,
+        @Column("reason") String reason) {
+}
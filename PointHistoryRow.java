@@ -0,0 +1,69 @@
+package com.example.loyaltyprogram.model;
+
+import java.time.LocalDate;
+
+/**
+ * PointHistoryRow
+ * ポイント履歴画面の1行分の表示データ（履歴と、その時点のポイント残高）。
+ */
+public class PointHistoryRow {
+
+    // --- フィールド定義 ---
+
+    /**
+     * ポイント履歴ID
+     */
+    private final Long id;
+
+    /**
+     * 日時
+     */
+    private final LocalDate date;
+
+    /**
+     * ポイント変動量
+     */
+    private final int changeQuantity;
+
+    /**
+     * 理由
+     */
+    private final String reason;
+
+    /**
+     * この履歴を反映した時点のポイント残高
+     */
+    private final int balance;
+
+    // --- コンストラクタ ---
+
+    public PointHistoryRow(PointHistory history, int balance) {
+        this.id = history.getId();
+        this.date = history.getDate();
+        this.changeQuantity = history.getChangeQuantity();
+        this.reason = history.getReason();
+        this.balance = balance;
+    }
+
+    // --- Getter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getChangeQuantity() {
+        return changeQuantity;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public int getBalance() {
+        return balance;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.loyaltyprogram.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * PointHistorySettlementQuery
+ * スナップショットに集約できる（コミットが確定した）ポイント履歴の範囲を求めるリポジトリ。
+ * 履歴IDはコミット順ではなく、業務上の日付（date）も期限切れの履歴などで過去日付になるため、
+ * 確定の判定には行の登録日時（point_history.created_at）を使用します。
+ * created_at はアプリケーションから設定せず、DB側の既定値で登録時刻を記録してください
+ * （PostgreSQL: {@code created_at TIMESTAMP NOT NULL DEFAULT clock_timestamp()}）。
+ */
+@Repository
+public class PointHistorySettlementQuery {
+
+    private static final String FIND_LAST_SETTLED_ID_SQL =
+            "SELECT MAX(id) FROM point_history WHERE user_id = ? AND id > ? AND created_at < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 指定日時より前に登録されたポイント履歴のうち、最大の履歴IDを取得。
+     * 履歴IDは採番順に増えるため、指定日時が実行中のトランザクションの最長時間より十分前であれば、
+     * このID以下の履歴はすべてコミット（またはロールバック）済みです。
+     *
+     * @param userId        ユーザーID
+     * @param afterId       スナップショットで集約済みの最後の履歴ID
+     * @param settledBefore 登録日時の上限（含まない）
+     * @return 最大の履歴ID（該当する履歴がない場合はnull）
+     */
+    public Long findLastSettledHistoryId(String userId, long afterId, LocalDateTime settledBefore) {
+        return jdbcTemplate.queryForObject(FIND_LAST_SETTLED_ID_SQL, Long.class,
+                userId, afterId, Timestamp.valueOf(settledBefore));
+    }
+}
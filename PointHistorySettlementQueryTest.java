@@ -0,0 +1,78 @@
+package com.example.loyaltyprogram.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * PointHistorySettlementQueryTest
+ * スナップショットの集約範囲が、業務上の日付ではなく登録日時で決まることを検証するテスト。
+ * 期限切れの履歴のように過去日付で登録された直後の行は、集約範囲に含めてはいけません
+ * （その行より小さいIDの履歴がまだコミットされていない可能性があるため）。
+ */
+class PointHistorySettlementQueryTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private PointHistorySettlementQuery pointHistorySettlementQuery;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("point-history-settlement")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE point_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64), "
+                + "change_quantity INT, date DATE, reason VARCHAR(64), created_at TIMESTAMP)");
+        pointHistorySettlementQuery = new PointHistorySettlementQuery();
+        ReflectionTestUtils.setField(pointHistorySettlementQuery, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void backdatedRecentRowIsNotSettled() {
+        LocalDateTime now = LocalDateTime.now();
+        long settledId = insert("user-1", 100, LocalDate.now().minusDays(10), now.minusHours(1));
+        // 期限切れの履歴は失効日の日付で登録されるが、登録されたのは今
+        insert("user-1", -40, LocalDate.now().minusDays(30), now);
+
+        Long upToId = pointHistorySettlementQuery.findLastSettledHistoryId("user-1", 0, now.minusMinutes(10));
+
+        assertEquals(settledId, upToId, "過去日付で登録された直後の履歴が集約範囲に含まれました");
+    }
+
+    @Test
+    void noSettledRowReturnsNull() {
+        LocalDateTime now = LocalDateTime.now();
+        insert("user-1", 100, LocalDate.now().minusDays(10), now);
+
+        assertNull(pointHistorySettlementQuery.findLastSettledHistoryId("user-1", 0, now.minusMinutes(10)));
+    }
+
+    private long insert(String userId, int changeQuantity, LocalDate date, LocalDateTime createdAt) {
+        jdbcTemplate.update("INSERT INTO point_history (user_id, change_quantity, date, reason, created_at) "
+                        + "VALUES (?, ?, ?, 'test', ?)",
+                userId, changeQuantity, Date.valueOf(date), Timestamp.valueOf(createdAt));
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM point_history", Long.class);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.loyaltyprogram.repository;
+
+/**
+ * PointHistoryTail
+ * スナップショット以降のポイント履歴の集計結果のプロジェクション。
+ */
+public interface PointHistoryTail {
+
+    long getTotalPoints();
+
+    long getEntryCount();
+
+    Long getLastHistoryId();
+}
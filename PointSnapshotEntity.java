@@ -0,0 +1,94 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * PointSnapshotEntity
+ * ユーザーごとのポイント残高のスナップショットを管理するデータモデル。
+ * ポイント履歴（追記のみのイベントログ）のうち、履歴ID（シーケンス）N までを集約した残高とステージを保持し、
+ * 現在の残高は「最新のスナップショット + N より後の履歴の合計」で算出します。
+ */
+@Entity
+@Table(name = "point_snapshots",
+        indexes = @Index(name = "idx_point_snapshots_user_sequence", columnList = "user_id, last_history_id"))
+public class PointSnapshotEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * スナップショット識別子（主キー）
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * ユーザーID
+     */
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    /**
+     * 集約済みの最後のポイント履歴ID（シーケンス）
+     */
+    @Column(name = "last_history_id", nullable = false)
+    private long lastHistoryId;
+
+    /**
+     * 集約時点のポイント残高
+     */
+    @Column(name = "balance", nullable = false)
+    private int balance;
+
+    /**
+     * 集約時点のステージ名
+     */
+    @Column(name = "stage_name", nullable = false)
+    private String stageName;
+
+    /**
+     * スナップショット作成日時
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // --- コンストラクタ ---
+
+    public PointSnapshotEntity() {
+    }
+
+    public PointSnapshotEntity(String userId, long lastHistoryId, int balance, String stageName) {
+        this.userId = userId;
+        this.lastHistoryId = lastHistoryId;
+        this.balance = balance;
+        this.stageName = stageName;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // --- Getter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public long getLastHistoryId() {
+        return lastHistoryId;
+    }
+
+    public int getBalance() {
+        return balance;
+    }
+
+    public String getStageName() {
+        return stageName;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
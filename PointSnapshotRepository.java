@@ -0,0 +1,23 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.PointSnapshotEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * PointSnapshotRepository
+ * ポイント残高のスナップショット（point_snapshotsテーブル）を管理するリポジトリ。
+ */
+@Repository
+public interface PointSnapshotRepository extends JpaRepository<PointSnapshotEntity, Long> {
+
+    /**
+     * ユーザーの最新のスナップショットを取得。
+     *
+     * @param userId ユーザーID
+     * @return 最新のスナップショット（未作成の場合は空）
+     */
+    Optional<PointSnapshotEntity> findFirstByUserIdOrderByLastHistoryIdDesc(String userId);
+}
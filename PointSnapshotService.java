@@ -0,0 +1,110 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.PointSnapshotEntity;
+import com.example.loyaltyprogram.repository.PointHistoryQueryRepository;
+import com.example.loyaltyprogram.repository.PointHistorySettlementQuery;
+import com.example.loyaltyprogram.repository.PointHistoryTail;
+import com.example.loyaltyprogram.repository.PointSnapshotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * PointSnapshotService
+ * ポイント履歴をイベントログとして扱い、スナップショットから残高を算出するサービス。
+ * 残高は「最新のスナップショット + それ以降の履歴の合計」で求めるため、
+ * 会員歴の長さ（履歴件数）によらず集計対象はスナップショット以降の差分に限られます。
+ * 差分が一定件数を超えた時点で新しいスナップショットを作成します。
+ */
+@Service
+public class PointSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointSnapshotService.class);
+
+    @Autowired
+    private PointSnapshotRepository pointSnapshotRepository;
+
+    @Autowired
+    private PointHistoryQueryRepository pointHistoryQueryRepository;
+
+    @Autowired
+    private PointHistorySettlementQuery pointHistorySettlementQuery;
+
+    @Autowired
+    private StageThresholdRegistry stageThresholdRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * スナップショットを作成する差分の件数
+     */
+    @Value("${loyalty.points.snapshot.interval:100}")
+    private int snapshotInterval;
+
+    /**
+     * スナップショットに含める履歴の猶予時間。
+     * この時間より前に登録された履歴のうち最大の履歴IDを集約範囲の上限とし、コミット待ちの履歴を取りこぼさないようにします。
+     * 判定には業務上の日付ではなく登録日時を使うため、過去日付で登録された履歴があっても範囲は広がりません。
+     * トランザクションの最長時間（タイムアウト）より十分長く設定してください。
+     * 集約範囲は履歴IDのみで区切り、上限以下の履歴はすべて集約します
+     * （以降の差分は履歴IDで読むため、除外した履歴があると残高から漏れてしまう）。
+     */
+    @Value("${loyalty.points.snapshot.settle-lag:PT10M}")
+    private Duration settleLag;
+
+    /**
+     * ユーザーの現在のポイント残高を、最新のスナップショットと以降の差分から算出。
+     *
+     * @param userId ユーザーID
+     * @return 現在のポイント残高
+     */
+    public int calculateBalance(String userId) {
+        Optional<PointSnapshotEntity> snapshot = pointSnapshotRepository.findFirstByUserIdOrderByLastHistoryIdDesc(userId);
+        long afterId = snapshot.map(PointSnapshotEntity::getLastHistoryId).orElse(0L);
+        int baseBalance = snapshot.map(PointSnapshotEntity::getBalance).orElse(0);
+        PointHistoryTail tail = pointHistoryQueryRepository.summarizeTail(userId, afterId);
+        if (tail.getEntryCount() >= snapshotInterval) {
+            takeSnapshot(userId, afterId, baseBalance);
+        }
+        return baseBalance + (int) tail.getTotalPoints();
+    }
+
+    /**
+     * 確定した差分を集約して新しいスナップショットを作成します。
+     * 参照処理から呼ばれるため別トランザクションで作成し、失敗しても残高の算出には影響させません。
+     *
+     * @param userId      ユーザーID
+     * @param afterId     現在のスナップショットで集約済みの最後の履歴ID
+     * @param baseBalance 現在のスナップショットの残高
+     */
+    private void takeSnapshot(String userId, long afterId, int baseBalance) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            template.executeWithoutResult(status -> {
+                Long upToId = pointHistorySettlementQuery.findLastSettledHistoryId(
+                        userId, afterId, LocalDateTime.now().minus(settleLag));
+                if (upToId == null) {
+                    return; // 集約できる確定済みの履歴がない
+                }
+                PointHistoryTail settled = pointHistoryQueryRepository.summarizeTailUpTo(userId, afterId, upToId);
+                int balance = baseBalance + (int) settled.getTotalPoints();
+                pointSnapshotRepository.save(new PointSnapshotEntity(
+                        userId, upToId, balance, stageThresholdRegistry.resolveStage(balance)));
+            });
+        } catch (DataAccessException e) {
+            logger.warn("ポイント残高のスナップショット作成に失敗しました: ユーザーID={}", userId, e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.loyaltyprogram.model;
+
+/**
+ * Purchase
+ * ポイント一括付与の入力となる購入情報（POSからの日次ファイルの1行に相当）。
+ */
+public class Purchase {
+
+    // --- フィールド定義 ---
+
+    /**
+     * ユーザーID
+     */
+    private final String userId;
+
+    /**
+     * 購入金額
+     */
+    private final double amount;
+
+    /**
+     * 冪等キー（未指定の場合はnull。同じキーの購入は一度だけ付与する）
+     */
+    private final String idempotencyKey;
+
+    // --- コンストラクタ ---
+
+    public Purchase(String userId, double amount) {
+        this(userId, amount, null);
+    }
+
+    public Purchase(String userId, double amount, String idempotencyKey) {
+        this.userId = userId;
+        this.amount = amount;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    // --- Getter ---
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.loyaltyprogram.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * RateLimited
+ * ユーザー単位の流量制限の対象とする更新系エンドポイントを示すアノテーション
+ * （全体の同時実行数による負荷制限は、このアノテーションによらず全てのエンドポイントに適用される）。
+ * ユーザーIDはリクエストパラメータ userId から取得します。
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    /**
+     * 流量制限のエンドポイント名（ユーザーIDと組み合わせてバケットを識別する）
+     */
+    String value();
+}
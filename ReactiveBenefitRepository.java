@@ -0,0 +1,69 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.BenefitRecord;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * ReactiveBenefitRepository
+ * 特典（benefitsテーブル）と特典の適用記録（benefit_applicationsテーブル）を扱うR2DBCリポジトリ（reactiveプロファイル用）。
+ */
+@Repository
+@Profile("reactive")
+public interface ReactiveBenefitRepository extends ReactiveCrudRepository<BenefitRecord, Long> {
+
+    /**
+     * 指定日時に有効な特典を有効期限の早い順に取得。
+     *
+     * @param now 判定日時
+     * @return 特典のストリーム
+     */
+    @Query("SELECT * FROM benefits WHERE valid_from < :now AND valid_until > :now ORDER BY valid_until")
+    Flux<BenefitRecord> findActive(@Param("now") LocalDateTime now);
+
+    /**
+     * ユーザーのステージに紐づく、指定日時に有効な特典を有効期限の早い順に取得。
+     *
+     * @param userId ユーザーID
+     * @param now    判定日時
+     * @return 特典のストリーム
+     */
+    @Query("SELECT b.* FROM benefits b JOIN stages s ON s.id = b.stage_id " +
+            "WHERE s.user_id = :userId AND b.valid_from < :now AND b.valid_until > :now ORDER BY b.valid_until")
+    Flux<BenefitRecord> findActiveByUserId(@Param("userId") String userId, @Param("now") LocalDateTime now);
+
+    /**
+     * ユーザーのステージに紐づき、指定日時に有効な特典を取得（特典の適用可否の判定用）。
+     *
+     * @param benefitId 特典ID
+     * @param userId    ユーザーID
+     * @param now       判定日時
+     * @return 特典（適用対象でない場合は空）
+     */
+    @Query("SELECT b.* FROM benefits b JOIN stages s ON s.id = b.stage_id " +
+            "WHERE b.id = :benefitId AND s.user_id = :userId AND b.valid_from < :now AND b.valid_until > :now")
+    Mono<BenefitRecord> findEligible(@Param("benefitId") Long benefitId, @Param("userId") String userId,
+                                     @Param("now") LocalDateTime now);
+
+    /**
+     * 特典の適用を記録（適用済みの場合は何もしない）。
+     *
+     * @param benefitId 特典ID
+     * @param userId    ユーザーID
+     * @param appliedAt 適用日時
+     * @return 登録件数（適用済みの場合は0）
+     */
+    @Modifying
+    @Query("INSERT INTO benefit_applications (benefit_id, user_id, applied_at) VALUES (:benefitId, :userId, :appliedAt) " +
+            "ON CONFLICT (benefit_id, user_id) DO NOTHING")
+    Mono<Integer> insertApplicationIfAbsent(@Param("benefitId") Long benefitId, @Param("userId") String userId,
+                                            @Param("appliedAt") LocalDateTime appliedAt);
+}
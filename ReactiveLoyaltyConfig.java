@@ -0,0 +1,42 @@
+package com.example.loyaltyprogram.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+/**
+ * ReactiveLoyaltyConfig
+ * ノンブロッキングAPI（reactiveプロファイル）の設定クラス。
+ * reactiveプロファイルでは spring.main.web-application-type=reactive と spring.r2dbc.url を設定し、
+ * WebFluxのコントローラー（ReactiveLoyaltyController）とR2DBCでリクエストを処理します。
+ * 夜間バッチや配信処理は引き続きJPAで動作するため、JPAとR2DBCのトランザクションマネージャーを両方登録します
+ * （自動設定ではどちらか一方しか登録されないため）。
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveLoyaltyConfig {
+
+    @Bean
+    @Primary
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    public ReactiveTransactionManager reactiveTransactionManager(ConnectionFactory connectionFactory) {
+        return new R2dbcTransactionManager(connectionFactory);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(ReactiveTransactionManager reactiveTransactionManager) {
+        return TransactionalOperator.create(reactiveTransactionManager);
+    }
+}
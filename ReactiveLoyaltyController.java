@@ -0,0 +1,204 @@
+package com.example.loyaltyprogram.controller;
+
+import com.example.loyaltyprogram.model.BenefitRecord;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointHistoryRecord;
+import com.example.loyaltyprogram.model.StageRecord;
+import com.example.loyaltyprogram.service.LoyaltyEventSink;
+import com.example.loyaltyprogram.service.ReactiveLoyaltyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ReactiveLoyaltyController
+ * ロイヤルティプログラムの機能をノンブロッキングに提供するコントローラークラス（reactiveプロファイル用）。
+ * LoyaltyController と同じURLで、画面の代わりにJSONを返します。
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/loyalty")
+public class ReactiveLoyaltyController {
+
+    /**
+     * イベントストリームの1回あたりの最大取得件数
+     */
+    private static final int MAX_EVENTS_PER_READ = 1000;
+
+    @Autowired
+    private ReactiveLoyaltyService reactiveLoyaltyService;
+
+    @Autowired
+    private LoyaltyEventSink loyaltyEventSink;
+
+    /**
+     * ポイント履歴を新しい順に返却するエンドポイント。
+     * GET /loyalty/points/history
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return ポイント履歴（JSON配列）
+     */
+    @GetMapping("/points/history")
+    public Flux<PointHistoryRecord> getPointsHistory(@RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.getPointHistory(userId);
+    }
+
+    /**
+     * ポイント履歴の全件をJSON Lines形式でストリーム返却するエンドポイント。
+     * GET /loyalty/points/history/stream
+     * クライアントの受信速度に合わせてDBから読み出すため、履歴件数によらずメモリ使用量は一定です。
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return ポイント履歴のストリーム（1行1件のJSON）
+     */
+    @GetMapping(value = "/points/history/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PointHistoryRecord> streamPointsHistory(@RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.getPointHistory(userId);
+    }
+
+    /**
+     * 利用可能なポイント残高を返却するエンドポイント。
+     * GET /loyalty/points/use
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return ポイント残高
+     */
+    @GetMapping("/points/use")
+    public Mono<Map<String, Object>> getPointUsage(@RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.getAvailablePoints(userId)
+                .map(availablePoints -> Map.of("userId", userId, "availablePoints", availablePoints));
+    }
+
+    /**
+     * 購入金額に基づいてポイントを付与するエンドポイント。
+     * POST /loyalty/points/earn
+     * Idempotency-Key ヘッダーを指定した再送では、ポイントを再度付与せず初回の付与ポイント数を返します。
+     *
+     * @param userId         ユーザーID（クエリパラメータ）
+     * @param amount         購入金額（クエリパラメータ）
+     * @param idempotencyKey 冪等キー（リクエストヘッダー、任意）
+     * @return 処理結果の文字列（付与ポイント数）
+     */
+    @PostMapping("/points/earn")
+    public Mono<ResponseEntity<String>> addPoints(@RequestParam("userId") String userId, @RequestParam("amount") double amount,
+                                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (!Double.isFinite(amount) || amount <= 0) {
+            return Mono.just(ResponseEntity.badRequest().body("購入金額が不正です: " + amount));
+        }
+        return reactiveLoyaltyService.addPoints(userId, amount, idempotencyKey)
+                .map(pointsEarned -> ResponseEntity.ok(pointsEarned + "ポイントを付与しました。"));
+    }
+
+    /**
+     * ポイントを利用して割引を実行するエンドポイント。
+     * POST /loyalty/points/use
+     * Idempotency-Key ヘッダーを指定した再送では、ポイントを再度利用せず初回の処理結果を返します。
+     *
+     * @param userId         ユーザーID（クエリパラメータ）
+     * @param points         使用するポイント数（クエリパラメータ）
+     * @param idempotencyKey 冪等キー（リクエストヘッダー、任意）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @PostMapping("/points/use")
+    public Mono<String> usePoints(@RequestParam("userId") String userId, @RequestParam("points") int points,
+                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return reactiveLoyaltyService.usePoints(userId, points, idempotencyKey)
+                .map(isUsed -> isUsed
+                        ? "ポイントが正常に使用されました。"
+                        : "ポイントの使用に失敗しました。ポイントが不足しています。");
+    }
+
+    /**
+     * ユーザーの現在のステージを返却するエンドポイント。
+     * GET /loyalty/stage/check
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return ステージ情報（存在しない場合は404）
+     */
+    @GetMapping("/stage/check")
+    public Mono<ResponseEntity<StageRecord>> checkStage(@RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.getStageDetails(userId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * ステージを更新（アップまたはダウン）するエンドポイント。
+     * GET /loyalty/stage/update
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return 処理結果の文字列（新しいステージ名）
+     */
+    @GetMapping("/stage/update")
+    public Mono<String> updateStage(@RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.updateStage(userId)
+                .defaultIfEmpty("ステージ情報が見つかりません。");
+    }
+
+    /**
+     * ロイヤルティメンバーの特典を返却するエンドポイント。
+     * GET /loyalty/benefits
+     * ユーザーIDを指定した場合は、そのユーザーのステージで利用できる有効な特典のみを返却します。
+     *
+     * @param userId ユーザーID（クエリパラメータ、省略時は有効な特典全件）
+     * @return 特典（JSON配列）
+     */
+    @GetMapping("/benefits")
+    public Flux<BenefitRecord> getBenefits(@RequestParam(value = "userId", required = false) String userId) {
+        return (userId == null)
+                ? reactiveLoyaltyService.getAvailableBenefits()
+                : reactiveLoyaltyService.getBenefitsForUser(userId);
+    }
+
+    /**
+     * 特定の特典を適用するエンドポイント。
+     * POST /loyalty/benefits/apply/{benefitId}
+     *
+     * @param benefitId 適用する特典ID（パスパラメータ）
+     * @param userId    ユーザーID（クエリパラメータ）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @PostMapping("/benefits/apply/{benefitId}")
+    public Mono<String> applyBenefit(@PathVariable("benefitId") Long benefitId, @RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.applyBenefit(userId, benefitId)
+                .map(isApplied -> isApplied ? "特典を正常に適用しました。" : "特典の適用に失敗しました。");
+    }
+
+    /**
+     * ロイヤルティイベントを指定したオフセットから取得するエンドポイント（下流システム向け）。
+     * GET /loyalty/events
+     *
+     * @param offset 読み出しを開始するオフセット（クエリパラメータ、省略時は先頭から）
+     * @param limit  最大取得件数（クエリパラメータ、上限1000件）
+     * @return イベントのリスト（オフセット順）
+     */
+    @GetMapping("/events")
+    public Mono<List<LoyaltyEvent>> readEvents(@RequestParam(value = "offset", defaultValue = "0") long offset,
+                                               @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        // ファイル保存のイベントストリームはファイルを読むため、イベントループ外で読み出す
+        return Mono.fromCallable(() -> loyaltyEventSink.readFrom(offset, Math.max(1, Math.min(limit, MAX_EVENTS_PER_READ))))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * ポイントの有効期限を通知するエンドポイント。
+     * POST /loyalty/notify
+     * 通知は送信キューに登録され、外部通知サービスへの送信完了を待たずに応答します。
+     *
+     * @param userId ユーザーID（クエリパラメータ）
+     * @return 処理結果の文字列（成功/失敗）
+     */
+    @PostMapping("/notify")
+    public Mono<String> notifyExpiration(@RequestParam("userId") String userId) {
+        return reactiveLoyaltyService.notifyExpiration(userId)
+                .map(isNotified -> isNotified ? "有効期限通知の送信を受け付けました。" : "通知の送信に失敗しました。");
+    }
+}
@@ -0,0 +1,476 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.BenefitRecord;
+import com.example.loyaltyprogram.model.IdempotencyRecordEntity;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointHistoryRecord;
+import com.example.loyaltyprogram.model.StageRecord;
+import com.example.loyaltyprogram.repository.ReactiveBenefitRepository;
+import com.example.loyaltyprogram.repository.ReactivePointBalanceRepository;
+import com.example.loyaltyprogram.repository.ReactivePointHistoryRepository;
+import com.example.loyaltyprogram.repository.ReactiveStageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * ReactiveLoyaltyService
+ * LoyaltyService と同じ業務ルールをノンブロッキングに提供するサービスクラス（reactiveプロファイル用）。
+ * DBアクセスはR2DBCで行うため、DBの応答待ちの間もリクエスト処理のスレッドを占有しません。
+ * 更新はR2DBCのトランザクション内で行い、ロイヤルティイベントも同じトランザクションでアウトボックスに登録します。
+ * ライトビハインド・ジャーナル・インメモリ残高ストア・シャード分割・レプリカ振り分けには対応していません。
+ * 台帳モードでインメモリ残高ストアを有効にした構成では、ここでの更新がストアに反映されないため起動時にエラーとします。
+ * シャード分割（全シャードの更新が既定のDBに向かう）やポイント利用のジャーナル（ジャーナル未反映の利用を残高に含めない）
+ * との併用も、残高が不整合になるため起動時にエラーとします。
+ */
+@Service
+@Profile("reactive")
+public class ReactiveLoyaltyService {
+
+    private static final String ACCRUAL_REASON = "購入によるポイント付与";
+
+    private static final String USAGE_REASON = "ポイント使用";
+
+    @Autowired
+    private ReactivePointHistoryRepository pointHistoryRepository;
+
+    @Autowired
+    private ReactivePointBalanceRepository pointBalanceRepository;
+
+    @Autowired
+    private ReactiveStageRepository stageRepository;
+
+    @Autowired
+    private ReactiveBenefitRepository benefitRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private StageThresholdRegistry stageThresholdRegistry;
+
+    @Autowired
+    private ExpirationNotificationDispatcher expirationNotificationDispatcher;
+
+    @Autowired
+    private LoyaltyMetrics loyaltyMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.points.hot-store.enabled:false}")
+    private boolean hotStoreEnabled;
+
+    @Value("${loyalty.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    @Value("${loyalty.points.redemption-journal.enabled:false}")
+    private boolean redemptionJournalEnabled;
+
+    @Value("${loyalty.points.validity-days:365}")
+    private int validityDays;
+
+    @Value("${loyalty.events.enabled:true}")
+    private boolean eventsEnabled;
+
+    /**
+     * ポイント履歴の読み出しでDBへ一度に要求する件数
+     */
+    @Value("${loyalty.reactive.history-prefetch:256}")
+    private int historyPrefetch;
+
+    @PostConstruct
+    public void validateConfiguration() {
+        if (ledgerMode && hotStoreEnabled) {
+            throw new IllegalStateException(
+                    "reactiveプロファイルでは、台帳モードのインメモリ残高ストア（loyalty.points.hot-store.enabled）は有効にできません。");
+        }
+        if (shardingEnabled) {
+            throw new IllegalStateException(
+                    "reactiveプロファイルでは、シャード分割（loyalty.sharding.enabled）は有効にできません。");
+        }
+        if (redemptionJournalEnabled) {
+            throw new IllegalStateException(
+                    "reactiveプロファイルでは、ポイント利用のジャーナル（loyalty.points.redemption-journal.enabled）は有効にできません。");
+        }
+    }
+
+    /**
+     * ユーザーのポイント残高を取得。
+     *
+     * @param userId ユーザーID
+     * @return 現在のポイント残高
+     */
+    public Mono<Integer> getAvailablePoints(String userId) {
+        Mono<Integer> historyTotal = Mono.defer(() -> pointHistoryRepository.sumByUserId(userId).map(Long::intValue));
+        if (ledgerMode) {
+            return pointBalanceRepository.findBalanceByUserId(userId).switchIfEmpty(historyTotal);
+        }
+        return historyTotal;
+    }
+
+    /**
+     * 購入金額に基づいてポイントを付与します。
+     *
+     * @param userId ユーザーID
+     * @param amount 購入金額
+     * @return 付与されたポイント数
+     */
+    public Mono<Integer> addPoints(String userId, double amount) {
+        return addPoints(userId, amount, null);
+    }
+
+    /**
+     * 冪等キーを指定して、購入金額に基づいてポイントを付与します。
+     * 同じ冪等キーで再送された場合はポイントを付与せず、初回に付与したポイント数を返します。
+     * 冪等キーはユーザーごとに管理し、初回と異なる購入金額での再利用は IdempotencyKeyMismatchException で拒否します。
+     *
+     * @param userId         ユーザーID
+     * @param amount         購入金額
+     * @param idempotencyKey 冪等キー（未指定の場合はnull）
+     * @return 付与されたポイント数（再送の場合は初回の付与ポイント数）
+     */
+    public Mono<Integer> addPoints(String userId, double amount, String idempotencyKey) {
+        int pointsEarned = (int) (amount * 0.1); // 購入金額の10%をポイントとして付与
+        String key = (idempotencyKey == null || idempotencyKey.isBlank()) ? null : idempotencyKey;
+        Mono<Void> accrual = reserveAccrualKey(userId, amount, pointsEarned, key)
+                .then(pointHistoryRepository
+                        .save(new PointHistoryRecord(null, userId, pointsEarned, LocalDate.now(), ACCRUAL_REASON)))
+                .then(applyBalanceDelta(userId, pointsEarned))
+                .then(publishEvent(LoyaltyEvent.POINT_EARNED, userId,
+                        LoyaltyEventPublisher.payload("points", pointsEarned, "amount", amount)));
+        Mono<Integer> earned = transactionalOperator.transactional(accrual)
+                .doOnSuccess(done -> loyaltyMetrics.recordPointsEarned(pointsEarned))
+                .thenReturn(pointsEarned);
+        if (key == null) {
+            return earned;
+        }
+        // 一意制約で重複を検出した場合は、先に処理されたリクエストの結果を返す
+        return findAccrualResult(userId, amount, key)
+                .switchIfEmpty(earned.onErrorResume(DataIntegrityViolationException.class,
+                        e -> findAccrualResult(userId, amount, key).switchIfEmpty(Mono.error(e))));
+    }
+
+    /**
+     * ポイントを利用して割引を適用。
+     * 冪等キーを指定した再送では、ポイントを再度利用せず初回の処理結果を返します。
+     * 冪等キーはユーザーごとに管理し、初回と異なるポイント数での再利用は IdempotencyKeyMismatchException で拒否します。
+     *
+     * @param userId         ユーザーID
+     * @param points         使用するポイント数
+     * @param idempotencyKey 冪等キー（未指定の場合はnull）
+     * @return ポイント利用成功ならtrue、失敗ならfalse（ポイント残高不足など）
+     */
+    public Mono<Boolean> usePoints(String userId, int points, String idempotencyKey) {
+        if (points <= 0) {
+            loyaltyMetrics.recordRedemptionRejected("invalid_amount");
+            return Mono.just(false); // 使用ポイント数が不正
+        }
+        String key = (idempotencyKey == null || idempotencyKey.isBlank()) ? null : idempotencyKey;
+        Mono<Boolean> redemption = transactionalOperator.transactional(
+                reserveRedemptionKey(userId, points, key)
+                        .then(Mono.defer(() -> redeem(userId, points)))
+                        .flatMap(redeemed -> completeRedemptionKey(userId, key, redeemed).thenReturn(redeemed)))
+                .doOnNext(redeemed -> {
+                    if (redeemed) {
+                        loyaltyMetrics.recordPointsRedeemed(points);
+                    } else {
+                        loyaltyMetrics.recordRedemptionRejected("insufficient_balance");
+                    }
+                });
+        if (key == null) {
+            return redemption;
+        }
+        // 一意制約で重複を検出した場合は、先に処理されたリクエストの結果を返す
+        return findRedemptionResult(userId, points, key)
+                .switchIfEmpty(redemption.onErrorResume(DataIntegrityViolationException.class,
+                        e -> findRedemptionResult(userId, points, key).switchIfEmpty(Mono.error(e))));
+    }
+
+    /**
+     * ユーザーのポイント履歴を新しい順に取得。
+     * 購読側の要求件数に応じてDBから読み出すため、件数の多いユーザーでも全件をメモリに載せません。
+     *
+     * @param userId ユーザーID
+     * @return ポイント履歴のストリーム
+     */
+    public Flux<PointHistoryRecord> getPointHistory(String userId) {
+        return pointHistoryRepository.findByUserIdNewestFirst(userId).limitRate(historyPrefetch);
+    }
+
+    /**
+     * ユーザーの現在のステージを取得。
+     *
+     * @param userId ユーザーID
+     * @return 現在のステージ情報（存在しない場合は空）
+     */
+    public Mono<StageRecord> getStageDetails(String userId) {
+        return stageRepository.findByUserId(userId);
+    }
+
+    /**
+     * ユーザーのステージを更新（アップまたはダウン）。
+     * 判定に使うステージ・残高の読み出しと更新を同一トランザクションで行い、
+     * 判定後に他の処理がステージを変更していた場合は更新せず、変更後のステージを返します。
+     *
+     * @param userId ユーザーID
+     * @return 更新結果（新しいステージ名、ステージ情報がない場合は空）
+     */
+    public Mono<String> updateStage(String userId) {
+        Mono<String> update = stageRepository.findByUserId(userId)
+                .zipWith(getAvailablePoints(userId))
+                .flatMap(stageAndPoints -> {
+                    String currentStage = stageAndPoints.getT1().stageName();
+                    int totalPoints = stageAndPoints.getT2();
+                    String newStage = stageThresholdRegistry.resolveStage(totalPoints);
+                    if (newStage.equals(currentStage)) {
+                        return Mono.just(newStage);
+                    }
+                    return stageRepository.updateStageNameIfUnchanged(userId, currentStage, newStage, LocalDateTime.now())
+                            .flatMap(updated -> (updated > 0)
+                                    ? publishEvent(LoyaltyEvent.STAGE_CHANGED, userId, LoyaltyEventPublisher.payload(
+                                            "from", currentStage, "to", newStage, "totalPoints", totalPoints))
+                                            .doOnSuccess(done -> loyaltyMetrics.recordStageTransition(currentStage, newStage))
+                                            .thenReturn(newStage)
+                                    : stageRepository.findByUserId(userId).map(StageRecord::stageName)); // 他の処理が先に更新した
+                });
+        return transactionalOperator.transactional(update);
+    }
+
+    /**
+     * 現在有効な特典を取得（有効期限の早い順）。
+     *
+     * @return 特典のストリーム
+     */
+    public Flux<BenefitRecord> getAvailableBenefits() {
+        return benefitRepository.findActive(LocalDateTime.now());
+    }
+
+    /**
+     * ユーザーのステージで利用できる有効な特典を取得（有効期限の早い順）。
+     *
+     * @param userId ユーザーID
+     * @return 特典のストリーム
+     */
+    public Flux<BenefitRecord> getBenefitsForUser(String userId) {
+        return benefitRepository.findActiveByUserId(userId, LocalDateTime.now());
+    }
+
+    /**
+     * 特定の特典を適用（ユーザーのステージの対象で、有効期間内の特典のみ）。
+     *
+     * @param userId    ユーザーID
+     * @param benefitId 特典ID
+     * @return 特典適用成功ならtrue、失敗ならfalse
+     */
+    public Mono<Boolean> applyBenefit(String userId, Long benefitId) {
+        LocalDateTime now = LocalDateTime.now();
+        Mono<Boolean> application = benefitRepository.findEligible(benefitId, userId, now)
+                .flatMap(benefit -> benefitRepository.insertApplicationIfAbsent(benefitId, userId, now)
+                        .then(publishEvent(LoyaltyEvent.BENEFIT_APPLIED, userId,
+                                LoyaltyEventPublisher.payload("benefitId", benefitId)))
+                        .thenReturn(true))
+                .defaultIfEmpty(false); // 適用条件に合致しなかった
+        return transactionalOperator.transactional(application)
+                .doOnNext(applied -> loyaltyMetrics.recordBenefitApplied(applied));
+    }
+
+    /**
+     * ポイントの使用期限通知を送信キューに登録（送信は非同期で行われます）。
+     * 30日以内に期限を迎えるポイントのうち、利用・失効で消費済みの分は対象としません（夜間バッチと同じ先入れ先出しの判定）。
+     *
+     * @param userId ユーザーID
+     * @return 通知を受け付けた場合はtrue、期限が近いポイントがない場合や受付できなかった場合はfalse
+     */
+    public Mono<Boolean> notifyExpiration(String userId) {
+        LocalDate grantedBefore = LocalDate.now().minusDays(validityDays).plusDays(30);
+        return pointHistoryRepository.sumUnconsumedGrantsBefore(userId, grantedBefore)
+                .flatMap(expiringPoints -> {
+                    if (expiringPoints <= 0) {
+                        return Mono.just(false); // 有効期限が近いポイントはない
+                    }
+                    // 送信キューが満杯の場合は受付を待つため、イベントループ外で登録する
+                    return Mono.fromCallable(() -> expirationNotificationDispatcher.enqueue(userId,
+                                    "ポイントの有効期限が近づいています。確認してください。"))
+                            .subscribeOn(Schedulers.boundedElastic());
+                });
+    }
+
+    /**
+     * 残高を確認してポイント利用を登録（トランザクション内で呼び出す）。
+     * 台帳モードでは残高行の条件付き更新で、それ以外はユーザー行をロックして履歴の合計で判定します。
+     */
+    private Mono<Boolean> redeem(String userId, int points) {
+        Mono<Boolean> fromHistory = Mono.defer(() -> lockUser(userId)
+                .then(pointHistoryRepository.sumByUserId(userId))
+                .map(total -> total >= points));
+        Mono<Boolean> checked;
+        if (ledgerMode) {
+            checked = pointBalanceRepository.deductBalanceIfSufficient(userId, points, LocalDateTime.now())
+                    .flatMap(updated -> (updated > 0)
+                            ? Mono.just(true)
+                            : pointBalanceRepository.findBalanceByUserId(userId).map(balance -> false)
+                                    .switchIfEmpty(fromHistory)); // 残高行が存在しない場合は履歴の合計で判定
+        } else {
+            checked = fromHistory;
+        }
+        return checked.flatMap(sufficient -> {
+            if (!sufficient) {
+                return Mono.just(false); // ポイント残高不足
+            }
+            return pointHistoryRepository
+                    .save(new PointHistoryRecord(null, userId, -points, LocalDate.now(), USAGE_REASON))
+                    .then(publishEvent(LoyaltyEvent.POINT_USED, userId, LoyaltyEventPublisher.payload("points", points)))
+                    .thenReturn(true);
+        });
+    }
+
+    /**
+     * 台帳モードの場合、ポイント履歴の登録と同一トランザクションで残高行を更新。
+     */
+    private Mono<Void> applyBalanceDelta(String userId, int delta) {
+        if (!ledgerMode) {
+            return Mono.empty();
+        }
+        return pointBalanceRepository.addToBalance(userId, delta, LocalDateTime.now()).then();
+    }
+
+    /**
+     * 同一ユーザーのポイント利用を直列化するため、ユーザー行を更新ロック。
+     */
+    private Mono<Void> lockUser(String userId) {
+        return databaseClient.sql("SELECT id FROM users WHERE id = :userId FOR UPDATE")
+                .bind("userId", userId)
+                .fetch()
+                .all()
+                .then();
+    }
+
+    /**
+     * ポイント付与の冪等キーを付与ポイント数とともに登録（一意制約により、同じキーの同時リクエストは一方が失敗する）。
+     */
+    private Mono<Void> reserveAccrualKey(String userId, double amount, int pointsEarned, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return Mono.empty();
+        }
+        return databaseClient.sql("INSERT INTO idempotency_keys (operation, idempotency_key, user_id, request_fingerprint, result, created_at) " +
+                        "VALUES (:operation, :idempotencyKey, :userId, :requestFingerprint, :result, :createdAt)")
+                .bind("operation", IdempotencyRecordEntity.OPERATION_ACCRUAL)
+                .bind("idempotencyKey", idempotencyKey)
+                .bind("userId", userId)
+                .bind("requestFingerprint", IdempotencyRecordEntity.amountFingerprint(amount))
+                .bind("result", pointsEarned)
+                .bind("createdAt", LocalDateTime.now())
+                .then();
+    }
+
+    /**
+     * 付与済みの冪等キーの付与ポイント数を取得（初回と異なる購入金額の場合はエラー）。
+     */
+    private Mono<Integer> findAccrualResult(String userId, double amount, String idempotencyKey) {
+        String operation = IdempotencyRecordEntity.OPERATION_ACCRUAL;
+        return databaseClient.sql("SELECT request_fingerprint, result FROM idempotency_keys " +
+                        "WHERE operation = :operation AND user_id = :userId AND idempotency_key = :idempotencyKey")
+                .bind("operation", operation)
+                .bind("userId", userId)
+                .bind("idempotencyKey", idempotencyKey)
+                .map(row -> new IdempotencyRecordEntity(operation, idempotencyKey, userId,
+                        row.get("request_fingerprint", String.class), row.get("result", Integer.class)))
+                .one()
+                .flatMap(record -> record.matches(IdempotencyRecordEntity.amountFingerprint(amount))
+                        ? Mono.just(record.getResult())
+                        : Mono.error(new IdempotencyKeyMismatchException(operation, idempotencyKey)));
+    }
+
+    /**
+     * 冪等キーを登録（一意制約により、同じキーの同時リクエストは一方が失敗する）。
+     */
+    private Mono<Void> reserveRedemptionKey(String userId, int points, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return Mono.empty();
+        }
+        return databaseClient.sql("INSERT INTO idempotency_keys (operation, idempotency_key, user_id, request_fingerprint, result, created_at) " +
+                        "VALUES (:operation, :idempotencyKey, :userId, :requestFingerprint, 0, :createdAt)")
+                .bind("operation", IdempotencyRecordEntity.OPERATION_REDEMPTION)
+                .bind("idempotencyKey", idempotencyKey)
+                .bind("userId", userId)
+                .bind("requestFingerprint", IdempotencyRecordEntity.pointsFingerprint(points))
+                .bind("createdAt", LocalDateTime.now())
+                .then();
+    }
+
+    /**
+     * 冪等キーに処理結果を記録。
+     */
+    private Mono<Void> completeRedemptionKey(String userId, String idempotencyKey, boolean redeemed) {
+        if (idempotencyKey == null || !redeemed) {
+            return Mono.empty(); // 登録時の結果（0: 失敗）のまま
+        }
+        return databaseClient.sql("UPDATE idempotency_keys SET result = 1 " +
+                        "WHERE operation = :operation AND user_id = :userId AND idempotency_key = :idempotencyKey")
+                .bind("operation", IdempotencyRecordEntity.OPERATION_REDEMPTION)
+                .bind("userId", userId)
+                .bind("idempotencyKey", idempotencyKey)
+                .then();
+    }
+
+    /**
+     * 処理済みの冪等キーの結果を取得（初回と異なるポイント数の場合はエラー）。
+     */
+    private Mono<Boolean> findRedemptionResult(String userId, int points, String idempotencyKey) {
+        String operation = IdempotencyRecordEntity.OPERATION_REDEMPTION;
+        return databaseClient.sql("SELECT request_fingerprint, result FROM idempotency_keys " +
+                        "WHERE operation = :operation AND user_id = :userId AND idempotency_key = :idempotencyKey")
+                .bind("operation", operation)
+                .bind("userId", userId)
+                .bind("idempotencyKey", idempotencyKey)
+                .map(row -> new IdempotencyRecordEntity(operation, idempotencyKey, userId,
+                        row.get("request_fingerprint", String.class), row.get("result", Integer.class)))
+                .one()
+                .flatMap(record -> record.matches(IdempotencyRecordEntity.pointsFingerprint(points))
+                        ? Mono.just(record.getResult() == 1)
+                        : Mono.error(new IdempotencyKeyMismatchException(operation, idempotencyKey)));
+    }
+
+    /**
+     * イベントをアウトボックスに登録（呼び出し元のトランザクション内で実行）。
+     */
+    private Mono<Void> publishEvent(String eventType, String userId, Map<String, Object> payload) {
+        if (!eventsEnabled) {
+            return Mono.empty();
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            return Mono.error(new IllegalArgumentException("イベント内容をJSONに変換できません: " + eventType, e));
+        }
+        return databaseClient.sql("INSERT INTO loyalty_outbox (event_type, user_id, payload, occurred_at) " +
+                        "VALUES (:eventType, :userId, :payload, :occurredAt)")
+                .bind("eventType", eventType)
+                .bind("userId", userId)
+                .bind("payload", json)
+                .bind("occurredAt", LocalDateTime.now())
+                .then();
+    }
+}
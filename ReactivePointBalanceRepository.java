@@ -0,0 +1,57 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.PointBalanceRecord;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * ReactivePointBalanceRepository
+ * ポイント残高（pointsテーブル）をノンブロッキングに参照・更新するR2DBCリポジトリ（reactiveプロファイル用）。
+ */
+@Repository
+@Profile("reactive")
+public interface ReactivePointBalanceRepository extends ReactiveCrudRepository<PointBalanceRecord, Long> {
+
+    /**
+     * ユーザーIDで現在のポイント残高を取得。
+     *
+     * @param userId ユーザーID
+     * @return ポイント残高（残高行が存在しない場合は空）
+     */
+    @Query("SELECT balance FROM points WHERE user_id = :userId")
+    Mono<Integer> findBalanceByUserId(@Param("userId") String userId);
+
+    /**
+     * ポイント残高に差分を加算し、最終更新日時を更新。
+     *
+     * @param userId    ユーザーID
+     * @param delta     加算するポイント数（使用時は負数）
+     * @param updatedAt 最終更新日時
+     * @return 更新件数（残高行が存在しない場合は0）
+     */
+    @Modifying
+    @Query("UPDATE points SET balance = balance + :delta, updated_at = :updatedAt WHERE user_id = :userId")
+    Mono<Integer> addToBalance(@Param("userId") String userId, @Param("delta") int delta,
+                               @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * ポイント残高が足りている場合のみ残高を減算（条件付き更新）。
+     *
+     * @param userId    ユーザーID
+     * @param points    使用するポイント数
+     * @param updatedAt 最終更新日時
+     * @return 更新件数（残高不足または残高行が存在しない場合は0）
+     */
+    @Modifying
+    @Query("UPDATE points SET balance = balance - :points, updated_at = :updatedAt " +
+            "WHERE user_id = :userId AND balance >= :points")
+    Mono<Integer> deductBalanceIfSufficient(@Param("userId") String userId, @Param("points") int points,
+                                            @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -0,0 +1,53 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.PointHistoryRecord;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+/**
+ * ReactivePointHistoryRepository
+ * ポイント履歴（point_historyテーブル）をノンブロッキングに参照・登録するR2DBCリポジトリ（reactiveプロファイル用）。
+ */
+@Repository
+@Profile("reactive")
+public interface ReactivePointHistoryRepository extends ReactiveCrudRepository<PointHistoryRecord, Long> {
+
+    /**
+     * ユーザーのポイント履歴を新しい順に取得（購読側の要求件数に応じてDBから読み出されます）。
+     *
+     * @param userId ユーザーID
+     * @return ポイント履歴のストリーム
+     */
+    @Query("SELECT * FROM point_history WHERE user_id = :userId ORDER BY date DESC, id DESC")
+    Flux<PointHistoryRecord> findByUserIdNewestFirst(@Param("userId") String userId);
+
+    /**
+     * ユーザーのポイント履歴の合計を取得。
+     *
+     * @param userId ユーザーID
+     * @return ポイント合計（履歴がない場合は0）
+     */
+    @Query("SELECT COALESCE(SUM(change_quantity), 0) FROM point_history WHERE user_id = :userId")
+    Mono<Long> sumByUserId(@Param("userId") String userId);
+
+    /**
+     * 指定日より前に付与したポイントのうち、利用・失効で消費されずに残っているポイント数を取得（有効期限の判定用）。
+     * 先に付与されたポイントから順に消費される（先入れ先出し）ものとし、「付与ポイントの合計 − 減算ポイントの合計」で算出します。
+     *
+     * @param userId        ユーザーID
+     * @param grantedBefore 付与日の上限（含まない）
+     * @return 未消費のポイント数（0以上）
+     */
+    @Query("SELECT GREATEST(COALESCE(SUM(CASE WHEN change_quantity > 0 AND date < :grantedBefore THEN change_quantity ELSE 0 END), 0) " +
+            "- COALESCE(SUM(CASE WHEN change_quantity < 0 THEN -change_quantity ELSE 0 END), 0), 0) " +
+            "FROM point_history WHERE user_id = :userId")
+    Mono<Long> sumUnconsumedGrantsBefore(@Param("userId") String userId,
+                                         @Param("grantedBefore") LocalDate grantedBefore);
+}
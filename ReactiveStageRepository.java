@@ -0,0 +1,47 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.StageRecord;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * ReactiveStageRepository
+ * ユーザーのステージ（stagesテーブル）をノンブロッキングに参照・更新するR2DBCリポジトリ（reactiveプロファイル用）。
+ */
+@Repository
+@Profile("reactive")
+public interface ReactiveStageRepository extends ReactiveCrudRepository<StageRecord, Long> {
+
+    /**
+     * ユーザーIDでステージを取得。
+     *
+     * @param userId ユーザーID
+     * @return ステージ（存在しない場合は空）
+     */
+    @Query("SELECT * FROM stages WHERE user_id = :userId")
+    Mono<StageRecord> findByUserId(@Param("userId") String userId);
+
+    /**
+     * ユーザーのステージ名が判定時のままの場合のみ更新（判定後に他の処理が更新していた場合は更新しない）。
+     *
+     * @param userId        ユーザーID
+     * @param expectedStage 判定時のステージ名
+     * @param stageName     新しいステージ名
+     * @param updatedAt     最終更新日時
+     * @return 更新件数（0: 判定後にステージが変更されていた）
+     */
+    @Modifying
+    @Query("UPDATE stages SET stage_name = :stageName, updated_at = :updatedAt " +
+            "WHERE user_id = :userId AND stage_name = :expectedStage")
+    Mono<Integer> updateStageNameIfUnchanged(@Param("userId") String userId,
+                                             @Param("expectedStage") String expectedStage,
+                                             @Param("stageName") String stageName,
+                                             @Param("updatedAt") LocalDateTime updatedAt);
+}
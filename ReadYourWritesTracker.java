@@ -0,0 +1,155 @@
+package com.example.loyaltyprogram.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReadYourWritesTracker
+ * ユーザーごとの最終更新時刻を記録し、更新直後の読み取りをプライマリに固定するためのクラス。
+ * レプリカの遅延は最大でも「許容遅延 + ハートビート間隔」に収まるため、その間だけプライマリから読み取れば、
+ * ポイント利用の直後に利用前の残高が表示されることはありません。
+ * 最終更新時刻はこのJVM内に記録するほか、HTTPリクエストの処理中に更新した場合はクライアントにCookieとして返します。
+ * 次のリクエストが別のノードに振り分けられても、そのCookieの更新時刻から固定期間内であればプライマリから読み取るため、
+ * ノードをまたいでも自分の更新が読めます（ノード間の時刻のずれは固定期間に比べて十分小さい前提です）。
+ * Cookieを返さないクライアントや、リクエスト外の処理（ライトビハインドの反映など）の更新は、
+ * このJVM内の記録のみで判定します。
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    /**
+     * クライアントに返す最終更新時刻（エポックミリ秒）のCookie名
+     */
+    public static final String LAST_WRITE_COOKIE = "loyalty_last_write";
+
+    private final boolean enabled;
+
+    /**
+     * 更新後にプライマリへ固定する時間（ミリ秒）
+     */
+    private final long stickyMillis;
+
+    /**
+     * ユーザーIDごとの最終更新時刻（エポックミリ秒）
+     */
+    private final Map<String, Long> lastWriteMillis = new ConcurrentHashMap<>();
+
+    public ReadYourWritesTracker(@Value("${loyalty.replica.enabled:false}") boolean enabled,
+                                 @Value("${loyalty.replica.max-staleness:5s}") Duration maxStaleness,
+                                 @Value("${loyalty.replica.heartbeat-interval-ms:1000}") long heartbeatIntervalMs) {
+        this.enabled = enabled;
+        this.stickyMillis = maxStaleness.toMillis() + heartbeatIntervalMs;
+    }
+
+    /**
+     * ユーザーのデータを更新したことを記録（トランザクション内ではコミット後に記録）。
+     *
+     * @param userId ユーザーID
+     */
+    public void recordWrite(String userId) {
+        if (!enabled) {
+            return;
+        }
+        // 処理中のリクエストはコミット後の呼び出しでも同じスレッドで参照できる
+        HttpServletResponse response = currentResponse();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markWritten(userId, response);
+                }
+            });
+        } else {
+            markWritten(userId, response);
+        }
+    }
+
+    /**
+     * ユーザーの読み取りをプライマリに固定するかを判定。
+     * このJVMでの更新記録に加え、処理中のリクエストのCookieにある最終更新時刻も確認します。
+     *
+     * @param userId ユーザーID（不明な場合はnull）
+     * @return 更新直後でプライマリから読み取る必要がある場合はtrue
+     */
+    public boolean isSticky(String userId) {
+        long now = System.currentTimeMillis();
+        Long writtenAt = (userId != null) ? lastWriteMillis.get(userId) : null;
+        if (writtenAt != null && now - writtenAt < stickyMillis) {
+            return true;
+        }
+        Long clientWrittenAt = clientLastWriteMillis();
+        return clientWrittenAt != null && now - clientWrittenAt < stickyMillis;
+    }
+
+    /**
+     * 最終更新時刻を記録し、リクエストの処理中であればCookieでクライアントにも返します。
+     *
+     * @param userId   ユーザーID
+     * @param response 処理中のリクエストのレスポンス（リクエスト外の場合はnull）
+     */
+    private void markWritten(String userId, HttpServletResponse response) {
+        long now = System.currentTimeMillis();
+        lastWriteMillis.put(userId, now);
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(now));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) (stickyMillis / 1000) + 1);
+            response.addCookie(cookie);
+        }
+    }
+
+    /**
+     * 処理中のリクエストのCookieから、クライアントの最終更新時刻を取得。
+     *
+     * @return 最終更新時刻（リクエスト外、またはCookieがない場合はnull）
+     */
+    private static Long clientLastWriteMillis() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return null; // 不正な値は無視する
+                }
+            }
+        }
+        return null;
+    }
+
+    private static HttpServletResponse currentResponse() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return (attributes instanceof ServletRequestAttributes servletAttributes) ? servletAttributes.getResponse() : null;
+    }
+
+    /**
+     * 固定期間を過ぎた記録を削除。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.replica.sticky-eviction-interval-ms:60000}")
+    public void evictExpired() {
+        long threshold = System.currentTimeMillis() - stickyMillis;
+        lastWriteMillis.values().removeIf(writtenAt -> writtenAt < threshold);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.loyaltyprogram.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RecentIdempotencyKeys
+ * 直近に処理した冪等キーと処理結果を保持する件数上限付きのLRUキャッシュ。
+ * 再送の多くは直後に届くため、DBに問い合わせる前に重複を検出して元の結果を返します。
+ * キャッシュから外れたキーはDBの一意制約で検出されます。
+ * 冪等キーはユーザーごとに管理し、初回と異なる内容のリクエストは拒否します。
+ */
+@Component
+public class RecentIdempotencyKeys {
+
+    private final Map<String, RecentResult> results;
+
+    public RecentIdempotencyKeys(@Value("${loyalty.idempotency.recent-keys.capacity:100000}") int capacity) {
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RecentResult> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 冪等キーの処理結果を取得。
+     *
+     * @param operation          処理種別
+     * @param userId             ユーザーID
+     * @param idempotencyKey     冪等キー
+     * @param requestFingerprint リクエスト内容
+     * @return 処理結果（保持していない場合はnull）
+     * @throws IdempotencyKeyMismatchException 初回と異なる内容のリクエストの場合
+     */
+    public Integer get(String operation, String userId, String idempotencyKey, String requestFingerprint) {
+        RecentResult recent;
+        synchronized (this) {
+            recent = results.get(cacheKey(operation, userId, idempotencyKey));
+        }
+        if (recent == null) {
+            return null;
+        }
+        if (!recent.requestFingerprint().equals(requestFingerprint)) {
+            throw new IdempotencyKeyMismatchException(operation, idempotencyKey);
+        }
+        return recent.result();
+    }
+
+    /**
+     * 冪等キーの処理結果を記録。
+     *
+     * @param operation          処理種別
+     * @param userId             ユーザーID
+     * @param idempotencyKey     冪等キー
+     * @param requestFingerprint リクエスト内容
+     * @param result             処理結果
+     */
+    public synchronized void put(String operation, String userId, String idempotencyKey,
+                                 String requestFingerprint, int result) {
+        results.put(cacheKey(operation, userId, idempotencyKey), new RecentResult(requestFingerprint, result));
+    }
+
+    private static String cacheKey(String operation, String userId, String idempotencyKey) {
+        return operation + ":" + userId + ":" + idempotencyKey;
+    }
+
+    private record RecentResult(String requestFingerprint, int result) {
+    }
+}
@@ -0,0 +1,438 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ReadYourWritesTracker;
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.model.IdempotencyRecordEntity;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import com.example.loyaltyprogram.model.PointHistory;
+import com.example.loyaltyprogram.repository.IdempotencyRecordRepository;
+import com.example.loyaltyprogram.repository.PointAccrualBatchWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedemptionJournal
+ * ポイント利用をローカルジャーナル（セグメント単位のメモリマップドファイル）に記録し、DBへは非同期にまとめて反映するコンポーネント。
+ * 利用はジャーナルに記録した時点で完了とするため、利用の応答時間がDBのコミット時間に左右されません。
+ *
+ * 各レコードには冪等キー（未指定の場合は採番）を含め、DBへの反映と同一トランザクションで冪等キーを登録します。
+ * 起動時にはジャーナルを再生し、冪等キーが登録済みのレコードを反映済みとして読み飛ばします。
+ *
+ * 記録時の残高確認はこのノードのロックと未反映分のみで行うため、複数ノードで同じユーザーの利用を受け付けると
+ * 合計が残高を超えることがあります。そのため反映時に残高行の条件付き更新（balance >= 利用ポイント）で確定させ、
+ * 残高不足で拒否された利用は履歴を登録せず、冪等キーに失敗（0）を記録して PointUseRejected イベントで取り消しを通知します。
+ * 残高行を必要とするため、台帳モード（loyalty.points.ledger-mode）でのみ有効にできます。
+ */
+@Component
+public class RedemptionJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedemptionJournal.class);
+
+    private static final String USAGE_REASON = "ポイント使用";
+
+    @Autowired
+    private PointAccrualBatchWriter pointAccrualBatchWriter;
+
+    @Autowired
+    private HotBalanceStore hotBalanceStore;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Autowired
+    private LoyaltyMetrics loyaltyMetrics;
+
+    @Autowired
+    private RecentIdempotencyKeys recentIdempotencyKeys;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.points.redemption-journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.points.redemption-journal.dir:./data/redemption-journal}")
+    private String journalDirectory;
+
+    @Value("${loyalty.points.redemption-journal.segment-bytes:16777216}")
+    private int segmentBytes;
+
+    /**
+     * 追記ごとにジャーナルをディスクへ同期するか（falseの場合もプロセスの異常終了では失われない）
+     */
+    @Value("${loyalty.points.redemption-journal.sync-on-append:false}")
+    private boolean syncOnAppend;
+
+    @Value("${loyalty.points.redemption-journal.batch-size:500}")
+    private int batchSize;
+
+    @Value("${loyalty.points.redemption-journal.max-backoff-ms:10000}")
+    private long maxBackoffMillis;
+
+    private SegmentedJournal journal;
+
+    private final BlockingQueue<JournaledRedemption> commitQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * DBへ未反映のユーザーごとの利用ポイント
+     */
+    private final ConcurrentHashMap<String, Integer> pendingPoints = new ConcurrentHashMap<>();
+
+    /**
+     * DBへ未反映の利用の冪等キー（ユーザーID:冪等キー）ごとの利用ポイント
+     */
+    private final ConcurrentHashMap<String, Integer> pendingRequests = new ConcurrentHashMap<>();
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (!ledgerMode) {
+            throw new IllegalStateException(
+                    "ポイント利用のジャーナル（loyalty.points.redemption-journal.enabled）は台帳モード（loyalty.points.ledger-mode）でのみ有効にできます。");
+        }
+        journal = new SegmentedJournal(Paths.get(journalDirectory), "redemption", segmentBytes, syncOnAppend);
+        journal.replay((segment, record) -> track(decode(segment, record)));
+        if (!commitQueue.isEmpty()) {
+            logger.info("ポイント利用のジャーナルを再生します: 件数={}", commitQueue.size());
+        }
+        running = true;
+        worker = new Thread(this::runWorker, "redemption-journal-committer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(30)); // 残っている利用を反映しきるまで待機
+        journal.close();
+    }
+
+    /**
+     * ジャーナルモードが有効かを判定。
+     *
+     * @return 有効な場合はtrue
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * ポイント利用をジャーナルに記録し、DBへの反映待ちに登録します（反映は待ちません）。
+     * 残高の確認はユーザー単位のロック内で呼び出し側が行ってください。
+     *
+     * @param userId         ユーザーID
+     * @param points         使用するポイント数
+     * @param idempotencyKey 冪等キー（未指定の場合はnull）
+     */
+    public void record(String userId, int points, String idempotencyKey) {
+        String key = (idempotencyKey != null) ? idempotencyKey : UUID.randomUUID().toString();
+        long timestamp = System.currentTimeMillis();
+        long segment;
+        try {
+            segment = journal.append(encode(userId, points, timestamp, key));
+        } catch (IOException e) {
+            throw new UncheckedIOException("ポイント利用をジャーナルに記録できませんでした。", e);
+        }
+        track(new JournaledRedemption(segment, userId, points, timestamp, key));
+    }
+
+    /**
+     * DBへ未反映の利用ポイントを取得。
+     *
+     * @param userId ユーザーID
+     * @return 未反映の利用ポイント
+     */
+    public int getPendingPoints(String userId) {
+        return enabled ? pendingPoints.getOrDefault(userId, 0) : 0;
+    }
+
+    /**
+     * 冪等キーがDBへ未反映の利用として記録済みの場合、その利用ポイントを取得。
+     *
+     * @param userId         ユーザーID
+     * @param idempotencyKey 冪等キー
+     * @return 記録済みの利用ポイント（記録されていない場合はnull）
+     */
+    public Integer getPendingRequestPoints(String userId, String idempotencyKey) {
+        return enabled ? pendingRequests.get(requestKey(userId, idempotencyKey)) : null;
+    }
+
+    /**
+     * 反映待ちの利用件数を取得。
+     *
+     * @return キュー内の利用件数
+     */
+    public int getQueueDepth() {
+        return commitQueue.size();
+    }
+
+    private void track(JournaledRedemption redemption) {
+        pendingPoints.merge(redemption.userId, redemption.points, Integer::sum);
+        pendingRequests.put(requestKey(redemption.userId, redemption.idempotencyKey), redemption.points);
+        commitQueue.add(redemption);
+    }
+
+    private static String requestKey(String userId, String idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    /**
+     * 反映スレッドの処理。キューから利用をまとめて取り出してDBへ反映します。
+     */
+    private void runWorker() {
+        List<JournaledRedemption> batch = new ArrayList<>(batchSize);
+        while (running || !commitQueue.isEmpty()) {
+            try {
+                JournaledRedemption first = commitQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                commitQueue.drainTo(batch, batchSize - 1);
+                commitWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                return; // 未反映の利用はジャーナルに残り、次回起動時に反映される
+            }
+        }
+    }
+
+    /**
+     * 利用をまとめてDBへ反映し、失敗時は成功するまで指数バックオフで再試行します。
+     * 記録済みの利用は取り消せないため、再試行を断念しません。
+     *
+     * @param batch 反映する利用のリスト
+     * @throws InterruptedException 再試行の待機中に割り込まれた場合
+     */
+    private void commitWithRetry(List<JournaledRedemption> batch) throws InterruptedException {
+        long backoffMillis = 100;
+        while (true) {
+            try {
+                commit(batch);
+                break;
+            } catch (RuntimeException e) {
+                logger.warn("ポイント利用のDB反映に失敗したため再試行します: 件数={}", batch.size(), e);
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            }
+        }
+        for (JournaledRedemption redemption : batch) {
+            pendingPoints.computeIfPresent(redemption.userId,
+                    (userId, points) -> (points == redemption.points) ? null : points - redemption.points);
+            pendingRequests.remove(requestKey(redemption.userId, redemption.idempotencyKey));
+            journal.markCommitted(redemption.segment);
+        }
+    }
+
+    /**
+     * 利用をユーザーのシャードごとに1トランザクションでDBへ反映（冪等キーが登録済みの利用は読み飛ばす）。
+     *
+     * @param batch 反映する利用のリスト
+     */
+    private void commit(List<JournaledRedemption> batch) {
+        Map<String, List<JournaledRedemption>> byUser = new LinkedHashMap<>();
+        for (JournaledRedemption redemption : batch) {
+            byUser.computeIfAbsent(redemption.userId, userId -> new ArrayList<>()).add(redemption);
+        }
+        shardRouter.forEachShardOf(byUser, (shard, shardRedemptions) -> {
+            List<JournaledRedemption> shardBatch = new ArrayList<>();
+            shardRedemptions.values().forEach(shardBatch::addAll);
+            commitOnShard(shardBatch);
+        });
+    }
+
+    private void commitOnShard(List<JournaledRedemption> batch) {
+        String operation = IdempotencyRecordEntity.OPERATION_REDEMPTION;
+        transactionTemplate.executeWithoutResult(status -> {
+            List<String> keys = new ArrayList<>(batch.size());
+            for (JournaledRedemption redemption : batch) {
+                keys.add(redemption.idempotencyKey);
+            }
+            Set<String> processedKeys = new HashSet<>();
+            for (IdempotencyRecordEntity processed : idempotencyRecordRepository.findProcessed(operation, keys)) {
+                processedKeys.add(requestKey(processed.getUserId(), processed.getIdempotencyKey()));
+            }
+            List<JournaledRedemption> unprocessed = new ArrayList<>(batch.size());
+            for (JournaledRedemption redemption : batch) {
+                if (processedKeys.add(requestKey(redemption.userId, redemption.idempotencyKey))) {
+                    unprocessed.add(redemption);
+                }
+            }
+            if (unprocessed.isEmpty()) {
+                return; // 反映済み
+            }
+            // 行ロックの取得順を揃えるためユーザーID順に並べる（安定ソートのため同一ユーザー内は記録順のまま）
+            unprocessed.sort(Comparator.comparing(redemption -> redemption.userId));
+            List<Map.Entry<String, Integer>> deductions = new ArrayList<>(unprocessed.size());
+            for (JournaledRedemption redemption : unprocessed) {
+                deductions.add(Map.entry(redemption.userId, redemption.points));
+            }
+            int[] deducted = pointAccrualBatchWriter.deductBalancesIfSufficient(deductions, LocalDateTime.now());
+
+            List<IdempotencyRecordEntity> records = new ArrayList<>(unprocessed.size());
+            List<PointHistory> histories = new ArrayList<>();
+            Map<String, Integer> balanceDeltas = new HashMap<>();
+            for (int i = 0; i < unprocessed.size(); i++) {
+                JournaledRedemption redemption = unprocessed.get(i);
+                boolean accepted = deducted[i] == 1;
+                records.add(new IdempotencyRecordEntity(operation, redemption.idempotencyKey, redemption.userId,
+                        IdempotencyRecordEntity.pointsFingerprint(redemption.points), accepted ? 1 : 0));
+                if (!accepted) {
+                    // 他ノードの利用と合わせて残高を超えたため取り消す
+                    logger.warn("ジャーナルに記録したポイント利用を残高不足のため取り消しました: ユーザーID={} ポイント={} 冪等キー={}",
+                            redemption.userId, redemption.points, redemption.idempotencyKey);
+                    loyaltyMetrics.recordRedemptionRejected("journal_insufficient_balance");
+                    loyaltyEventPublisher.publish(LoyaltyEvent.POINT_USE_REJECTED, redemption.userId, LoyaltyEventPublisher.payload(
+                            "points", redemption.points, "idempotencyKey", redemption.idempotencyKey));
+                    recordRejectedAfterCommit(redemption);
+                    continue;
+                }
+                histories.add(new PointHistory(redemption.userId, -redemption.points,
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(redemption.timestamp), ZoneId.systemDefault()).toLocalDate(),
+                        USAGE_REASON));
+                balanceDeltas.merge(redemption.userId, -redemption.points, Integer::sum);
+                readYourWritesTracker.recordWrite(redemption.userId); // 未反映分がレプリカに届くまでプライマリから読む
+                loyaltyEventPublisher.publish(LoyaltyEvent.POINT_USED, redemption.userId, LoyaltyEventPublisher.payload(
+                        "points", redemption.points, "idempotencyKey", redemption.idempotencyKey));
+            }
+            idempotencyRecordRepository.saveAll(records);
+            if (!histories.isEmpty()) {
+                pointAccrualBatchWriter.insertHistories(histories);
+                hotBalanceStore.applyAfterCommit(balanceDeltas);
+            }
+        });
+    }
+
+    /**
+     * 取り消した利用の結果（0: 失敗）を、コミット後に直近の冪等キーの結果へ上書きします。
+     * 受け付け時に記録した成功の結果のままでは、同じノードへの再送に成功と応答してしまうため。
+     *
+     * @param redemption 取り消した利用
+     */
+    private void recordRejectedAfterCommit(JournaledRedemption redemption) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentIdempotencyKeys.put(IdempotencyRecordEntity.OPERATION_REDEMPTION, redemption.userId,
+                        redemption.idempotencyKey, IdempotencyRecordEntity.pointsFingerprint(redemption.points), 0);
+            }
+        });
+    }
+
+    /**
+     * 利用をジャーナルのレコードに変換。
+     * 形式: [ユーザーIDのハッシュ(4)][ユーザーIDの長さ(2)][ユーザーID][利用ポイント(4)][記録日時(8)][冪等キーの長さ(2)][冪等キー]
+     * 再生時にポイント履歴を登録するため、ハッシュに加えてユーザーID自体も記録します。
+     */
+    private byte[] encode(String userId, int points, long timestamp, String idempotencyKey) {
+        byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + 2 + userIdBytes.length + 4 + 8 + 2 + keyBytes.length)
+                .putInt(userId.hashCode())
+                .putShort((short) userIdBytes.length)
+                .put(userIdBytes)
+                .putInt(points)
+                .putLong(timestamp)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .array();
+    }
+
+    /**
+     * ジャーナルのレコードを読み出します。
+     *
+     * @throws IllegalStateException ユーザーIDとハッシュが一致しない（レコードが破損している）場合
+     */
+    private JournaledRedemption decode(long segment, ByteBuffer record) {
+        int userIdHash = record.getInt();
+        byte[] userIdBytes = new byte[record.getShort()];
+        record.get(userIdBytes);
+        String userId = new String(userIdBytes, StandardCharsets.UTF_8);
+        if (userId.hashCode() != userIdHash) {
+            throw new IllegalStateException("ポイント利用のジャーナルが破損しています: セグメント=" + segment);
+        }
+        int points = record.getInt();
+        long timestamp = record.getLong();
+        byte[] keyBytes = new byte[record.getShort()];
+        record.get(keyBytes);
+        return new JournaledRedemption(segment, userId, points, timestamp, new String(keyBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * ジャーナルに記録済みでDBへ未反映のポイント利用。
+     */
+    private static class JournaledRedemption {
+
+        private final long segment;
+
+        private final String userId;
+
+        private final int points;
+
+        private final long timestamp;
+
+        private final String idempotencyKey;
+
+        private JournaledRedemption(long segment, String userId, int points, long timestamp, String idempotencyKey) {
+            this.segment = segment;
+            this.userId = userId;
+            this.points = points;
+            this.timestamp = timestamp;
+            this.idempotencyKey = idempotencyKey;
+        }
+    }
+}
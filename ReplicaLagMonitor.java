@@ -0,0 +1,89 @@
+package com.example.loyaltyprogram.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReplicaLagMonitor
+ * プライマリのハートビート行（replication_heartbeat）を定期的に更新し、各レプリカに反映された値から遅延を計測するクラス。
+ * 遅延が許容上限を超えたレプリカ、または応答しないレプリカは、追いつくまで振り分け対象から外します。
+ * 起動直後（最初の計測前）はすべての読み取りをプライマリに振り分けます。
+ */
+public class ReplicaLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private static final int HEARTBEAT_ID = 1;
+
+    private final JdbcTemplate primaryJdbcTemplate;
+
+    private final Map<String, JdbcTemplate> replicaJdbcTemplates = new LinkedHashMap<>();
+
+    private final long maxStalenessMillis;
+
+    /**
+     * 振り分け可能なレプリカ名
+     */
+    private final Map<String, Boolean> freshReplicas = new ConcurrentHashMap<>();
+
+    public ReplicaLagMonitor(DataSource primary, Map<String, DataSource> replicas, Duration maxStaleness) {
+        this.primaryJdbcTemplate = new JdbcTemplate(primary);
+        replicas.forEach((name, dataSource) -> replicaJdbcTemplates.put(name, new JdbcTemplate(dataSource)));
+        this.maxStalenessMillis = maxStaleness.toMillis();
+    }
+
+    /**
+     * プライマリのハートビートを更新し、各レプリカの遅延を計測。
+     * 遅延は「現在時刻 - レプリカに反映済みの最新のハートビート時刻」で、実際の遅延以上の値になります。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.replica.heartbeat-interval-ms:1000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            int updated = primaryJdbcTemplate.update(
+                    "UPDATE replication_heartbeat SET beat_millis = ? WHERE id = ?", now, HEARTBEAT_ID);
+            if (updated == 0) {
+                primaryJdbcTemplate.update(
+                        "INSERT INTO replication_heartbeat (id, beat_millis) VALUES (?, ?)", HEARTBEAT_ID, now);
+            }
+        } catch (DataAccessException e) {
+            logger.warn("プライマリのハートビートを更新できませんでした", e);
+        }
+        replicaJdbcTemplates.forEach((name, jdbcTemplate) -> {
+            boolean fresh;
+            try {
+                List<Long> beats = jdbcTemplate.queryForList(
+                        "SELECT beat_millis FROM replication_heartbeat WHERE id = ?", Long.class, HEARTBEAT_ID);
+                long lagMillis = beats.isEmpty() ? Long.MAX_VALUE : System.currentTimeMillis() - beats.get(0);
+                fresh = lagMillis <= maxStalenessMillis;
+                if (!fresh && Boolean.TRUE.equals(freshReplicas.get(name))) {
+                    logger.warn("レプリカの遅延が上限を超えたため振り分けを停止します: レプリカ={} 遅延={}ms", name, lagMillis);
+                }
+            } catch (DataAccessException e) {
+                fresh = false;
+                logger.warn("レプリカの遅延を計測できませんでした: レプリカ={}", name, e);
+            }
+            freshReplicas.put(name, fresh);
+        });
+    }
+
+    /**
+     * レプリカが振り分け可能（遅延が許容上限以内）かを判定。
+     *
+     * @param name レプリカ名
+     * @return 振り分け可能な場合はtrue
+     */
+    public boolean isFresh(String name) {
+        return Boolean.TRUE.equals(freshReplicas.get(name));
+    }
+}
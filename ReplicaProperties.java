@@ -0,0 +1,85 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReplicaProperties
+ * 読み取り専用の処理をリードレプリカへ振り分ける設定（loyalty.replica.*）。
+ * 検証時は primary と replicas に組み込みDB（例: jdbc:h2:mem:primary / jdbc:h2:mem:replica）を指定できます。
+ */
+@ConfigurationProperties(prefix = "loyalty.replica")
+public class ReplicaProperties {
+
+    // --- フィールド定義 ---
+
+    /**
+     * レプリカへの振り分けを有効にするか
+     */
+    private boolean enabled;
+
+    /**
+     * プライマリの接続情報
+     */
+    private DatabaseEndpoint primary = new DatabaseEndpoint();
+
+    /**
+     * レプリカの接続情報
+     */
+    private List<DatabaseEndpoint> replicas = new ArrayList<>();
+
+    /**
+     * 許容する遅延の上限（これを超えて遅れているレプリカには振り分けない）
+     */
+    private Duration maxStaleness = Duration.ofSeconds(5);
+
+    /**
+     * 遅延を計測するハートビートの間隔（ミリ秒）
+     */
+    private long heartbeatIntervalMs = 1000;
+
+    // --- Getter / Setter ---
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DatabaseEndpoint getPrimary() {
+        return primary;
+    }
+
+    public void setPrimary(DatabaseEndpoint primary) {
+        this.primary = primary;
+    }
+
+    public List<DatabaseEndpoint> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<DatabaseEndpoint> replicas) {
+        this.replicas = replicas;
+    }
+
+    public Duration getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    public void setMaxStaleness(Duration maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    public long getHeartbeatIntervalMs() {
+        return heartbeatIntervalMs;
+    }
+
+    public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+    }
+}
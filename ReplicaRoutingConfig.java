@@ -0,0 +1,59 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ReplicaRoutingConfig
+ * 読み取り専用の処理をリードレプリカへ振り分ける設定クラス。
+ * loyalty.replica.enabled=true の場合、プライマリとレプリカごとのコネクションプールを作成し、
+ * ReplicaRoutingDataSource を LazyConnectionDataSourceProxy で包んでアプリケーションのデータソースとして登録します。
+ * シャード分割（loyalty.sharding.enabled）とは併用できないため、両方が有効な場合は起動時にエラーとします。
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+@ConditionalOnProperty(name = "loyalty.replica.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    private final DataSource primaryDataSource;
+
+    private final Map<String, DataSource> replicaDataSources = new LinkedHashMap<>();
+
+    public ReplicaRoutingConfig(ReplicaProperties properties,
+                                @Value("${loyalty.sharding.enabled:false}") boolean shardingEnabled) {
+        if (shardingEnabled) {
+            throw new IllegalStateException("loyalty.replica.enabled と loyalty.sharding.enabled は同時に有効にできません");
+        }
+        if (properties.getReplicas().isEmpty()) {
+            throw new IllegalStateException("loyalty.replica.replicas が設定されていません");
+        }
+        this.primaryDataSource = properties.getPrimary().createDataSource("loyalty-primary");
+        for (DatabaseEndpoint replica : properties.getReplicas()) {
+            replicaDataSources.put(replica.getName(), replica.createDataSource("loyalty-replica-" + replica.getName()));
+        }
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(ReplicaProperties properties) {
+        return new ReplicaLagMonitor(primaryDataSource, replicaDataSources, properties.getMaxStaleness());
+    }
+
+    @Bean
+    @Primary
+    public DataSource replicaRoutingDataSource(ReplicaLagMonitor replicaLagMonitor,
+                                               ReadYourWritesTracker readYourWritesTracker) {
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(
+                primaryDataSource, replicaDataSources, replicaLagMonitor, readYourWritesTracker);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ReplicaRoutingDataSource
+ * 読み取り専用トランザクション（@Transactional(readOnly = true)）の接続をリードレプリカへ振り分けるデータソース。
+ * 次の場合はプライマリに接続します。
+ * - 読み取り専用でないトランザクション、またはトランザクション外の処理
+ * - 更新直後のユーザーの処理（ReadYourWritesTracker）
+ * - 遅延が許容上限以内のレプリカがない場合（ReplicaLagMonitor）
+ * トランザクションの読み取り専用属性は接続取得より後に確定するため、LazyConnectionDataSourceProxy で包んで使用します。
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * プライマリの振り分けキー
+     */
+    public static final String PRIMARY = "primary";
+
+    private final List<String> replicaNames;
+
+    private final ReplicaLagMonitor replicaLagMonitor;
+
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    ReplicaLagMonitor replicaLagMonitor, ReadYourWritesTracker readYourWritesTracker) {
+        Map<Object, Object> targets = new LinkedHashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.replicaNames = new ArrayList<>(replicas.keySet());
+        this.replicaLagMonitor = replicaLagMonitor;
+        this.readYourWritesTracker = readYourWritesTracker;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        if (readYourWritesTracker.isSticky(UserRoutingContext.currentUserId())) {
+            return PRIMARY; // 更新直後のユーザー（またはクライアント）は自分の更新を読めるようプライマリから読み取る
+        }
+        // ラウンドロビンで、遅延が許容上限以内のレプリカを選ぶ
+        int size = replicaNames.size();
+        int start = nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            String name = replicaNames.get((start + i) % size);
+            if (replicaLagMonitor.isFresh(name)) {
+                return name;
+            }
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+
+/**
+ * ReplicationHeartbeatEntity
+ * リードレプリカの遅延を計測するためのハートビート（1行のみ）を表すデータモデル。
+ * プライマリで定期的に更新し、レプリカに反映された値との差を遅延とみなします。
+ */
+@Entity
+@Table(name = "replication_heartbeat")
+public class ReplicationHeartbeatEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * ハートビートID（常に1）
+     */
+    @Id
+    private Integer id;
+
+    /**
+     * 最終更新時刻（エポックミリ秒）
+     */
+    @Column(name = "beat_millis", nullable = false)
+    private long beatMillis;
+
+    // --- コンストラクタ ---
+
+    public ReplicationHeartbeatEntity() {
+    }
+
+    // --- Getter ---
+
+    public Integer getId() {
+        return id;
+    }
+
+    public long getBeatMillis() {
+        return beatMillis;
+    }
+}
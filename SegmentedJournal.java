@@ -0,0 +1,177 @@
+package com.example.loyaltyprogram.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * SegmentedJournal
+ * 一定サイズのセグメント（MappedJournal）を順に切り替えて追記するローカルジャーナル。
+ * 書き込み中のセグメントが満杯になると次のセグメントを作成し、
+ * 切り替え済みで全レコードの反映が完了したセグメントはファイルごと削除します。
+ */
+public class SegmentedJournal implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+
+    private final String prefix;
+
+    private final int segmentBytes;
+
+    private final boolean syncOnAppend;
+
+    /**
+     * セグメント番号ごとのセグメント（番号順）
+     */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private Segment active;
+
+    /**
+     * ディレクトリ内の既存セグメントを開き、新しい書き込み用セグメントを作成します。
+     *
+     * @param directory    セグメントを配置するディレクトリ
+     * @param prefix       セグメントファイル名の接頭辞
+     * @param segmentBytes セグメント1つあたりの容量（バイト）
+     * @param syncOnAppend 追記ごとにディスクへ同期する場合はtrue
+     * @throws IOException セグメントを開けなかった場合
+     */
+    public SegmentedJournal(Path directory, String prefix, int segmentBytes, boolean syncOnAppend) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = segmentBytes;
+        this.syncOnAppend = syncOnAppend;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "-*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long sequence = Long.parseLong(name.substring(prefix.length() + 1, name.length() - SEGMENT_SUFFIX.length()));
+                Segment segment = new Segment(sequence, file, new MappedJournal(file, segmentBytes, syncOnAppend));
+                segment.sealed = true; // 前回起動時のセグメントには追記しない
+                segments.put(sequence, segment);
+            }
+        }
+        roll();
+    }
+
+    /**
+     * レコードを書き込み中のセグメントに追記します（満杯の場合は次のセグメントに切り替えます）。
+     *
+     * @param payload レコード本体
+     * @return 追記したセグメントの番号（反映完了時に {@link #markCommitted(long)} へ渡す）
+     * @throws IOException 新しいセグメントを作成できなかった場合
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (!active.journal.append(payload)) {
+            active.sealed = true;
+            releaseIfCommitted(active);
+            roll();
+            if (!active.journal.append(payload)) {
+                throw new IllegalArgumentException("レコードがセグメントの容量を超えています: " + payload.length);
+            }
+        }
+        active.outstanding++;
+        return active.sequence;
+    }
+
+    /**
+     * 全セグメントの有効なレコードを番号順に読み出します（起動時の再生用）。
+     * 読み出したレコードは反映待ちとして数えられます。
+     *
+     * @param consumer セグメント番号とレコード本体ごとの処理
+     */
+    public synchronized void replay(BiConsumer<Long, ByteBuffer> consumer) {
+        for (Segment segment : segments.values().toArray(new Segment[0])) {
+            if (segment == active) {
+                continue;
+            }
+            segment.journal.replay(record -> {
+                segment.outstanding++;
+                consumer.accept(segment.sequence, record);
+            });
+            releaseIfCommitted(segment);
+        }
+    }
+
+    /**
+     * レコード1件のDBへの反映完了を記録し、反映が完了したセグメントを削除します。
+     *
+     * @param sequence レコードを追記したセグメントの番号
+     */
+    public synchronized void markCommitted(long sequence) {
+        Segment segment = segments.get(sequence);
+        if (segment != null) {
+            segment.outstanding--;
+            releaseIfCommitted(segment);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.journal.close();
+        }
+        segments.clear();
+    }
+
+    /**
+     * 次の番号のセグメントを作成して書き込み用に切り替えます。
+     */
+    private void roll() throws IOException {
+        long sequence = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path file = directory.resolve(prefix + "-" + String.format("%019d", sequence) + SEGMENT_SUFFIX);
+        active = new Segment(sequence, file, new MappedJournal(file, segmentBytes, syncOnAppend));
+        segments.put(sequence, active);
+    }
+
+    /**
+     * 切り替え済みで反映待ちのレコードがないセグメントを削除します。
+     */
+    private void releaseIfCommitted(Segment segment) {
+        if (!segment.sealed || segment.outstanding > 0) {
+            return;
+        }
+        try {
+            segment.journal.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            return; // 次回起動時の再生で反映済みと判定されるため、削除できなくても問題ない
+        }
+        segments.remove(segment.sequence);
+    }
+
+    /**
+     * ジャーナルのセグメント1つ分。
+     */
+    private static class Segment {
+
+        private final long sequence;
+
+        private final Path path;
+
+        private final MappedJournal journal;
+
+        /**
+         * DBへの反映待ちのレコード件数
+         */
+        private int outstanding;
+
+        /**
+         * 書き込み用から切り替え済みか
+         */
+        private boolean sealed;
+
+        private Segment(long sequence, Path path, MappedJournal journal) {
+            this.sequence = sequence;
+            this.path = path;
+            this.journal = journal;
+        }
+    }
+}
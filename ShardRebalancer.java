@@ -0,0 +1,252 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ConsistentHashRing;
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.config.ShardRoutingDataSource;
+import com.example.loyaltyprogram.config.ShardingProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * ShardRebalancer
+ * シャード構成（リング）の変更に合わせて、担当シャードが変わるユーザーのデータを移動するツール。
+ * 起動時に loyalty.sharding.rebalance-to にシャード名を指定すると、そのシャード構成へ再配置します。
+ *
+ * 1ユーザーずつ、再配置用のロックを取得して移動先へコピーし、振り分け先を移動先に固定します。
+ * 全ユーザーのコピー後にリングを切り替え、移動元に残ったデータを削除します。
+ * ポイント履歴のIDは移動先で採番し直すため、履歴IDを基準とする残高のスナップショットはコピーせず、
+ * 移動先で参照時に作り直します（移動元の履歴IDのままでは別の履歴を指してしまうため）。
+ * ロックと振り分け先の固定はこのJVM内でのみ有効なため、複数ノード構成では他のノードを停止してから実行し、
+ * 完了後に loyalty.sharding.ring を新しい構成に更新してください。
+ */
+@Service
+@ConditionalOnProperty(name = "loyalty.sharding.enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    /**
+     * ユーザー単位で移動するテーブル（コピーは先頭から、削除は末尾から行う）
+     */
+    private static final List<UserTable> USER_TABLES = Arrays.asList(
+            new UserTable("users", "id", true, true),
+            new UserTable("points", "user_id", false, true),
+            new UserTable("stages", "user_id", false, true),
+            new UserTable("point_history", "user_id", false, true),
+            new UserTable("point_snapshots", "user_id", false, false),
+            new UserTable("benefit_applications", "user_id", false, true),
+            new UserTable("idempotency_keys", "user_id", false, true));
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private ShardingProperties shardingProperties;
+
+    @Value("${loyalty.sharding.rebalance-to:}")
+    private List<String> rebalanceTo;
+
+    /**
+     * 起動時に再配置先のシャード構成が指定されている場合、再配置を実行します。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebalanceOnStartup() {
+        if (rebalanceTo != null && !rebalanceTo.isEmpty()) {
+            rebalance(rebalanceTo);
+        }
+    }
+
+    /**
+     * 指定したシャード構成へユーザーを再配置します。
+     *
+     * @param targetShardNames 再配置後にユーザーを割り当てるシャード名
+     * @return 移動したユーザー数
+     */
+    public synchronized int rebalance(List<String> targetShardNames) {
+        ConsistentHashRing currentRing = shardRouter.getRing();
+        ConsistentHashRing targetRing = shardRouter.newRing(targetShardNames);
+        for (String shard : targetShardNames) {
+            shardRoutingDataSource.getShardDataSource(shard); // 接続情報のないシャードは開始前にエラーにする
+        }
+        logger.info("シャードの再配置を開始します: {} -> {}", currentRing.getShardNames(), targetShardNames);
+
+        // 1. 担当シャードが変わるユーザーを移動先へコピー
+        int movedCount = 0;
+        for (String source : currentRing.getShardNames()) {
+            JdbcTemplate sourceJdbc = listingJdbcTemplateFor(source);
+            String lastUserId = "";
+            List<String> userIds;
+            while (!(userIds = nextUserIds(sourceJdbc, lastUserId)).isEmpty()) {
+                for (String userId : userIds) {
+                    String target = targetRing.shardFor(userId);
+                    if (!target.equals(source)) {
+                        moveUser(userId, source, target);
+                        movedCount++;
+                    }
+                }
+                lastUserId = userIds.get(userIds.size() - 1);
+                logger.info("シャードの再配置を処理中: シャード={} 処理済みユーザーID={} 移動件数={}", source, lastUserId, movedCount);
+            }
+        }
+
+        // 2. リングを切り替え（以降はコピー済みのユーザーも新しいリングで振り分けられる）
+        shardRouter.switchRing(targetRing);
+
+        // 3. 移動元に残ったデータを削除
+        for (String source : currentRing.getShardNames()) {
+            deleteMovedUsers(source, targetRing);
+        }
+        logger.info("シャードの再配置が完了しました: 移動したユーザー数={} 新しい構成={}", movedCount, targetShardNames);
+        return movedCount;
+    }
+
+    /**
+     * 1ユーザー分のデータを移動先へコピーし、振り分け先を移動先に固定します。
+     * コピー中はユーザーの処理を待たせるため、コピー後に移動元のデータが更新されることはありません。
+     */
+    private void moveUser(String userId, String source, String target) {
+        JdbcTemplate sourceJdbc = jdbcTemplateFor(source);
+        JdbcTemplate targetJdbc = jdbcTemplateFor(target);
+        Lock lock = shardRouter.migrationLockFor(userId).writeLock();
+        lock.lock();
+        try {
+            Map<UserTable, List<Map<String, Object>>> rowsByTable = new LinkedHashMap<>();
+            for (UserTable table : USER_TABLES) {
+                if (!table.copied) {
+                    continue; // 移動先では作り直す（移動元でも削除される）
+                }
+                rowsByTable.put(table, sourceJdbc.queryForList(
+                        "SELECT * FROM " + table.name + " WHERE " + table.userColumn + " = ?", userId));
+            }
+            transactionTemplateFor(target).executeWithoutResult(status -> {
+                deleteUser(targetJdbc, userId); // 前回中断した再配置の残りを削除してからコピーする
+                rowsByTable.forEach((table, rows) -> insertRows(targetJdbc, table, rows));
+            });
+            shardRouter.pinUser(userId, target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 新しいリングで別のシャードに割り当てられたユーザーのデータを移動元から削除。
+     */
+    private void deleteMovedUsers(String source, ConsistentHashRing targetRing) {
+        JdbcTemplate listingJdbc = listingJdbcTemplateFor(source);
+        JdbcTemplate sourceJdbc = jdbcTemplateFor(source);
+        TransactionTemplate sourceTransaction = transactionTemplateFor(source);
+        String lastUserId = "";
+        List<String> userIds;
+        while (!(userIds = nextUserIds(listingJdbc, lastUserId)).isEmpty()) {
+            List<String> movedUserIds = new ArrayList<>();
+            for (String userId : userIds) {
+                if (!targetRing.shardFor(userId).equals(source)) {
+                    movedUserIds.add(userId);
+                }
+            }
+            sourceTransaction.executeWithoutResult(status -> movedUserIds.forEach(userId -> deleteUser(sourceJdbc, userId)));
+            lastUserId = userIds.get(userIds.size() - 1);
+        }
+    }
+
+    private void deleteUser(JdbcTemplate jdbcTemplate, String userId) {
+        List<UserTable> reversed = new ArrayList<>(USER_TABLES);
+        Collections.reverse(reversed); // 参照元のテーブルから削除する
+        for (UserTable table : reversed) {
+            jdbcTemplate.update("DELETE FROM " + table.name + " WHERE " + table.userColumn + " = ?", userId);
+        }
+    }
+
+    private void insertRows(JdbcTemplate jdbcTemplate, UserTable table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>();
+        for (String column : rows.get(0).keySet()) {
+            if (table.keepId || !column.equalsIgnoreCase("id")) {
+                columns.add(column); // サロゲートキーは移動先で採番する
+            }
+        }
+        String sql = "INSERT INTO " + table.name + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        List<Object[]> batchArgs = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Object[] args = new Object[columns.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = row.get(columns.get(i));
+            }
+            batchArgs.add(args);
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    private List<String> nextUserIds(JdbcTemplate jdbcTemplate, String afterUserId) {
+        return jdbcTemplate.queryForList("SELECT id FROM users WHERE id > ? ORDER BY id", String.class, afterUserId);
+    }
+
+    private JdbcTemplate jdbcTemplateFor(String shard) {
+        return new JdbcTemplate(shardRoutingDataSource.getShardDataSource(shard));
+    }
+
+    /**
+     * ユーザーIDの読み込み用（1回の読み込み件数を制限）。
+     */
+    private JdbcTemplate listingJdbcTemplateFor(String shard) {
+        JdbcTemplate jdbcTemplate = jdbcTemplateFor(shard);
+        jdbcTemplate.setMaxRows(shardingProperties.getRebalanceBatchSize());
+        return jdbcTemplate;
+    }
+
+    private TransactionTemplate transactionTemplateFor(String shard) {
+        DataSource dataSource = shardRoutingDataSource.getShardDataSource(shard);
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    /**
+     * ユーザー単位で移動するテーブル。
+     */
+    private static final class UserTable {
+
+        private final String name;
+
+        private final String userColumn;
+
+        /**
+         * 主キーの値をそのままコピーするか（ユーザーIDが主キーのテーブル）
+         */
+        private final boolean keepId;
+
+        /**
+         * 移動先へコピーするか（falseの場合は削除のみ行う）
+         */
+        private final boolean copied;
+
+        private UserTable(String name, String userColumn, boolean keepId, boolean copied) {
+            this.name = name;
+            this.userColumn = userColumn;
+            this.keepId = keepId;
+            this.copied = copied;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ConsistentHashRing;
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.config.ShardRoutingDataSource;
+import com.example.loyaltyprogram.config.ShardingProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ShardRebalancerTest
+ * シャードの再配置で移動したユーザーの残高（スナップショット + 以降の履歴の合計）が変わらないことを検証するテスト。
+ * 移動先ではポイント履歴のIDが採番し直されるため、移動先のIDを先に進めておき、移動元と異なるIDになるようにしています。
+ */
+class ShardRebalancerTest {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE users (id VARCHAR(64) PRIMARY KEY)",
+            "CREATE TABLE points (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64), balance INT)",
+            "CREATE TABLE stages (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64), stage_name VARCHAR(32))",
+            "CREATE TABLE point_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64), change_quantity INT)",
+            "CREATE TABLE point_snapshots (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64), last_history_id BIGINT, balance INT)",
+            "CREATE TABLE benefit_applications (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64))",
+            "CREATE TABLE idempotency_keys (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(64))"
+    };
+
+    private EmbeddedDatabase shardA;
+
+    private EmbeddedDatabase shardB;
+
+    private ShardRebalancer shardRebalancer;
+
+    @BeforeEach
+    void setUp() {
+        shardA = createShard("shard-a");
+        shardB = createShard("shard-b");
+        ShardRoutingDataSource shardRoutingDataSource = mock(ShardRoutingDataSource.class);
+        when(shardRoutingDataSource.getShardDataSource("a")).thenReturn(shardA);
+        when(shardRoutingDataSource.getShardDataSource("b")).thenReturn(shardB);
+        ShardingProperties shardingProperties = mock(ShardingProperties.class);
+        when(shardingProperties.getRebalanceBatchSize()).thenReturn(100);
+
+        shardRebalancer = new ShardRebalancer();
+        ReflectionTestUtils.setField(shardRebalancer, "shardRouter", new ShardRouter(List.of("a", "b"), List.of("a"), 16));
+        ReflectionTestUtils.setField(shardRebalancer, "shardRoutingDataSource", shardRoutingDataSource);
+        ReflectionTestUtils.setField(shardRebalancer, "shardingProperties", shardingProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardA.shutdown();
+        shardB.shutdown();
+    }
+
+    @Test
+    void movedUserKeepsBalanceWithSnapshot() {
+        String userId = userAssignedTo("b", new ConsistentHashRing(List.of("a", "b"), 16));
+        JdbcTemplate source = new JdbcTemplate(shardA);
+        JdbcTemplate target = new JdbcTemplate(shardB);
+        // 移動先の履歴IDを進めておく（移動元のIDと重ならないようにする）
+        target.update("INSERT INTO users (id) VALUES ('other')");
+        for (int i = 0; i < 5; i++) {
+            target.update("INSERT INTO point_history (user_id, change_quantity) VALUES ('other', 1)");
+        }
+        source.update("INSERT INTO users (id) VALUES (?)", userId);
+        source.update("INSERT INTO point_history (user_id, change_quantity) VALUES (?, 100)", userId);
+        source.update("INSERT INTO point_history (user_id, change_quantity) VALUES (?, 50)", userId);
+        long snapshotUpTo = source.queryForObject("SELECT MAX(id) FROM point_history WHERE user_id = ?", Long.class, userId);
+        source.update("INSERT INTO point_snapshots (user_id, last_history_id, balance) VALUES (?, ?, 150)", userId, snapshotUpTo);
+        source.update("INSERT INTO point_history (user_id, change_quantity) VALUES (?, -30)", userId);
+        int balanceBefore = balanceOf(source, userId);
+
+        int moved = shardRebalancer.rebalance(List.of("a", "b"));
+
+        assertEquals(1, moved);
+        assertEquals(120, balanceBefore);
+        assertEquals(balanceBefore, balanceOf(target, userId), "移動後の残高が変わりました");
+        assertEquals(0, source.queryForObject("SELECT COUNT(*) FROM point_history WHERE user_id = ?", Integer.class, userId));
+    }
+
+    /**
+     * PointSnapshotService と同じ方法（最新のスナップショット + 以降の履歴の合計）で残高を算出。
+     */
+    private int balanceOf(JdbcTemplate jdbcTemplate, String userId) {
+        List<Map<String, Object>> snapshots = jdbcTemplate.queryForList(
+                "SELECT last_history_id, balance FROM point_snapshots WHERE user_id = ? ORDER BY last_history_id DESC", userId);
+        long afterId = snapshots.isEmpty() ? 0 : ((Number) snapshots.get(0).get("last_history_id")).longValue();
+        int baseBalance = snapshots.isEmpty() ? 0 : ((Number) snapshots.get(0).get("balance")).intValue();
+        Integer tail = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(change_quantity), 0) FROM point_history WHERE user_id = ? AND id > ?",
+                Integer.class, userId, afterId);
+        return baseBalance + tail;
+    }
+
+    private static String userAssignedTo(String shard, ConsistentHashRing ring) {
+        for (int i = 0; ; i++) {
+            String userId = "user-" + i;
+            if (ring.shardFor(userId).equals(shard)) {
+                return userId;
+            }
+        }
+    }
+
+    private static EmbeddedDatabase createShard(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        for (String ddl : SCHEMA) {
+            jdbcTemplate.execute(ddl);
+        }
+        return database;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.loyaltyprogram.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ShardRouter
+ * ユーザーIDから振り分け先のシャードを決定し、シャードを指定して処理を実行するためのクラス。
+ * シャード分割が無効の場合はシャードが1つだけの構成として動作するため、呼び出し側は構成を意識せずに使用できます。
+ *
+ * 再配置（ShardRebalancer）中のユーザーの処理は、ユーザー単位のストライプの読み取りロックを保持して実行します。
+ * 再配置はユーザーのデータを移動する間だけ書き込みロックを取得するため、移動中の更新が移動元に残ることはありません。
+ */
+public class ShardRouter {
+
+    private static final int MIGRATION_LOCK_STRIPES = 256;
+
+    /**
+     * 接続可能な全シャード名（先頭が既定のシャード）
+     */
+    private final List<String> allShardNames;
+
+    private final String defaultShard;
+
+    private final int virtualNodes;
+
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * 再配置でリングの切り替え前に移動を終えたユーザーの移動先
+     */
+    private final Map<String, String> movedUsers = new ConcurrentHashMap<>();
+
+    private final ReentrantReadWriteLock[] migrationLocks = new ReentrantReadWriteLock[MIGRATION_LOCK_STRIPES];
+
+    public ShardRouter(List<String> allShardNames, List<String> ringShardNames, int virtualNodes) {
+        this.allShardNames = Collections.unmodifiableList(new ArrayList<>(allShardNames));
+        this.defaultShard = allShardNames.get(0);
+        this.virtualNodes = virtualNodes;
+        this.ring = new ConsistentHashRing(ringShardNames, virtualNodes);
+        for (int i = 0; i < MIGRATION_LOCK_STRIPES; i++) {
+            migrationLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * ユーザーIDが割り当てられたシャード名を取得。
+     *
+     * @param userId ユーザーID
+     * @return シャード名
+     */
+    public String shardFor(String userId) {
+        String moved = movedUsers.get(userId);
+        return (moved != null) ? moved : ring.shardFor(userId);
+    }
+
+    /**
+     * 接続可能な全シャード名を取得。
+     *
+     * @return シャード名のリスト（先頭が既定のシャード）
+     */
+    public List<String> getShardNames() {
+        return allShardNames;
+    }
+
+    /**
+     * ユーザーに依存しない処理（特典カタログの参照など）の既定のシャード名を取得。
+     *
+     * @return シャード名
+     */
+    public String getDefaultShard() {
+        return defaultShard;
+    }
+
+    /**
+     * 現在のリングを取得（再配置の計画用）。
+     *
+     * @return リング
+     */
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * 指定したシャード構成のリングを作成（仮想ノード数は現在の設定と同じ）。
+     *
+     * @param shardNames シャード名のリスト
+     * @return リング
+     */
+    public ConsistentHashRing newRing(List<String> shardNames) {
+        return new ConsistentHashRing(shardNames, virtualNodes);
+    }
+
+    /**
+     * ユーザーのシャードで処理を実行（再配置中のユーザーは移動の完了を待ってから実行）。
+     *
+     * @param userId ユーザーID
+     * @param action 実行する処理
+     * @return 処理結果
+     */
+    public <T> T callForUser(String userId, Supplier<T> action) {
+        ReentrantReadWriteLock.ReadLock lock = migrationLockFor(userId).readLock();
+        lock.lock();
+        try {
+            return UserRoutingContext.callWith(userId, shardFor(userId), action);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定したシャードで処理を実行。
+     *
+     * @param shard  シャード名
+     * @param action 実行する処理
+     * @return 処理結果
+     */
+    public <T> T callOnShard(String shard, Supplier<T> action) {
+        return UserRoutingContext.callWith(null, shard, action);
+    }
+
+    /**
+     * 接続可能な全シャードで順に処理を実行（シャードごとに集計するバッチ処理・特典カタログの更新用）。
+     *
+     * @param action シャード名を受け取る処理
+     */
+    public void forEachShard(Consumer<String> action) {
+        for (String shard : allShardNames) {
+            callOnShard(shard, () -> {
+                action.accept(shard);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 複数ユーザーの値をシャードごとに分けて、シャードごとに処理を実行（一括更新用）。
+     * 処理中は対象ユーザーの再配置を待たせます。
+     *
+     * @param valuesByUser ユーザーIDごとの値
+     * @param action       シャード名とそのシャードのユーザーの値を受け取る処理
+     */
+    public <V> void forEachShardOf(Map<String, V> valuesByUser, BiConsumer<String, Map<String, V>> action) {
+        Map<String, Map<String, V>> byShard = new LinkedHashMap<>();
+        for (Map.Entry<String, V> entry : valuesByUser.entrySet()) {
+            byShard.computeIfAbsent(shardFor(entry.getKey()), shard -> new LinkedHashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Map<String, V>> group : byShard.entrySet()) {
+            List<ReentrantReadWriteLock.ReadLock> locks = readLocksFor(group.getValue().keySet());
+            locks.forEach(ReentrantReadWriteLock.ReadLock::lock);
+            try {
+                callOnShard(group.getKey(), () -> {
+                    action.accept(group.getKey(), group.getValue());
+                    return null;
+                });
+            } finally {
+                locks.forEach(ReentrantReadWriteLock.ReadLock::unlock);
+            }
+        }
+    }
+
+    /**
+     * ユーザーの再配置用のロックを取得（ShardRebalancer 用）。
+     *
+     * @param userId ユーザーID
+     * @return ユーザーIDに割り当てられたロック
+     */
+    public ReentrantReadWriteLock migrationLockFor(String userId) {
+        return migrationLocks[stripeOf(userId)];
+    }
+
+    /**
+     * 移動を終えたユーザーの振り分け先を、リングの切り替えまで移動先に固定します（ShardRebalancer 用）。
+     *
+     * @param userId ユーザーID
+     * @param shard  移動先のシャード名
+     */
+    public void pinUser(String userId, String shard) {
+        movedUsers.put(userId, shard);
+    }
+
+    /**
+     * リングを切り替え、移動先の固定を解除します（ShardRebalancer 用）。
+     *
+     * @param newRing 新しいリング
+     */
+    public void switchRing(ConsistentHashRing newRing) {
+        this.ring = newRing;
+        movedUsers.clear();
+    }
+
+    /**
+     * ユーザーのストライプの読み取りロックを、ストライプ番号の昇順に取得（ロック順を固定してデッドロックを防ぐ）。
+     */
+    private List<ReentrantReadWriteLock.ReadLock> readLocksFor(Collection<String> userIds) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String userId : userIds) {
+            stripes.add(stripeOf(userId));
+        }
+        List<ReentrantReadWriteLock.ReadLock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            locks.add(migrationLocks[stripe].readLock());
+        }
+        return locks;
+    }
+
+    private int stripeOf(String userId) {
+        int hash = userId.hashCode();
+        hash ^= (hash >>> 16); // 下位ビットに上位ビットを混ぜて偏りを抑える
+        return hash & (MIGRATION_LOCK_STRIPES - 1);
+    }
+}
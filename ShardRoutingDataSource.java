@@ -0,0 +1,41 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * ShardRoutingDataSource
+ * UserRoutingContext のシャードに応じてDB接続の取得先を切り替えるデータソース。
+ * 振り分け先が未設定の処理（特典カタログの参照など）は既定のシャードに接続します。
+ * 接続はトランザクション開始時に取得されるため、振り分け先はトランザクションより先に設定してください。
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public ShardRoutingDataSource(Map<Object, Object> shardDataSources, DataSource defaultDataSource) {
+        setTargetDataSources(shardDataSources);
+        setDefaultTargetDataSource(defaultDataSource);
+        setLenientFallback(false); // 未知のシャード名は既定のシャードに流さずエラーにする
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return UserRoutingContext.currentShard();
+    }
+
+    /**
+     * シャードのデータソースを取得（シャード間でデータを移動する処理用）。
+     *
+     * @param shard シャード名
+     * @return データソース
+     * @throws IllegalArgumentException シャードが存在しない場合
+     */
+    public DataSource getShardDataSource(String shard) {
+        DataSource dataSource = getResolvedDataSources().get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("シャードが設定されていません: " + shard);
+        }
+        return dataSource;
+    }
+}
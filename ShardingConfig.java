@@ -0,0 +1,69 @@
+package com.example.loyaltyprogram.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ShardingConfig
+ * ユーザーIDによるシャード分割の設定クラス。
+ * loyalty.sharding.enabled=true の場合、シャードごとのコネクションプールを作成し、
+ * ShardRoutingDataSource をアプリケーションのデータソースとして登録します。
+ * 無効の場合は既定のデータソースを使用し、ShardRouter はシャードが1つだけの構成として動作します。
+ * 特典カタログなどユーザーに依存しないテーブルは全シャードに同じ内容を保持します（更新は全シャードへ反映）。
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    /**
+     * シャード分割が無効の場合のシャード名
+     */
+    public static final String SINGLE_SHARD = "default";
+
+    @Bean
+    public ShardRouter shardRouter(ShardingProperties properties) {
+        if (!properties.isEnabled()) {
+            List<String> single = Collections.singletonList(SINGLE_SHARD);
+            return new ShardRouter(single, single, 1);
+        }
+        List<String> shardNames = new ArrayList<>();
+        for (DatabaseEndpoint shard : properties.getShards()) {
+            shardNames.add(shard.getName());
+        }
+        if (shardNames.isEmpty()) {
+            throw new IllegalStateException("loyalty.sharding.shards が設定されていません");
+        }
+        List<String> ringShardNames = properties.getRing().isEmpty() ? shardNames : properties.getRing();
+        if (!shardNames.containsAll(ringShardNames)) {
+            throw new IllegalStateException("loyalty.sharding.ring に接続情報のないシャードが含まれています: " + ringShardNames);
+        }
+        return new ShardRouter(shardNames, ringShardNames, properties.getVirtualNodes());
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "loyalty.sharding.enabled", havingValue = "true")
+    public ShardRoutingDataSource shardRoutingDataSource(ShardingProperties properties) {
+        Map<Object, Object> dataSources = new LinkedHashMap<>();
+        DataSource defaultDataSource = null;
+        for (DatabaseEndpoint shard : properties.getShards()) {
+            HikariDataSource dataSource = shard.createDataSource("loyalty-shard-" + shard.getName());
+            dataSources.put(shard.getName(), dataSource);
+            if (defaultDataSource == null) {
+                defaultDataSource = dataSource;
+            }
+        }
+        return new ShardRoutingDataSource(dataSources, defaultDataSource);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.loyaltyprogram.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ShardingProperties
+ * ユーザーIDによるシャード分割の設定（loyalty.sharding.*）。
+ * shards には接続可能な全シャードを、ring にはユーザーを割り当てるシャード名を指定します。
+ * ring を省略した場合は shards の全てにユーザーを割り当てます。
+ */
+@ConfigurationProperties(prefix = "loyalty.sharding")
+public class ShardingProperties {
+
+    // --- フィールド定義 ---
+
+    /**
+     * シャード分割を有効にするか（無効の場合は単一のDBを使用）
+     */
+    private boolean enabled;
+
+    /**
+     * 1シャードあたりの仮想ノード数
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * シャードの接続情報（先頭のシャードをユーザーに依存しない処理の既定の接続先とする）
+     */
+    private List<DatabaseEndpoint> shards = new ArrayList<>();
+
+    /**
+     * ユーザーを割り当てるシャード名（省略時は全シャード）
+     */
+    private List<String> ring = new ArrayList<>();
+
+    /**
+     * 再配置時のユーザーIDの読み込み件数
+     */
+    private int rebalanceBatchSize = 1000;
+
+    // --- Getter / Setter ---
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public List<DatabaseEndpoint> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<DatabaseEndpoint> shards) {
+        this.shards = shards;
+    }
+
+    public List<String> getRing() {
+        return ring;
+    }
+
+    public void setRing(List<String> ring) {
+        this.ring = ring;
+    }
+
+    public int getRebalanceBatchSize() {
+        return rebalanceBatchSize;
+    }
+
+    public void setRebalanceBatchSize(int rebalanceBatchSize) {
+        this.rebalanceBatchSize = rebalanceBatchSize;
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.LoyaltyCacheConfig;
+import com.example.loyaltyprogram.model.Benefit;
+import com.example.loyaltyprogram.model.Stage;
+import com.example.loyaltyprogram.repository.BenefitRepository;
+import com.example.loyaltyprogram.repository.StageRepository;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * StageBenefitCache
+ * ステージ情報と特典カタログの読み取りキャッシュ。
+ * 参照はキャッシュ経由で行い、ステージ・特典の保存時に該当エントリを無効化します（コミット後に無効化）。
+ * ステージ情報はエンティティの複製をキャッシュし、参照のたびに別の複製を返すため、
+ * 呼び出し側での変更がキャッシュや他のスレッドから見えることはありません。
+ * 読み取りトランザクションでの登録もコミット後に行うため、その間に更新のコミットと無効化が入ると、
+ * 読み込んだ古い行を無効化の後に登録してしまいます。これを防ぐため、無効化の世代番号
+ * （ステージ情報はユーザーIDのストライプ単位、特典カタログは全体で1つ）を保持し、
+ * 読み込み前と登録時で世代番号が変わっていた場合は登録しません。
+ * 世代番号は更新の開始時とコミット後の無効化時の両方で進め、登録時の確認と無効化は同じロックの下で行います。
+ * 世代番号はノード内でのみ有効です（キャッシュ自体もノードごとに保持しています）。
+ */
+@Component
+public class StageBenefitCache {
+
+    /**
+     * ステージ情報の世代番号のストライプ数（2のべき乗）
+     */
+    private static final int STAGE_EPOCH_STRIPES = 1024;
+
+    /**
+     * 特典カタログの世代番号のインデックス（ステージ情報のストライプの後ろ）
+     */
+    private static final int CATALOG_EPOCH = STAGE_EPOCH_STRIPES;
+
+    /**
+     * 無効化の世代番号（同じインデックスのロックで保護）
+     */
+    private final long[] epochs = new long[STAGE_EPOCH_STRIPES + 1];
+
+    private final Object[] epochLocks = new Object[STAGE_EPOCH_STRIPES + 1];
+
+    {
+        for (int i = 0; i < epochLocks.length; i++) {
+            epochLocks[i] = new Object();
+        }
+    }
+
+    @Autowired
+    private StageRepository stageRepository;
+
+    @Autowired
+    private BenefitRepository benefitRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * ユーザーの現在のステージ情報を取得（キャッシュ経由）。
+     * 返却するステージ情報は呼び出しごとの複製のため、変更しても保存しない限りどこにも反映されません。
+     *
+     * @param userId ユーザーID
+     * @return 現在のステージ情報（存在しない場合はnull）
+     */
+    public Stage findStageByUserId(String userId) {
+        Cache cache = targetCache(LoyaltyCacheConfig.STAGE_CACHE);
+        Stage cached = cache.get(userId, Stage.class);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+        int stripe = stageStripeOf(userId);
+        long epoch = currentEpoch(stripe); // 読み込み前の世代番号
+        Stage stage = stageRepository.findByUserId(userId);
+        if (stage != null) {
+            Stage copy = copyOf(stage);
+            afterCommit(() -> putIfNotInvalidated(cache, userId, copy, stripe, epoch));
+        }
+        return stage;
+    }
+
+    /**
+     * ユーザーの現在のステージ情報をキャッシュを経由せずに取得（更新前の読み込み用）。
+     *
+     * @param userId ユーザーID
+     * @return 現在のステージ情報（存在しない場合はnull）
+     */
+    public Stage loadStageForUpdate(String userId) {
+        return stageRepository.findByUserId(userId);
+    }
+
+    /**
+     * ステージ情報を保存し、ユーザーのキャッシュを無効化（トランザクション内ではコミット後に無効化）。
+     *
+     * @param userId ユーザーID
+     * @param stage  保存するステージ情報
+     * @return 保存後のステージ情報
+     */
+    public Stage saveStage(String userId, Stage stage) {
+        advanceEpoch(stageStripeOf(userId)); // 実行中の読み取りが古い行を登録しないようにする
+        Stage saved = stageRepository.save(stage);
+        evictStage(userId);
+        return saved;
+    }
+
+    /**
+     * ユーザーのステージ情報のキャッシュを無効化（トランザクション内ではコミット後に無効化）。
+     *
+     * @param userId ユーザーID
+     */
+    public void evictStage(String userId) {
+        Cache cache = targetCache(LoyaltyCacheConfig.STAGE_CACHE);
+        int stripe = stageStripeOf(userId);
+        advanceEpoch(stripe);
+        afterCommit(() -> invalidate(stripe, () -> cache.evict(userId)));
+    }
+
+    /**
+     * 特典カタログの全件を取得（キャッシュ経由）。
+     *
+     * @return 特典のリスト
+     */
+    @SuppressWarnings("unchecked")
+    public List<Benefit> findAllBenefits() {
+        Cache cache = targetCache(LoyaltyCacheConfig.BENEFIT_CATALOG_CACHE);
+        List<Benefit> cached = cache.get("all", List.class);
+        if (cached != null) {
+            return cached;
+        }
+        long epoch = currentEpoch(CATALOG_EPOCH);
+        List<Benefit> benefits = List.copyOf(benefitRepository.findAll()); // キャッシュしたリストを呼び出し側で変更させない
+        afterCommit(() -> putIfNotInvalidated(cache, "all", benefits, CATALOG_EPOCH, epoch));
+        return benefits;
+    }
+
+    /**
+     * 特典IDで特典を取得（キャッシュ経由）。
+     *
+     * @param benefitId 特典ID
+     * @return 特典（存在しない場合はnull）
+     */
+    public Benefit findBenefitById(Long benefitId) {
+        Cache cache = targetCache(LoyaltyCacheConfig.BENEFIT_CATALOG_CACHE);
+        Benefit cached = cache.get(benefitId, Benefit.class);
+        if (cached != null) {
+            return cached;
+        }
+        long epoch = currentEpoch(CATALOG_EPOCH);
+        Benefit benefit = benefitRepository.findById(benefitId).orElse(null);
+        if (benefit != null) {
+            afterCommit(() -> putIfNotInvalidated(cache, benefitId, benefit, CATALOG_EPOCH, epoch));
+        }
+        return benefit;
+    }
+
+    /**
+     * 特典を保存し、特典カタログのキャッシュを全て無効化（トランザクション内ではコミット後に無効化）。
+     *
+     * @param benefit 保存する特典
+     * @return 保存後の特典
+     */
+    public Benefit saveBenefit(Benefit benefit) {
+        Cache cache = targetCache(LoyaltyCacheConfig.BENEFIT_CATALOG_CACHE);
+        advanceEpoch(CATALOG_EPOCH);
+        Benefit saved = benefitRepository.save(benefit);
+        afterCommit(() -> invalidate(CATALOG_EPOCH, cache::clear));
+        return saved;
+    }
+
+    /**
+     * キャッシュを取得（トランザクション連動のラッパーを外し、登録・無効化のタイミングはこのクラスで制御する）。
+     *
+     * @param cacheName キャッシュ名
+     * @return キャッシュ
+     */
+    private Cache targetCache(String cacheName) {
+        Cache cache = cacheManager.getCache(cacheName);
+        return cache instanceof TransactionAwareCacheDecorator decorator ? decorator.getTargetCache() : cache;
+    }
+
+    /**
+     * トランザクション内ではコミット後に、トランザクション外では即時に処理を実行。
+     *
+     * @param action 実行する処理
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private long currentEpoch(int index) {
+        synchronized (epochLocks[index]) {
+            return epochs[index];
+        }
+    }
+
+    private void advanceEpoch(int index) {
+        synchronized (epochLocks[index]) {
+            epochs[index]++;
+        }
+    }
+
+    /**
+     * 読み込み前から世代番号が変わっていない場合のみ、キャッシュに登録。
+     *
+     * @param cache キャッシュ
+     * @param key   キー
+     * @param value 登録する値
+     * @param index 世代番号のインデックス
+     * @param epoch 読み込み前の世代番号
+     */
+    private void putIfNotInvalidated(Cache cache, Object key, Object value, int index, long epoch) {
+        synchronized (epochLocks[index]) {
+            if (epochs[index] == epoch) {
+                cache.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * 世代番号を進めてからキャッシュを無効化。
+     *
+     * @param index    世代番号のインデックス
+     * @param eviction 無効化の処理
+     */
+    private void invalidate(int index, Runnable eviction) {
+        synchronized (epochLocks[index]) {
+            epochs[index]++;
+            eviction.run();
+        }
+    }
+
+    private static int stageStripeOf(String userId) {
+        int hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (STAGE_EPOCH_STRIPES - 1);
+    }
+
+    /**
+     * ステージ情報の複製を作成。
+     *
+     * @param stage 複製元のステージ情報
+     * @return 複製したステージ情報
+     */
+    private static Stage copyOf(Stage stage) {
+        Stage copy = new Stage();
+        BeanUtils.copyProperties(stage, copy);
+        return copy;
+    }
+}
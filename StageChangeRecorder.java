@@ -0,0 +1,40 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ReadYourWritesTracker;
+import com.example.loyaltyprogram.model.LoyaltyEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * StageChangeRecorder
+ * ステージ変更に伴う付随処理（イベント登録・メトリクス記録など）をまとめたコンポーネント。
+ * 個別のステージ更新と夜間の一括再計算の両方から呼び出し、どちらの経路でも同じ処理が行われるようにします。
+ */
+@Component
+public class StageChangeRecorder {
+
+    @Autowired
+    private LoyaltyEventPublisher loyaltyEventPublisher;
+
+    @Autowired
+    private LoyaltyMetrics loyaltyMetrics;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    /**
+     * ステージ変更を記録します（ステージを更新したトランザクション内で呼び出す）。
+     * イベントは同一トランザクションでアウトボックスに登録します。
+     *
+     * @param userId      ユーザーID
+     * @param fromStage   変更前のステージ名
+     * @param toStage     変更後のステージ名
+     * @param totalPoints 判定に使用したポイント合計
+     */
+    public void recordChange(String userId, String fromStage, String toStage, int totalPoints) {
+        loyaltyEventPublisher.publish(LoyaltyEvent.STAGE_CHANGED, userId,
+                LoyaltyEventPublisher.payload("from", fromStage, "to", toStage, "totalPoints", totalPoints));
+        readYourWritesTracker.recordWrite(userId);
+        loyaltyMetrics.recordStageTransition(fromStage, toStage);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * StageDefinitionEntity
+ * ロイヤルティステージの定義（ステージ名と必要ポイント数）を管理するデータモデル。
+ * キャンペーンに合わせたステージ構成の変更は、このテーブルを更新することで反映されます。
+ */
+@Entity
+@Table(name = "stage_definitions")
+public class StageDefinitionEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * ステージ定義識別子（主キー）
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * ステージ名（例: ゴールド会員, シルバー会員, ブロンズ会員）
+     */
+    @Column(name = "stage_name", nullable = false, unique = true)
+    private String stageName;
+
+    /**
+     * ステージに必要なポイント数（この値以上でステージ適用）
+     */
+    @Column(name = "required_points", nullable = false, unique = true)
+    private int requiredPoints;
+
+    /**
+     * ステージ定義の最終更新日時
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // --- コンストラクタ ---
+
+    public StageDefinitionEntity() {
+    }
+
+    public StageDefinitionEntity(String stageName, int requiredPoints) {
+        this.stageName = stageName;
+        this.requiredPoints = requiredPoints;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // --- Getter & Setter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getStageName() {
+        return stageName;
+    }
+
+    public void setStageName(String stageName) {
+        this.stageName = stageName;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public int getRequiredPoints() {
+        return requiredPoints;
+    }
+
+    public void setRequiredPoints(int requiredPoints) {
+        this.requiredPoints = requiredPoints;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
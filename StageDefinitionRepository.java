@@ -0,0 +1,22 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.StageDefinitionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * StageDefinitionRepository
+ * ステージ定義（stage_definitionsテーブル）を管理するリポジトリ。
+ */
+@Repository
+public interface StageDefinitionRepository extends JpaRepository<StageDefinitionEntity, Long> {
+
+    /**
+     * 全てのステージ定義を必要ポイント数の昇順で取得。
+     *
+     * @return ステージ定義のリスト
+     */
+    List<StageDefinitionEntity> findAllByOrderByRequiredPointsAsc();
+}
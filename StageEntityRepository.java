@@ -0,0 +1,108 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.StageEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * StageEntityRepository
+ * ステージ情報（stagesテーブル）を管理するリポジトリ。
+ * 全会員のステージ一括再計算で、ID範囲ごとの集計に使用します。
+ * 特典の一括適用では、対象ステージのユーザーをユーザーIDの順に取得します。
+ * ユーザー情報との関連は遅延読み込みのため、参照はプロジェクションで行い、ユーザーIDは外部キーの列から取得します（usersテーブルは結合しない）。
+ */
+@Repository
+public interface StageEntityRepository extends JpaRepository<StageEntity, Long> {
+
+    /**
+     * ステージIDの最小値を取得。
+     *
+     * @return 最小のステージID（データが存在しない場合はnull）
+     */
+    @Query("SELECT MIN(s.id) FROM StageEntity s")
+    Long findMinId();
+
+    /**
+     * ステージIDの最大値を取得。
+     *
+     * @return 最大のステージID（データが存在しない場合はnull）
+     */
+    @Query("SELECT MAX(s.id) FROM StageEntity s")
+    Long findMaxId();
+
+    /**
+     * ID範囲内の各ユーザーについて、ポイント履歴の合計を1回の集計クエリで取得。
+     *
+     * @param fromId 範囲の開始ステージID（含む）
+     * @param toId   範囲の終了ステージID（含む）
+     * @return ユーザーごとの現在のステージとポイント合計
+     */
+    @Query("SELECT s.id AS stageId, s.user.id AS userId, s.stageName AS stageName, " +
+            "COALESCE(SUM(h.changeQuantity), 0) AS totalPoints " +
+            "FROM StageEntity s LEFT JOIN PointHistory h ON h.userId = s.user.id " +
+            "WHERE s.id BETWEEN :fromId AND :toId " +
+            "GROUP BY s.id, s.user.id, s.stageName")
+    List<StagePointTotal> findPartitionHistoryTotals(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * ID範囲内の各ユーザーについて、ポイント残高（台帳モードの残高行）を取得。
+     * 残高行が存在しないユーザーは、0として降格させないよう、ポイント履歴の合計で代替します。
+     *
+     * @param fromId 範囲の開始ステージID（含む）
+     * @param toId   範囲の終了ステージID（含む）
+     * @return ユーザーごとの現在のステージとポイント残高
+     */
+    @Query("SELECT s.id AS stageId, s.user.id AS userId, s.stageName AS stageName, " +
+            "COALESCE(p.balance, (SELECT COALESCE(SUM(h.changeQuantity), 0) FROM PointHistory h " +
+            "WHERE h.userId = s.user.id)) AS totalPoints " +
+            "FROM StageEntity s LEFT JOIN PointEntity p ON p.user = s.user " +
+            "WHERE s.id BETWEEN :fromId AND :toId")
+    List<StagePointTotal> findPartitionBalances(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * 指定したステージのユーザーIDを、指定したユーザーIDより後から昇順に取得（キーセットページング）。
+     *
+     * @param stageNames  ステージ名のリスト
+     * @param afterUserId 前チャンクの最後のユーザーID（先頭から取得する場合は空文字）
+     * @param limit       取得件数
+     * @return ユーザーIDのリスト
+     */
+    @Query("SELECT s.user.id FROM StageEntity s " +
+            "WHERE s.stageName IN :stageNames AND s.user.id > :afterUserId " +
+            "ORDER BY s.user.id")
+    List<String> findUserIdsByStageNamesAfter(@Param("stageNames") Collection<String> stageNames,
+                                              @Param("afterUserId") String afterUserId, Pageable limit);
+
+    /**
+     * 指定したユーザーのうち、指定したステージに属するユーザーIDを1回のクエリで取得。
+     *
+     * @param stageNames ステージ名のリスト
+     * @param userIds    ユーザーIDのリスト
+     * @return 該当するユーザーIDのリスト（昇順）
+     */
+    @Query("SELECT s.user.id FROM StageEntity s " +
+            "WHERE s.stageName IN :stageNames AND s.user.id IN :userIds " +
+            "ORDER BY s.user.id")
+    List<String> findUserIdsInStages(@Param("stageNames") Collection<String> stageNames,
+                                     @Param("userIds") Collection<String> userIds);
+
+    /**
+     * ステージ再計算用の集計結果のプロジェクション。
+     */
+    interface StagePointTotal {
+
+        Long getStageId();
+
+        String getUserId();
+
+        String getStageName();
+
+        long getTotalPoints();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.loyaltyprogram.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * StageRecalcCheckpointEntity
+ * ステージ一括再計算の完了済みパーティションを記録するデータモデル。
+ * 同じ実行IDで再実行した場合、記録済みのパーティションは処理を省略します。
+ * パーティションはステージIDを分割幅で区切った固定の範囲で、分割幅は実行ごとに記録します。
+ */
+@Entity
+@Table(name = "stage_recalc_checkpoints",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"run_id", "partition_start"}))
+public class StageRecalcCheckpointEntity {
+
+    // --- フィールド定義 ---
+
+    /**
+     * チェックポイント識別子（主キー）
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 実行ID（例: 実行日）
+     */
+    @Column(name = "run_id", nullable = false)
+    private String runId;
+
+    /**
+     * パーティションの開始ステージID
+     */
+    @Column(name = "partition_start", nullable = false)
+    private long partitionStart;
+
+    /**
+     * パーティションの終了ステージID
+     */
+    @Column(name = "partition_end", nullable = false)
+    private long partitionEnd;
+
+    /**
+     * パーティションの分割幅（同じ実行IDの再実行では、設定値ではなく記録済みの分割幅を使用）
+     */
+    @Column(name = "partition_size", nullable = false)
+    private long partitionSize;
+
+    /**
+     * ステージが変更されたユーザー数
+     */
+    @Column(name = "changed_count", nullable = false)
+    private int changedCount;
+
+    /**
+     * パーティションの処理完了日時
+     */
+    @Column(name = "completed_at", nullable = false)
+    private LocalDateTime completedAt;
+
+    // --- コンストラクタ ---
+
+    public StageRecalcCheckpointEntity() {
+    }
+
+    public StageRecalcCheckpointEntity(String runId, long partitionStart, long partitionEnd, long partitionSize,
+                                       int changedCount) {
+        this.runId = runId;
+        this.partitionStart = partitionStart;
+        this.partitionEnd = partitionEnd;
+        this.partitionSize = partitionSize;
+        this.changedCount = changedCount;
+        this.completedAt = LocalDateTime.now();
+    }
+
+    // --- Getter ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public long getPartitionStart() {
+        return partitionStart;
+    }
+
+    public long getPartitionEnd() {
+        return partitionEnd;
+    }
+
+    public long getPartitionSize() {
+        return partitionSize;
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.loyaltyprogram.repository;
+
+import com.example.loyaltyprogram.model.StageRecalcCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * StageRecalcCheckpointRepository
+ * ステージ一括再計算のチェックポイントを管理するリポジトリ。
+ */
+@Repository
+public interface StageRecalcCheckpointRepository extends JpaRepository<StageRecalcCheckpointEntity, Long> {
+
+    /**
+     * 実行IDで処理完了済みのパーティション開始IDを取得。
+     *
+     * @param runId 実行ID
+     * @return 処理完了済みパーティションの開始IDのリスト
+     */
+    @Query("SELECT c.partitionStart FROM StageRecalcCheckpointEntity c WHERE c.runId = :runId")
+    List<Long> findCompletedPartitionStarts(@Param("runId") String runId);
+
+    /**
+     * 指定したパーティションが処理完了済みかを判定。
+     *
+     * @param runId          実行ID
+     * @param partitionStart パーティションの開始ID
+     * @return 処理完了済みの場合はtrue
+     */
+    boolean existsByRunIdAndPartitionStart(String runId, long partitionStart);
+
+    /**
+     * パーティションの再計算用のアドバイザリロックを、トランザクションの終了まで取得（PostgreSQL）。
+     * 取得できない場合は待たずにfalseを返します。
+     *
+     * @param key ロックのキー
+     * @return 取得できた場合はtrue
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryLockPartition(@Param("key") long key);
+
+    /**
+     * 実行IDで記録済みのパーティションの分割幅を取得。
+     *
+     * @param runId 実行ID
+     * @return 分割幅（未実行の場合は空）
+     */
+    @Query("SELECT DISTINCT c.partitionSize FROM StageRecalcCheckpointEntity c WHERE c.runId = :runId")
+    List<Long> findPartitionSizes(@Param("runId") String runId);
+}
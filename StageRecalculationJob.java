@@ -0,0 +1,226 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.config.ShardRouter;
+import com.example.loyaltyprogram.config.UserRoutingContext;
+import com.example.loyaltyprogram.model.StageEntity;
+import com.example.loyaltyprogram.model.StageRecalcCheckpointEntity;
+import com.example.loyaltyprogram.model.StageThresholdTable;
+import com.example.loyaltyprogram.repository.StageEntityRepository;
+import com.example.loyaltyprogram.repository.StageEntityRepository.StagePointTotal;
+import com.example.loyaltyprogram.repository.StageRecalcCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * StageRecalculationJob
+ * 全会員のステージを一括で再計算する夜間バッチ。
+ * ステージIDの範囲でパーティションに分割してワーカースレッドで並列に処理し、
+ * パーティションごとに1回の集計クエリでポイント合計を取得します。
+ * ステージが変わったユーザーのみを更新し（hibernate.jdbc.batch_size によるバッチ更新）、
+ * 完了したパーティションをチェックポイントとして記録するため、同じ実行IDで再実行すると続きから処理します。
+ * パーティションはステージIDを分割幅の倍数で区切った固定の範囲とし、分割幅は実行IDごとに記録するため、
+ * 再実行までに分割幅の設定やステージIDの最小値が変わっても、未処理の範囲を飛ばすことはありません。
+ * ステージが変わったユーザーには、個別のステージ更新と同じ付随処理（イベント登録・メトリクス記録など）を行います。
+ * 夜間バッチは全ノードで起動するため、パーティションごとにアドバイザリロックを取得し、
+ * ロック取得後にチェックポイントを確認してから処理します（同じパーティションのイベントを重複して登録しない）。
+ */
+@Service
+public class StageRecalculationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageRecalculationJob.class);
+
+    /**
+     * パーティションのアドバイザリロックのキーの名前空間（上位16ビット）
+     */
+    private static final long PARTITION_LOCK_NAMESPACE = 0x5354_0000_0000_0000L;
+
+    @Autowired
+    private StageEntityRepository stageEntityRepository;
+
+    @Autowired
+    private StageRecalcCheckpointRepository stageRecalcCheckpointRepository;
+
+    @Autowired
+    private StageBenefitCache stageBenefitCache;
+
+    @Autowired
+    private StageThresholdRegistry stageThresholdRegistry;
+
+    @Autowired
+    private StageChangeRecorder stageChangeRecorder;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${loyalty.points.ledger-mode:false}")
+    private boolean ledgerMode;
+
+    @Value("${loyalty.stage.recalc.workers:8}")
+    private int workerCount;
+
+    @Value("${loyalty.stage.recalc.partition-size:50000}")
+    private long partitionSize;
+
+    /**
+     * 夜間バッチとして当日分の一括再計算を実行（実行IDは実行日、シャード分割時はシャードごとに実行）。
+     */
+    @Scheduled(cron = "${loyalty.stage.recalc.cron:0 0 1 * * *}")
+    public void runNightly() {
+        String runId = LocalDate.now().toString();
+        shardRouter.forEachShard(shard -> recalculateAll(runId));
+    }
+
+    /**
+     * 全会員のステージを一括で再計算。
+     * 同じ実行IDで処理済みのパーティションは省略します。
+     *
+     * @param runId 実行ID
+     * @return ステージが変更されたユーザー数
+     */
+    public int recalculateAll(String runId) {
+        Long minId = stageEntityRepository.findMinId();
+        Long maxId = stageEntityRepository.findMaxId();
+        if (minId == null || maxId == null) {
+            return 0; // ステージ情報が存在しない
+        }
+        StageThresholdTable thresholds = stageThresholdRegistry.current(); // 実行中は同じ定義で判定する
+        long size = resolvePartitionSize(runId);
+        Set<Long> completedStarts = new HashSet<>(stageRecalcCheckpointRepository.findCompletedPartitionStarts(runId));
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            // 範囲はIDの最小値によらず分割幅の倍数で区切る（再実行時も同じ範囲になる）
+            for (long start = Math.floorDiv(minId, size) * size; start <= maxId; start += size) {
+                if (completedStarts.contains(start)) {
+                    continue; // 前回の実行で処理済み
+                }
+                long fromId = start;
+                long toId = start + size - 1;
+                // ワーカースレッドでも呼び出し元と同じシャードに接続する
+                results.add(executor.submit(UserRoutingContext.wrap(
+                        () -> recalculatePartition(runId, fromId, toId, size, thresholds))));
+            }
+            int changedCount = 0;
+            for (Future<Integer> result : results) {
+                changedCount += result.get();
+            }
+            logger.info("ステージ一括再計算が完了しました: 実行ID={} 変更件数={}", runId, changedCount);
+            return changedCount;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("ステージ一括再計算が中断されました: 実行ID=" + runId, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("ステージ一括再計算に失敗しました: 実行ID=" + runId, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 実行IDで使用するパーティションの分割幅を取得（記録済みの場合はその値、未実行の場合は設定値）。
+     *
+     * @param runId 実行ID
+     * @return パーティションの分割幅
+     */
+    private long resolvePartitionSize(String runId) {
+        List<Long> recordedSizes = stageRecalcCheckpointRepository.findPartitionSizes(runId);
+        if (recordedSizes.isEmpty()) {
+            return partitionSize;
+        }
+        if (recordedSizes.size() > 1) {
+            throw new IllegalStateException("実行IDに異なる分割幅のチェックポイントが記録されています: 実行ID=" + runId);
+        }
+        long recordedSize = recordedSizes.get(0);
+        if (recordedSize != partitionSize) {
+            logger.info("記録済みの分割幅で再開します: 実行ID={} 分割幅={}", runId, recordedSize);
+        }
+        return recordedSize;
+    }
+
+    /**
+     * 1パーティション分のステージを再計算し、チェックポイントを記録。
+     * ステージ更新・ステージ変更のイベント登録・チェックポイントの記録は同一トランザクションで行います。
+     * 他のノードが処理中、または処理済みのパーティションは何もしません。
+     *
+     * @param runId      実行ID
+     * @param fromId     範囲の開始ステージID（含む）
+     * @param toId       範囲の終了ステージID（含む）
+     * @param size       パーティションの分割幅
+     * @param thresholds ステージ判定に使用するしきい値テーブル
+     * @return ステージが変更されたユーザー数
+     */
+    private int recalculatePartition(String runId, long fromId, long toId, long size,
+                                     StageThresholdTable thresholds) {
+        List<String> changedUserIds = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!stageRecalcCheckpointRepository.tryLockPartition(partitionLockKey(runId, fromId))) {
+                return; // 他のノードが処理中
+            }
+            if (stageRecalcCheckpointRepository.existsByRunIdAndPartitionStart(runId, fromId)) {
+                return; // 他のノードが処理済み
+            }
+            List<StagePointTotal> totals = ledgerMode
+                    ? stageEntityRepository.findPartitionBalances(fromId, toId)
+                    : stageEntityRepository.findPartitionHistoryTotals(fromId, toId);
+            Map<Long, Integer> newStageOrdinals = new HashMap<>();
+            for (StagePointTotal total : totals) {
+                int ordinal = thresholds.resolveOrdinal((int) total.getTotalPoints());
+                String newStage = thresholds.getStageName(ordinal);
+                if (!newStage.equals(total.getStageName())) {
+                    newStageOrdinals.put(total.getStageId(), ordinal);
+                    changedUserIds.add(total.getUserId());
+                    stageChangeRecorder.recordChange(total.getUserId(), total.getStageName(), newStage,
+                            (int) total.getTotalPoints());
+                }
+            }
+            if (!newStageOrdinals.isEmpty()) {
+                List<StageEntity> stages = stageEntityRepository.findAllById(newStageOrdinals.keySet());
+                for (StageEntity stage : stages) {
+                    int ordinal = newStageOrdinals.get(stage.getId());
+                    stage.updateStage(thresholds.getStageName(ordinal));
+                    stage.setPromotionCriteria(thresholds.getNextRequiredPoints(ordinal)); // 次のステージの必要ポイント数
+                }
+                stageEntityRepository.saveAll(stages);
+            }
+            stageRecalcCheckpointRepository.save(
+                    new StageRecalcCheckpointEntity(runId, fromId, toId, size, newStageOrdinals.size()));
+        });
+        // コミット後にキャッシュを無効化する
+        for (String userId : changedUserIds) {
+            stageBenefitCache.evictStage(userId);
+        }
+        return changedUserIds.size();
+    }
+
+    /**
+     * 実行IDとパーティションの開始IDから、アドバイザリロックのキーを算出。
+     *
+     * @param runId          実行ID
+     * @param partitionStart パーティションの開始ID
+     * @return ロックのキー
+     */
+    private static long partitionLockKey(String runId, long partitionStart) {
+        long hash = 31L * runId.hashCode() + Long.hashCode(partitionStart);
+        return PARTITION_LOCK_NAMESPACE | (hash & 0x0000_FFFF_FFFF_FFFFL);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.loyaltyprogram.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * StageRecord
+ * ユーザーのステージ（stagesテーブル）の1行を表すR2DBC用のデータモデル（reactiveプロファイル用）。
+ *
+ * @param id                ステージ情報ID
+ * @param userId            ユーザーID
+ * @param stageName         ステージ名
+ * @param promotionCriteria 昇格条件のポイント数
+ * @param appliedAt         ステージの適用日時
+ * @param updatedAt         最終更新日時
+ */
+@Table("stages")
+public record StageRecord(
+        @Id Long id,
+        @Column("user_id") String userId,
+        @Column("stage_name") String stageName,
+        @Column("promotion_criteria") int promotionCriteria,
+        @Column("applied_at") LocalDateTime appliedAt,
+        @Column("updated_at") LocalDateTime updatedAt) {
+}
@@ -0,0 +1,111 @@
+package com.example.loyaltyprogram.service;
+
+import com.example.loyaltyprogram.model.StageDefinitionEntity;
+import com.example.loyaltyprogram.model.StageThresholdTable;
+import com.example.loyaltyprogram.repository.StageDefinitionRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * StageThresholdRegistry
+ * ステージ判定に使用するしきい値テーブルを保持するコンポーネント。
+ * ステージ定義テーブル（stage_definitions）を定期的に再読み込みし、再起動せずに変更を反映します。
+ * ステージ定義テーブルが空の場合は設定値（loyalty.stage.tiers）を使用します。
+ */
+@Component
+public class StageThresholdRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageThresholdRegistry.class);
+
+    @Autowired
+    private StageDefinitionRepository stageDefinitionRepository;
+
+    /**
+     * 設定値によるステージ定義（「ステージ名:必要ポイント数」のカンマ区切り、昇順）
+     */
+    @Value("${loyalty.stage.tiers:ブロンズ会員:0,シルバー会員:500,ゴールド会員:1000}")
+    private String configuredTiers;
+
+    private StageThresholdTable configuredTable;
+
+    /**
+     * 現在のしきい値テーブル（再読み込み時に参照ごと差し替える）
+     */
+    private volatile StageThresholdTable currentTable;
+
+    @PostConstruct
+    public void initialize() {
+        configuredTable = parseTiers(configuredTiers);
+        currentTable = configuredTable;
+        reload();
+    }
+
+    /**
+     * ステージ定義を再読み込みします。
+     * 定義が不正な場合は現在のしきい値テーブルを維持します。
+     */
+    @Scheduled(fixedDelayString = "${loyalty.stage.definitions.reload-interval:60000}")
+    public void reload() {
+        List<StageDefinitionEntity> definitions = stageDefinitionRepository.findAllByOrderByRequiredPointsAsc();
+        if (definitions.isEmpty()) {
+            currentTable = configuredTable;
+            return;
+        }
+        String[] stageNames = new String[definitions.size()];
+        int[] requiredPoints = new int[definitions.size()];
+        for (int i = 0; i < definitions.size(); i++) {
+            stageNames[i] = definitions.get(i).getStageName();
+            requiredPoints[i] = definitions.get(i).getRequiredPoints();
+        }
+        try {
+            currentTable = new StageThresholdTable(stageNames, requiredPoints);
+        } catch (IllegalArgumentException e) {
+            logger.warn("ステージ定義の再読み込みに失敗したため、現在の定義を維持します: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 現在のしきい値テーブルを取得。
+     * 一括処理では処理開始時に取得したテーブルを使い続けることで、途中の定義変更の影響を受けません。
+     *
+     * @return しきい値テーブル
+     */
+    public StageThresholdTable current() {
+        return currentTable;
+    }
+
+    /**
+     * ポイント数に対応するステージ名を判定。
+     *
+     * @param points ポイント数
+     * @return ステージ名
+     */
+    public String resolveStage(int points) {
+        return currentTable.resolveStage(points);
+    }
+
+    /**
+     * 設定値のステージ定義を解析。
+     *
+     * @param tiers 「ステージ名:必要ポイント数」のカンマ区切り文字列
+     * @return しきい値テーブル
+     */
+    private StageThresholdTable parseTiers(String tiers) {
+        String[] entries = tiers.split(",");
+        String[] stageNames = new String[entries.length];
+        int[] requiredPoints = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            int separator = entries[i].lastIndexOf(':');
+            stageNames[i] = entries[i].substring(0, separator).trim();
+            requiredPoints[i] = Integer.parseInt(entries[i].substring(separator + 1).trim());
+        }
+        return new StageThresholdTable(stageNames, requiredPoints);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.loyaltyprogram.model;
+
+import java.util.Arrays;
+
+/**
+ * StageThresholdTable
+ * ステージ判定用の不変なしきい値テーブル。
+ * 必要ポイント数の昇順に並べた配列を二分探索するため、ステージ数によらず判定は O(log n) で、
+ * 判定時にオブジェクトを生成しません。
+ */
+public final class StageThresholdTable {
+
+    // --- フィールド定義 ---
+
+    /**
+     * 各ステージの必要ポイント数（昇順）
+     */
+    private final int[] requiredPoints;
+
+    /**
+     * 各ステージ名（requiredPoints と同じ並び）
+     */
+    private final String[] stageNames;
+
+    // --- コンストラクタ ---
+
+    /**
+     * しきい値テーブルを作成します。
+     *
+     * @param stageNames     ステージ名（必要ポイント数の昇順）
+     * @param requiredPoints 各ステージの必要ポイント数（昇順・重複なし）
+     * @throws IllegalArgumentException 定義が空、件数不一致、または昇順でない場合
+     */
+    public StageThresholdTable(String[] stageNames, int[] requiredPoints) {
+        if (stageNames.length == 0 || stageNames.length != requiredPoints.length) {
+            throw new IllegalArgumentException("ステージ定義が不正です: ステージ数=" + stageNames.length
+                    + " しきい値数=" + requiredPoints.length);
+        }
+        for (int i = 1; i < requiredPoints.length; i++) {
+            if (requiredPoints[i] <= requiredPoints[i - 1]) {
+                throw new IllegalArgumentException("ステージの必要ポイント数が昇順ではありません: " + Arrays.toString(requiredPoints));
+            }
+        }
+        this.stageNames = stageNames.clone();
+        this.requiredPoints = requiredPoints.clone();
+    }
+
+    // --- ヘルパーメソッド ---
+
+    /**
+     * ポイント数に対応するステージの序数（0が最下位）を判定します。
+     * 最下位ステージの必要ポイント数に満たない場合も最下位ステージとして扱います。
+     *
+     * @param points ポイント数
+     * @return ステージの序数
+     */
+    public int resolveOrdinal(int points) {
+        int low = 0;
+        int high = requiredPoints.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (requiredPoints[mid] <= points) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * ポイント数に対応するステージ名を判定します。
+     *
+     * @param points ポイント数
+     * @return ステージ名
+     */
+    public String resolveStage(int points) {
+        return stageNames[resolveOrdinal(points)];
+    }
+
+    /**
+     * 序数に対応するステージ名を取得します。
+     *
+     * @param ordinal ステージの序数
+     * @return ステージ名
+     */
+    public String getStageName(int ordinal) {
+        return stageNames[ordinal];
+    }
+
+    /**
+     * 次のステージに必要なポイント数を取得します。
+     *
+     * @param ordinal 現在のステージの序数
+     * @return 次のステージの必要ポイント数（最上位ステージの場合は現在のステージの必要ポイント数）
+     */
+    public int getNextRequiredPoints(int ordinal) {
+        return requiredPoints[Math.min(ordinal + 1, requiredPoints.length - 1)];
+    }
+
+    /**
+     * ステージ数を取得します。
+     *
+     * @return ステージ数
+     */
+    public int size() {
+        return stageNames.length;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.loyaltyprogram.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * StatementCountingInspector
+ * Hibernateが発行するSQL文の数をスレッドごとに数えるインスペクター。
+ * リクエストごとのDB往復回数の計測に使用します（JdbcTemplateで直接発行するSQLは対象外）。
+ */
+public class StatementCountingInspector implements StatementInspector {
+
+    private static final ThreadLocal<int[]> STATEMENT_COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENT_COUNT.get()[0]++;
+        return sql; // SQL文は変更しない
+    }
+
+    /**
+     * 現在のスレッドの計測を開始（件数を0に戻す）。
+     */
+    public static void reset() {
+        STATEMENT_COUNT.get()[0] = 0;
+    }
+
+    /**
+     * 現在のスレッドで発行されたSQL文の数を取得し、計測を終了。
+     *
+     * @return 発行されたSQL文の数
+     */
+    public static int getAndClear() {
+        int count = STATEMENT_COUNT.get()[0];
+        STATEMENT_COUNT.remove();
+        return count;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.loyaltyprogram.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucketRateLimiter
+ * キーごとのトークンバケットによる流量制限。
+ * 各バケットの状態（最終補充時刻とミリトークン数）を1つのlong値に詰めて保持し、CASで更新するため、ロックを取得しません。
+ * 補充しきった時間以上使われていないバケットは満杯と同じ状態のため、定期的に削除してメモリを解放します。
+ */
+public class TokenBucketRateLimiter {
+
+    /**
+     * ミリトークン数に使用するビット数（残りの上位ビットは最終補充時刻）
+     */
+    private static final int TOKEN_BITS = 24;
+
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    private static final long MILLI_TOKENS_PER_TOKEN = 1000;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final long capacityMilliTokens;
+
+    /**
+     * 1ミリ秒あたりの補充ミリトークン数（= 1秒あたりの補充トークン数）
+     */
+    private final long refillPerSecond;
+
+    private final long idleMillis;
+
+    private final long epochNanos = System.nanoTime();
+
+    /**
+     * @param capacity        バケットの容量（連続して許可するリクエスト数）
+     * @param refillPerSecond 1秒あたりの補充トークン数
+     * @param idleMillis      未使用のバケットを削除するまでの時間（補充しきる時間より短い場合は補充しきる時間）
+     */
+    public TokenBucketRateLimiter(int capacity, int refillPerSecond, long idleMillis) {
+        if (capacity <= 0 || refillPerSecond <= 0 || capacity * MILLI_TOKENS_PER_TOKEN > TOKEN_MASK) {
+            throw new IllegalArgumentException("トークンバケットの設定が不正です: 容量=" + capacity + " 補充数=" + refillPerSecond);
+        }
+        this.capacityMilliTokens = capacity * MILLI_TOKENS_PER_TOKEN;
+        this.refillPerSecond = refillPerSecond;
+        this.idleMillis = Math.max(idleMillis, capacityMilliTokens / refillPerSecond);
+    }
+
+    /**
+     * キーのバケットからトークンを1つ取得します。
+     *
+     * @param key バケットのキー（例: エンドポイント名とユーザーID）
+     * @return 取得できた場合はtrue、トークンが不足している場合はfalse
+     */
+    public boolean tryAcquire(String key) {
+        long now = nowMillis();
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(pack(now, capacityMilliTokens)));
+        while (true) {
+            long state = bucket.get();
+            long tokens = refill(state, now);
+            if (tokens < MILLI_TOKENS_PER_TOKEN) {
+                return false;
+            }
+            long lastRefill = Math.max(now, state >>> TOKEN_BITS);
+            if (bucket.compareAndSet(state, pack(lastRefill, tokens - MILLI_TOKENS_PER_TOKEN))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 補充しきった時間以上使われていないバケットを削除します。
+     * 削除と同時に取得されたトークンは失われますが、次の取得では満杯のバケットとして扱われるため、
+     * 超過するのは高々1トークンです。
+     *
+     * @return 削除したバケット数
+     */
+    public int evictIdleBuckets() {
+        long threshold = nowMillis() - idleMillis;
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> (bucket.get() >>> TOKEN_BITS) < threshold);
+        return before - buckets.size();
+    }
+
+    /**
+     * 保持しているバケット数を取得。
+     *
+     * @return バケット数
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * 経過時間に応じて補充した後のミリトークン数を算出。
+     */
+    private long refill(long state, long now) {
+        long elapsed = now - (state >>> TOKEN_BITS);
+        long tokens = state & TOKEN_MASK;
+        if (elapsed <= 0) {
+            return tokens;
+        }
+        return Math.min(capacityMilliTokens, tokens + elapsed * refillPerSecond);
+    }
+
+    private long nowMillis() {
+        return (System.nanoTime() - epochNanos) / 1_000_000;
+    }
+
+    private static long pack(long timestampMillis, long milliTokens) {
+        return (timestampMillis << TOKEN_BITS) | milliTokens;
+    }
+}
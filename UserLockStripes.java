@@ -0,0 +1,46 @@
+package com.example.loyaltyprogram.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * UserLockStripes
+ * ユーザー単位の処理を直列化するためのストライプロック。
+ * ユーザーIDのハッシュで固定数のロックに振り分けるため、同一ユーザーの処理のみが直列化され、
+ * 異なるユーザーの処理は（ハッシュが衝突しない限り）並列に実行されます。
+ * 同一JVM内でのみ有効なため、複数ノード構成ではDB側の条件付き更新と併用してください。
+ */
+@Component
+public class UserLockStripes {
+
+    private final ReentrantLock[] locks;
+
+    private final int mask;
+
+    public UserLockStripes(@Value("${loyalty.points.lock-stripes:1024}") int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1; // ハッシュのマスク計算のため2のべき乗に切り上げ
+        }
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * ユーザーIDに対応するロックを取得。
+     *
+     * @param userId ユーザーID
+     * @return ユーザーIDに割り当てられたロック
+     */
+    public Lock lockFor(String userId) {
+        int hash = userId.hashCode();
+        hash ^= (hash >>> 16); // 下位ビットに上位ビットを混ぜて偏りを抑える
+        return locks[hash & mask];
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.loyaltyprogram.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * UserRouted
+ * メソッドの処理を、引数のユーザーIDが割り当てられたシャードで実行することを示すアノテーション。
+ * トランザクション開始時にDB接続を取得するため、@Transactional より先に（外側で）振り分け先を決定します。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface UserRouted {
+
+    /**
+     * ユーザーIDを受け取る引数名
+     */
+    String value() default "userId";
+}
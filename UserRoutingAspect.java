@@ -0,0 +1,66 @@
+package com.example.loyaltyprogram.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * UserRoutingAspect
+ * @UserRouted を付与したメソッドを、引数のユーザーIDのシャードで実行するアスペクト。
+ * トランザクションの開始前に振り分け先を設定するため、最も外側（最優先）で実行します。
+ * 同じユーザーの処理の中から呼び出された場合は、振り分け先をそのまま引き継ぎます。
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class UserRoutingAspect {
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Around("@annotation(userRouted)")
+    public Object route(ProceedingJoinPoint joinPoint, UserRouted userRouted) throws Throwable {
+        String userId = findUserId(joinPoint, userRouted.value());
+        if (userId == null || userId.equals(UserRoutingContext.currentUserId())) {
+            return joinPoint.proceed();
+        }
+        try {
+            return shardRouter.callForUser(userId, () -> {
+                try {
+                    return joinPoint.proceed();
+                } catch (Throwable e) {
+                    throw new RoutedInvocationException(e);
+                }
+            });
+        } catch (RoutedInvocationException e) {
+            throw e.getCause(); // 元の例外をそのまま呼び出し元へ返す
+        }
+    }
+
+    private String findUserId(ProceedingJoinPoint joinPoint, String parameterName) {
+        String[] names = ((MethodSignature) joinPoint.getSignature()).getParameterNames();
+        Object[] args = joinPoint.getArgs();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(parameterName)) {
+                return (args[i] == null) ? null : args[i].toString();
+            }
+        }
+        throw new IllegalStateException("@UserRouted の引数が見つかりません: "
+                + joinPoint.getSignature().toShortString() + " " + parameterName);
+    }
+
+    /**
+     * 振り分け先での実行中に発生した例外を呼び出し元まで運ぶための例外。
+     */
+    private static class RoutedInvocationException extends RuntimeException {
+
+        RoutedInvocationException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
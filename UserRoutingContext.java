@@ -0,0 +1,98 @@
+package com.example.loyaltyprogram.config;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * UserRoutingContext
+ * 現在のスレッドで処理中のユーザーIDと振り分け先のシャードを保持するコンテキスト。
+ * ShardRoutingDataSource はDB接続の取得時にこのコンテキストのシャードを参照します。
+ * 別スレッドで処理を続ける場合は wrap でコンテキストを引き継いでください。
+ */
+public final class UserRoutingContext {
+
+    private static final ThreadLocal<Route> CURRENT = new ThreadLocal<>();
+
+    private UserRoutingContext() {
+    }
+
+    /**
+     * 現在のスレッドの振り分け先シャードを取得。
+     *
+     * @return シャード名（未設定の場合はnull）
+     */
+    public static String currentShard() {
+        Route route = CURRENT.get();
+        return (route == null) ? null : route.shard;
+    }
+
+    /**
+     * 現在のスレッドで処理中のユーザーIDを取得。
+     *
+     * @return ユーザーID（ユーザー単位の処理でない場合はnull）
+     */
+    public static String currentUserId() {
+        Route route = CURRENT.get();
+        return (route == null) ? null : route.userId;
+    }
+
+    /**
+     * 振り分け先を設定して処理を実行し、終了後に元の振り分け先に戻します。
+     *
+     * @param userId ユーザーID（シャード単位の処理の場合はnull）
+     * @param shard  シャード名
+     * @param action 実行する処理
+     * @return 処理結果
+     */
+    public static <T> T callWith(String userId, String shard, Supplier<T> action) {
+        Route previous = CURRENT.get();
+        CURRENT.set(new Route(userId, shard));
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 現在のスレッドの振り分け先を引き継いで実行する処理を作成（ワーカースレッドへの受け渡し用）。
+     *
+     * @param task 実行する処理
+     * @return 振り分け先を引き継ぐ処理
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Route route = CURRENT.get();
+        if (route == null) {
+            return task;
+        }
+        return () -> {
+            Route previous = CURRENT.get();
+            CURRENT.set(route);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    private static final class Route {
+
+        private final String userId;
+
+        private final String shard;
+
+        private Route(String userId, String shard) {
+            this.userId = userId;
+            this.shard = shard;
+        }
+    }
+}